@@ -0,0 +1,296 @@
+package com.adobe.training.core;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Streaming RFC 4180 tokenizer for the PageCreator input. Records are read one at a time from a
+ * Reader through a fixed char buffer:
+ *
+ *  - fields are separated by commas, records by LF, CRLF or CR
+ *  - a field starting with a double quote may contain commas, line breaks and quotes escaped as ""
+ *  - characters after the closing quote of a field are kept, a missing closing quote ends the
+ *    field at the end of the input
+ *  - a byte order mark at the start of the input is skipped
+ *
+ * The record is copied from the buffer into one char array that is reused for every record, and
+ * the fields are slices of it. Only quoted fields containing escaped quotes are unescaped into a
+ * second reused array. Tokenizing allocates nothing per record once the arrays have grown to the
+ * longest record; Strings are only created when a field or the record is asked for.
+ *
+ * Not thread safe.
+ */
+public final class CsvTokenizer {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final Reader reader;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int position;
+	private int limit;
+	private boolean first = true;
+
+	//The current record as it was read, without the line break
+	private char[] chars = new char[256];
+	private int length;
+	//Unescaped quoted fields
+	private char[] escaped = new char[64];
+	private int escapedLength;
+
+	//Field i is chars[starts[i]] to chars[ends[i] - 1], or escaped[...] if unescaped[i]
+	private int[] starts = new int[8];
+	private int[] ends = new int[8];
+	private boolean[] unescaped = new boolean[8];
+	private int fieldCount;
+
+	private int recordNumber;
+	private int lineNumber;
+	private int lines;
+
+	public CsvTokenizer(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Reads the next record
+	 *
+	 * @return false at the end of the input
+	 */
+	public boolean nextRecord() throws IOException {
+		if (position == limit && !fill()) {
+			return false;
+		}
+		if (first) {
+			first = false;
+			if (buffer[position] == '\uFEFF' && ++position == limit && !fill()) {
+				return false;
+			}
+		}
+		length = 0;
+		escapedLength = 0;
+		fieldCount = 0;
+		recordNumber++;
+		lineNumber = ++lines;
+
+		while (true) {
+			if ((position < limit || fill()) && buffer[position] == '"') {
+				readQuoted();
+			} else {
+				readUnquoted();
+			}
+			//The field ends at a delimiter or at the end of the input
+			if (position == limit && !fill()) {
+				return true;
+			}
+			char c = buffer[position++];
+			if (c == ',') {
+				append(',');
+				continue;
+			}
+			if (c == '\r' && (position < limit || fill()) && buffer[position] == '\n') {
+				position++;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Reads a field up to the next delimiter, which is not consumed
+	 */
+	private void readUnquoted() throws IOException {
+		int start = length;
+		scan();
+		addField(start, length, false);
+	}
+
+	/**
+	 * Copies the chars up to the next delimiter from the buffer, the delimiter is not consumed
+	 *
+	 * @return the number of chars copied
+	 */
+	private int scan() throws IOException {
+		int copied = 0;
+		do {
+			int p = position;
+			while (p < limit) {
+				char c = buffer[p];
+				if (c == ',' || c == '\n' || c == '\r') {
+					break;
+				}
+				p++;
+			}
+			append(buffer, position, p - position);
+			copied += p - position;
+			position = p;
+		} while (position == limit && fill());
+		return copied;
+	}
+
+	/**
+	 * Reads a quoted field up to the next delimiter, which is not consumed
+	 */
+	private void readQuoted() throws IOException {
+		//Opening quote
+		append(buffer[position++]);
+		int start = length;
+		int end = -1;
+		boolean escapes = false;
+		//Only this field appends to escaped while it is read
+		int escapedStart = escapedLength;
+		char previous = 0;
+		while (end < 0) {
+			if (position == limit && !fill()) {
+				//Missing closing quote
+				end = length;
+				break;
+			}
+			int p = position;
+			while (p < limit && buffer[p] != '"') {
+				char c = buffer[p++];
+				if (c == '\r' || (c == '\n' && previous != '\r')) {
+					lines++;
+				}
+				previous = c;
+			}
+			append(buffer, position, p - position);
+			if (escapes) {
+				appendEscaped(buffer, position, p - position);
+			}
+			position = p;
+			if (p == limit) {
+				continue;
+			}
+			//Quote, either escaped or closing
+			previous = '"';
+			position++;
+			append('"');
+			if ((position < limit || fill()) && buffer[position] == '"') {
+				position++;
+				append('"');
+				if (!escapes) {
+					escapes = true;
+					appendEscaped(chars, start, length - 2 - start);
+				}
+				appendEscaped('"');
+			} else {
+				end = length - 1;
+			}
+		}
+
+		//Characters between the closing quote and the delimiter are kept
+		int trailingStart = length;
+		if (scan() > 0) {
+			if (!escapes) {
+				escapes = true;
+				appendEscaped(chars, start, end - start);
+			}
+			appendEscaped(chars, trailingStart, length - trailingStart);
+		}
+		if (escapes) {
+			addField(escapedStart, escapedLength, true);
+		} else {
+			addField(start, end, false);
+		}
+	}
+
+	/**
+	 * @return the number of fields of the current record, at least 1
+	 */
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * @return the field at the given index, an empty String if the record has fewer fields
+	 */
+	public String getField(int index) {
+		if (index >= fieldCount) {
+			return "";
+		}
+		return new String(unescaped[index] ? escaped : chars, starts[index], ends[index] - starts[index]);
+	}
+
+	/**
+	 * @return the length of the field at the given index, 0 if the record has fewer fields
+	 */
+	public int getFieldLength(int index) {
+		return index < fieldCount ? ends[index] - starts[index] : 0;
+	}
+
+	/**
+	 * @return the current record as it was read, quotes included and without the line break
+	 */
+	public String getRecord() {
+		return new String(chars, 0, length);
+	}
+
+	/**
+	 * @return the number of the current record, starting at 1
+	 */
+	public int getRecordNumber() {
+		return recordNumber;
+	}
+
+	/**
+	 * @return the line of the input the current record starts on, starting at 1
+	 */
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	private void addField(int start, int end, boolean inEscaped) {
+		if (fieldCount == starts.length) {
+			starts = Arrays.copyOf(starts, fieldCount * 2);
+			ends = Arrays.copyOf(ends, fieldCount * 2);
+			unescaped = Arrays.copyOf(unescaped, fieldCount * 2);
+		}
+		starts[fieldCount] = start;
+		ends[fieldCount] = end;
+		unescaped[fieldCount++] = inEscaped;
+	}
+
+	private void append(char c) {
+		if (length == chars.length) {
+			chars = Arrays.copyOf(chars, length * 2);
+		}
+		chars[length++] = c;
+	}
+
+	private void append(char[] source, int offset, int count) {
+		if (length + count > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + count));
+		}
+		System.arraycopy(source, offset, chars, length, count);
+		length += count;
+	}
+
+	private void appendEscaped(char c) {
+		if (escapedLength == escaped.length) {
+			escaped = Arrays.copyOf(escaped, escapedLength * 2);
+		}
+		escaped[escapedLength++] = c;
+	}
+
+	private void appendEscaped(char[] source, int offset, int count) {
+		if (escapedLength + count > escaped.length) {
+			escaped = Arrays.copyOf(escaped, Math.max(escaped.length * 2, escapedLength + count));
+		}
+		System.arraycopy(source, offset, escaped, escapedLength, count);
+		escapedLength += count;
+	}
+
+	private boolean fill() throws IOException {
+		int read;
+		do {
+			read = reader.read(buffer, 0, buffer.length);
+		} while (read == 0);
+		if (read < 0) {
+			position = limit = 0;
+			return false;
+		}
+		position = 0;
+		limit = read;
+		return true;
+	}
+}
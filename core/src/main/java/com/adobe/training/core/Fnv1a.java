@@ -0,0 +1,53 @@
+package com.adobe.training.core;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 64 bit FNV-1a hash, used for quote fingerprints and ETags. A hash starts at OFFSET and every
+ * value is mixed in byte by byte:
+ *
+ *  long hash = Fnv1a.OFFSET;
+ *  hash = Fnv1a.mix(hash, symbol);
+ *  hash = Fnv1a.mix(hash, latestUpdate);
+ *
+ * Not suited for anything security related.
+ */
+public final class Fnv1a {
+
+	public static final long OFFSET = 0xcbf29ce484222325L;
+	private static final long PRIME = 0x100000001b3L;
+
+	private Fnv1a() {
+	}
+
+	/**
+	 * Mixes the 8 bytes of a value, lowest byte first.
+	 */
+	public static long mix(long hash, long value) {
+		for (int shift = 0; shift < 64; shift += 8) {
+			hash ^= (value >>> shift) & 0xff;
+			hash *= PRIME;
+		}
+		return hash;
+	}
+
+	public static long mix(long hash, byte[] bytes) {
+		for (byte b : bytes) {
+			hash ^= b & 0xff;
+			hash *= PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * Mixes the UTF-8 bytes of a String followed by their count, so that ("ab", "c") and ("a", "bc")
+	 * differ. null is mixed as 0.
+	 */
+	public static long mix(long hash, String value) {
+		if (value == null) {
+			return mix(hash, 0L);
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		return mix(mix(hash, bytes), (long) bytes.length);
+	}
+}
@@ -0,0 +1,332 @@
+package com.adobe.training.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+import org.apache.sling.event.jobs.consumer.JobExecutor;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.services.PageImporter;
+import com.adobe.training.core.services.PageRow;
+
+/**
+ * This job executor creates the pages of a PageCreator upload made with async=true. The upload
+ * is stored on the job node written by the PageCreator servlet, the job saves its progress on
+ * the same node:
+ *
+ * /content/pagecreator/jobs/<id>
+ *   - state = QUEUED | RUNNING | STOPPED | SUCCEEDED | FAILED | INVALID
+ *   - rows, rowsDone, errors, errorRows (the first 100)
+ *   - created, started, resumed, rowsAtResume, updated, finished
+ *   - commitSize, validate, upsert, user
+ *   + input.csv [nt:file], removed when the job is done
+ *
+ * The rows are created in bulk mode, parents before children. rowsDone is saved in the same
+ * commit as every chunk of commitSize pages, so the checkpoint never disagrees with the pages
+ * in the repository. A job that is restarted, e.g. after the instance was stopped, skips the
+ * rows done and continues with the next chunk.
+ *
+ * With validate the rows are checked before the first page is written (see PageImporter.validate).
+ * If a row is invalid the job ends in state INVALID with the invalid rows as errorRows.
+ *
+ * The pages are created with the rights of the user who uploaded the file, so an async import
+ * cannot write anything that the same upload without async=true could not. That user is taken
+ * from the job properties (user), never from the job node: the uploader can write the node, it
+ * only holds the status. The job logs in with
+ * the training service user impersonating that user, which needs the service user to be one of
+ * the impersonators of the users running async imports (rep:impersonators).
+ */
+@Component(
+		immediate = true,
+		service = JobExecutor.class,
+		property = {
+				JobExecutor.PROPERTY_TOPICS + "=" + PageCreatorJob.JOB_TOPIC
+		}
+)
+public class PageCreatorJob implements JobExecutor {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	// Convenience string to find the log messages for this training example class
+	// Logs can be found in crx-quickstart/logs/error.log
+	private String searchableLogStr = "&&&&&";
+
+	public static final String JOB_TOPIC = "com/adobe/training/core/jobs/pagecreatorjob";
+	public static final String JOB_PROP_PATH = "path";
+	public static final String JOB_PROP_USER = "user";
+
+	//Job node
+	public static final String INPUT = "input.csv";
+	public static final String STATE = "state";
+	public static final String STATE_QUEUED = "QUEUED";
+	public static final String STATE_RUNNING = "RUNNING";
+	public static final String STATE_STOPPED = "STOPPED";
+	public static final String STATE_SUCCEEDED = "SUCCEEDED";
+	public static final String STATE_FAILED = "FAILED";
+	public static final String STATE_INVALID = "INVALID";
+	public static final String ROWS = "rows";
+	public static final String ROWS_DONE = "rowsDone";
+	public static final String ERRORS = "errors";
+	public static final String ERROR_ROWS = "errorRows";
+	public static final String CREATED = "created";
+	public static final String STARTED = "started";
+	public static final String RESUMED = "resumed";
+	public static final String ROWS_AT_RESUME = "rowsAtResume";
+	public static final String UPDATED = "updated";
+	public static final String FINISHED = "finished";
+	public static final String COMMIT_SIZE = "commitSize";
+	public static final String VALIDATE = "validate";
+	public static final String UPSERT = "upsert";
+	public static final String USER = "user";
+
+	private static final int DEFAULT_COMMIT_SIZE = 100;
+	private static final int MAX_ERROR_ROWS = 100;
+
+	@Reference
+	private ResourceResolverFactory resourceResolverFactory;
+
+	@Reference
+	private PageImporter pageImporter;
+
+	@Override
+	public JobExecutionResult process(Job job, JobExecutionContext context) {
+		String path = job.getProperty(JOB_PROP_PATH, String.class);
+		String user = job.getProperty(JOB_PROP_USER, String.class);
+		if (path == null || user == null) {
+			return context.result().message("No job path or user in the job properties").cancelled();
+		}
+
+		ResourceResolver userResolver;
+		try {
+			userResolver = getResourceResolver(user);
+		} catch (LoginException e) {
+			//Retrying does not help until the service user may impersonate the user
+			logger.error(searchableLogStr + "PageCreator job " + path + " cannot run as " + user + ": ", e);
+			finish(null, path, STATE_FAILED);
+			return context.result().message("Cannot run as " + user + ": " + e.getMessage()).cancelled();
+		}
+
+		try (ResourceResolver resourceResolver = userResolver) {
+			Resource jobResource = resourceResolver.getResource(path);
+			Resource input = jobResource != null ? jobResource.getChild(INPUT) : null;
+			InputStream stream = input != null ? input.adaptTo(InputStream.class) : null;
+			if (stream == null) {
+				finish(null, path, STATE_FAILED);
+				return context.result().message("No input found at " + path).cancelled();
+			}
+
+			List<PageRow> rows;
+			try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+				rows = PageRow.readRows(reader);
+			}
+			//Same order as importBulk, so the rows done are always the first rows of the list
+			rows.sort(Comparator.comparingInt(PageRow::getDepth));
+
+			ModifiableValueMap status = jobResource.adaptTo(ModifiableValueMap.class);
+			if (!status.containsKey(STARTED) && status.get(VALIDATE, false) && !isValid(resourceResolver, rows, status)) {
+				resourceResolver.delete(input);
+				resourceResolver.commit();
+				return context.result().message(status.get(ERRORS, 0) + " invalid rows, no page was created").cancelled();
+			}
+			int rowsDone = Math.min(status.get(ROWS_DONE, 0), rows.size());
+			int commitSize = Math.max(1, status.get(COMMIT_SIZE, DEFAULT_COMMIT_SIZE));
+			boolean upsert = status.get(UPSERT, false);
+			Calendar now = Calendar.getInstance();
+			if (!status.containsKey(STARTED)) {
+				status.put(STARTED, now);
+			} else {
+				logger.info(searchableLogStr + "Resuming PageCreator job {} at row {} of {}", path, rowsDone, rows.size());
+			}
+			status.put(STATE, STATE_RUNNING);
+			status.put(ROWS, rows.size());
+			status.put(RESUMED, now);
+			status.put(ROWS_AT_RESUME, rowsDone);
+			status.put(UPDATED, now);
+			resourceResolver.commit();
+
+			context.initProgress(rows.size(), -1);
+			context.incrementProgressCount(rowsDone);
+			Checkpoint checkpoint = new Checkpoint(path, context);
+			for (int from = rowsDone; from < rows.size(); from += commitSize) {
+				if (context.isStopped()) {
+					//Failed jobs are retried, the retry resumes from the checkpoint
+					if (isLastRetry(job)) {
+						finish(resourceResolver, path, STATE_FAILED);
+					} else {
+						setState(resourceResolver, path, STATE_STOPPED);
+					}
+					return context.result().message("Stopped after " + from + " of " + rows.size() + " rows").failed();
+				}
+				List<PageRow> chunk = new ArrayList<>(rows.subList(from, Math.min(from + commitSize, rows.size())));
+				pageImporter.importBulk(resourceResolver, chunk, commitSize, upsert, checkpoint);
+			}
+
+			finish(resourceResolver, path, STATE_SUCCEEDED);
+			ModifiableValueMap done = resourceResolver.getResource(path).adaptTo(ModifiableValueMap.class);
+			String message = done.get(ROWS_DONE, 0) + " rows done, " + done.get(ERRORS, 0) + " errors";
+			logger.info(searchableLogStr + "PageCreator job {} finished: {}", path, message);
+			return context.result().message(message).succeeded();
+		} catch (IOException e) {
+			logger.error(searchableLogStr + "PageCreator job " + path + " failed: ", e);
+			if (isLastRetry(job)) {
+				finish(null, path, STATE_FAILED);
+			}
+			return context.result().message(e.getMessage()).failed();
+		}
+	}
+
+	/**
+	 * @param user the user to impersonate, null for the service user itself
+	 */
+	private ResourceResolver getResourceResolver(String user) throws LoginException {
+		//Get the service user (training-user) that belongs to the training.core:training subservice
+		Map<String, Object> serviceParams = new HashMap<>();
+		serviceParams.put(ResourceResolverFactory.SUBSERVICE, "training");
+		if (user != null) {
+			serviceParams.put(ResourceResolverFactory.USER_IMPERSONATION, user);
+		}
+		return resourceResolverFactory.getServiceResourceResolver(serviceParams);
+	}
+
+	private static boolean isLastRetry(Job job) {
+		return job.getRetryCount() >= job.getNumberOfRetries();
+	}
+
+	/**
+	 * Sets the final state and removes the input, the job node is kept for the status
+	 *
+	 * @param resourceResolver resolver of the job or null to use the service user
+	 */
+	private void finish(ResourceResolver resourceResolver, String path, String state) {
+		if (resourceResolver != null) {
+			removeInput(resourceResolver, path, state);
+			return;
+		}
+		try (ResourceResolver serviceResolver = getResourceResolver(null)) {
+			removeInput(serviceResolver, path, state);
+		} catch (LoginException e) {
+			logger.error(searchableLogStr + "Could not finish PageCreator job " + path, e);
+		}
+	}
+
+	private void removeInput(ResourceResolver resourceResolver, String path, String state) {
+		try {
+			Resource input = resourceResolver.getResource(path + "/" + INPUT);
+			if (input != null) {
+				resourceResolver.delete(input);
+			}
+			setState(resourceResolver, path, state);
+		} catch (PersistenceException e) {
+			resourceResolver.revert();
+			logger.error(searchableLogStr + "Could not remove the input of PageCreator job " + path, e);
+		}
+	}
+
+	/**
+	 * Saves the invalid rows on the job node if there are any
+	 */
+	private boolean isValid(ResourceResolver resourceResolver, List<PageRow> rows, ModifiableValueMap status) {
+		List<Map<String, String>> report = pageImporter.validate(resourceResolver, rows, status.get(UPSERT, false));
+		int invalid = 0;
+		List<String> errorRows = new ArrayList<>();
+		for (int i = 0; i < rows.size(); i++) {
+			Map<String, String> result = report.get(i);
+			if (!"Valid".equals(result.get("Status"))) {
+				invalid++;
+				if (errorRows.size() < MAX_ERROR_ROWS) {
+					errorRows.add("Row " + rows.get(i).getRow() + ": " + result.get("Error"));
+				}
+			}
+		}
+		if (invalid == 0) {
+			return true;
+		}
+		Calendar now = Calendar.getInstance();
+		status.put(STATE, STATE_INVALID);
+		status.put(ROWS, rows.size());
+		status.put(ERRORS, invalid);
+		status.put(ERROR_ROWS, errorRows.toArray(new String[0]));
+		status.put(UPDATED, now);
+		status.put(FINISHED, now);
+		return false;
+	}
+
+	private void setState(ResourceResolver resourceResolver, String path, String state) throws PersistenceException {
+		Resource jobResource = resourceResolver.getResource(path);
+		if (jobResource != null) {
+			ModifiableValueMap status = jobResource.adaptTo(ModifiableValueMap.class);
+			status.put(STATE, state);
+			status.put(UPDATED, Calendar.getInstance());
+			if (STATE_SUCCEEDED.equals(state) || STATE_FAILED.equals(state)) {
+				status.put(FINISHED, Calendar.getInstance());
+			}
+			resourceResolver.commit();
+		}
+	}
+
+	/**
+	 * Adds the progress of every chunk to the job node, saved with the pages of the chunk
+	 */
+	private static class Checkpoint implements PageImporter.RowHandler {
+		private final String path;
+		private final JobExecutionContext context;
+
+		private Checkpoint(String path, JobExecutionContext context) {
+			this.path = path;
+			this.context = context;
+		}
+
+		@Override
+		public void beforeCommit(ResourceResolver resourceResolver, List<PageRow> rows, List<Map<String, String>> results) {
+			Resource jobResource = resourceResolver.getResource(path);
+			if (jobResource == null) {
+				//The job node was deleted, the pages are created without checkpoints
+				return;
+			}
+			//Always read from the repository, the values of a reverted chunk are gone
+			ModifiableValueMap status = jobResource.adaptTo(ModifiableValueMap.class);
+			int errors = status.get(ERRORS, 0);
+			List<String> errorRows = new ArrayList<>(Arrays.asList(status.get(ERROR_ROWS, new String[0])));
+			for (int i = 0; i < rows.size(); i++) {
+				Map<String, String> result = results.get(i);
+				if ("Error".equals(result.get("Status"))) {
+					errors++;
+					if (errorRows.size() < MAX_ERROR_ROWS) {
+						String error = result.containsKey("Error") ? result.get("Error") : result.get("Template");
+						errorRows.add("Row " + rows.get(i).getRow() + ": " + error);
+					}
+				}
+			}
+			status.put(ROWS_DONE, status.get(ROWS_DONE, 0) + rows.size());
+			status.put(ERRORS, errors);
+			status.put(ERROR_ROWS, errorRows.toArray(new String[0]));
+			status.put(UPDATED, Calendar.getInstance());
+		}
+
+		@Override
+		public void onResult(PageRow row, Map<String, String> result) {
+			context.incrementProgressCount(1);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.adobe.training.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.apache.sling.event.jobs.consumer.JobExecutionResult;
+import org.apache.sling.event.jobs.consumer.JobExecutor;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.schedulers.StockImportScheduler;
+import com.adobe.training.core.services.StockImportEngine;
+
+/**
+ * This job executor imports a list of stock symbols in one go. The symbols are handed to the
+ * StockImportEngine, which requests them concurrently on its shared fetch threads and writes and
+ * commits them in chunks on its writer threads. The job thread only waits for the outcome, so the
+ * import throughput does not depend on the number of job queue threads.
+ *
+ * The job result message lists the outcome per symbol, e.g. "ADBE=OK, MSFT=UNCHANGED, XXXX=FAILED (...)", so one
+ * bad symbol does not fail the whole batch. The job only fails if every symbol failed. Symbols skipped because
+ * the feed circuit breaker is open are reported as SKIPPED; if nothing else was imported the job is cancelled
+ * instead of failed, so it is not retried while the feed is down.
+ *
+ * The node structure written is the same as in StockDataWriterJob.
+ */
+@Component(
+		immediate = true,
+		service = JobExecutor.class,
+		property = {
+				JobExecutor.PROPERTY_TOPICS + "=" + StockImportScheduler.JOB_TOPIC_STOCKIMPORT_BATCH
+		}
+)
+public class StockBatchWriterJob implements JobExecutor {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	// Convenience string to find the log messages for this training example class
+	// Logs can be found in crx-quickstart/logs/error.log
+	private String searchableLogStr = "&&&&&";
+
+	@Reference
+	private StockImportEngine stockImportEngine;
+
+	@Override
+	public JobExecutionResult process(Job job, JobExecutionContext context) {
+		String[] symbols = job.getProperty(StockImportScheduler.JOB_PROP_SYMBOLS, String[].class);
+		String stock_url = job.getProperty(StockImportScheduler.JOB_PROP_URL).toString();
+		if (symbols == null || symbols.length == 0) {
+			return context.result().message("No symbols to import").cancelled();
+		}
+
+		List<String> batch = new ArrayList<>(symbols.length);
+		for (String symbol : symbols) {
+			batch.add(symbol.trim().toUpperCase());
+		}
+
+		Map<String, String> outcome;
+		try {
+			outcome = stockImportEngine.importSymbols(stock_url, batch, context::isStopped);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return context.result().message("Interrupted while waiting for stock data").failed();
+		}
+
+		int failed = 0;
+		int skipped = 0;
+		for (String result : outcome.values()) {
+			if (result.startsWith("FAILED")) {
+				failed++;
+			} else if (result.equals("SKIPPED")) {
+				skipped++;
+			}
+		}
+
+		String message = outcome.toString();
+		logger.info(searchableLogStr + "Batch import of {} symbols finished: {}", outcome.size(), message);
+		if (failed == outcome.size()) {
+			return context.result().message(message).failed();
+		}
+		if (skipped > 0 && failed + skipped == outcome.size()) {
+			return context.result().message(message).cancelled();
+		}
+		return context.result().message(message).succeeded();
+	}
+}
@@ -0,0 +1,105 @@
+package com.adobe.training.core;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import com.adobe.training.core.services.StockQuote;
+
+/**
+ * Reads the JSON returned by the stock feed token by token straight into a StockQuote.
+ * Only the fields below are read; all other fields, including nested objects and arrays,
+ * are skipped without being materialized.
+ *
+ * {
+ *   "symbol": "ADBE",
+ *   "companyName": "Adobe Inc.",
+ *   "sector": "Technology",
+ *   "latestPrice": 262.7,
+ *   "latestUpdate": 1553192968000,
+ *   ...
+ * }
+ *
+ * Numbers may be sent as JSON numbers or as strings. The JsonFactory is thread-safe and
+ * shared by all jobs.
+ */
+public final class StockQuoteParser {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private StockQuoteParser() {
+	}
+
+	/**
+	 * Fills the given quote with the data of the payload.
+	 *
+	 * @param payload JSON returned by the stock feed
+	 * @param quote quote to fill, all previous values are cleared
+	 * @return the filled quote
+	 * @throws JsonParseException if the payload is not a JSON object or latestPrice / latestUpdate are missing
+	 */
+	public static StockQuote parse(byte[] payload, StockQuote quote) throws IOException {
+		quote.reset();
+		try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new JsonParseException(parser, "Stock data is not a JSON object");
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				parser.nextToken();
+				switch (field) {
+					case "symbol":
+						quote.setSymbol(parser.getValueAsString());
+						break;
+					case "companyName":
+						quote.setCompanyName(parser.getValueAsString());
+						break;
+					case "sector":
+						quote.setSector(parser.getValueAsString());
+						break;
+					case "latestPrice":
+						quote.setLatestPrice(parser.getValueAsDouble(Double.NaN));
+						break;
+					case "open":
+						quote.setOpen(parser.getValueAsDouble(Double.NaN));
+						break;
+					case "high":
+						quote.setHigh(parser.getValueAsDouble(Double.NaN));
+						break;
+					case "low":
+						quote.setLow(parser.getValueAsDouble(Double.NaN));
+						break;
+					case "latestVolume":
+						quote.setLatestVolume(parser.getValueAsLong(0));
+						break;
+					case "change":
+						quote.setChange(parser.getValueAsDouble(Double.NaN));
+						break;
+					case "week52High":
+						quote.setWeek52High(parser.getValueAsDouble(Double.NaN));
+						break;
+					case "week52Low":
+						quote.setWeek52Low(parser.getValueAsDouble(Double.NaN));
+						break;
+					case "ytdChange":
+						quote.setYtdChange(parser.getValueAsDouble(Double.NaN));
+						break;
+					case "latestUpdate":
+						quote.setLatestUpdate(parser.getValueAsLong(0));
+						break;
+					default:
+						break;
+				}
+				//Skip nested content of unknown (or malformed) fields, no-op for plain values
+				parser.skipChildren();
+			}
+			if (Double.isNaN(quote.getLatestPrice()) || quote.getLatestUpdate() == 0) {
+				throw new JsonParseException(parser, "Stock data has no latestPrice or latestUpdate");
+			}
+		}
+		return quote;
+	}
+}
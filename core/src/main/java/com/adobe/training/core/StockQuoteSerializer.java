@@ -0,0 +1,52 @@
+package com.adobe.training.core;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import com.adobe.training.core.services.StockQuote;
+
+/**
+ * Writes a StockQuote as JSON fields named like the properties of the trade node written by
+ * StockDataWriterJob, so the JSON endpoints and the repository use the same names:
+ *
+ *   "companyName": "Adobe Inc.",
+ *   "sector": "Technology",
+ *   "lastTrade": 262.7,
+ *   "openPrice": 259.0,
+ *   ...
+ *   "latestUpdate": 1553192968000
+ *
+ * Numbers are written as JSON numbers, values that are not known as null.
+ */
+public final class StockQuoteSerializer {
+
+	private StockQuoteSerializer() {
+	}
+
+	/**
+	 * Writes the fields of the quote into the current JSON object of the generator.
+	 */
+	public static void writeFields(JsonGenerator json, StockQuote quote) throws IOException {
+		json.writeStringField(StockDataWriterJob.COMPANY, quote.getCompanyName());
+		json.writeStringField(StockDataWriterJob.SECTOR, quote.getSector());
+		writeNumber(json, StockDataWriterJob.LASTTRADE, quote.getLatestPrice());
+		writeNumber(json, StockDataWriterJob.OPENPRICE, quote.getOpen());
+		writeNumber(json, StockDataWriterJob.RANGEHIGH, quote.getHigh());
+		writeNumber(json, StockDataWriterJob.RANGELOW, quote.getLow());
+		json.writeNumberField(StockDataWriterJob.VOLUME, quote.getLatestVolume());
+		writeNumber(json, StockDataWriterJob.UPDOWN, quote.getChange());
+		writeNumber(json, StockDataWriterJob.WEEK52HIGH, quote.getWeek52High());
+		writeNumber(json, StockDataWriterJob.WEEK52LOW, quote.getWeek52Low());
+		writeNumber(json, StockDataWriterJob.YTDCHANGE, quote.getYtdChange());
+		json.writeNumberField(StockDataWriterJob.LATESTUPDATE, quote.getLatestUpdate());
+	}
+
+	private static void writeNumber(JsonGenerator json, String name, double value) throws IOException {
+		if (Double.isNaN(value)) {
+			json.writeNullField(name);
+		} else {
+			json.writeNumberField(name, value);
+		}
+	}
+}
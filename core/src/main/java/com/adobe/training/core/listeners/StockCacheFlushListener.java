@@ -0,0 +1,192 @@
+package com.adobe.training.core.listeners;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.apache.sling.commons.scheduler.ScheduleOptions;
+import org.apache.sling.commons.scheduler.Scheduler;
+import org.apache.sling.distribution.DistributionRequest;
+import org.apache.sling.distribution.DistributionRequestType;
+import org.apache.sling.distribution.DistributionResponse;
+import org.apache.sling.distribution.Distributor;
+import org.apache.sling.distribution.SimpleDistributionRequest;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.StockDataWriterJob;
+import com.adobe.training.core.services.StockReferenceIndex;
+
+/**
+ * Flushes the dispatcher cache of exactly the pages that show an imported symbol, instead of
+ * relying on the auto invalidation of whole subtrees (/statfileslevel of the dispatcher farm).
+ *
+ * Every import committed on this instance changes /content/stocks/<SYMBOL>/trade. The symbol is
+ * remembered and nothing is sent right away. Once no trade node changed for quiet_period seconds,
+ * or max_delay seconds after the first pending change at the latest, the pages of all pending
+ * symbols are looked up in the StockReferenceIndex and invalidated with one distribution request.
+ * An import cycle of many batch jobs therefore results in one flush, a symbol that no page shows
+ * in none.
+ */
+@Component(immediate = true,
+			service = ResourceChangeListener.class,
+			property = {
+					ResourceChangeListener.PATHS + "=glob:" + StockDataWriterJob.STOCK_IMPORT_FOLDER + "/*/trade",
+					ResourceChangeListener.CHANGES + "=ADDED",
+					ResourceChangeListener.CHANGES + "=CHANGED"
+			})
+@Designate(ocd = StockCacheFlushListener.Config.class)
+public class StockCacheFlushListener implements ResourceChangeListener {
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	// Convenience string to find the log messages for this training example class
+	// Logs can be found in crx-quickstart/logs/error.log
+	private String searchableLogStr = "$$$$$";
+
+	@ObjectClassDefinition(name = "Training Stock Cache Flush",
+						   description = "Invalidates the dispatcher cache of the pages showing an imported stock symbol")
+	public @interface Config {
+		@AttributeDefinition(
+				name = "Enabled",
+				type = AttributeType.BOOLEAN
+		)
+		boolean enabled() default true;
+
+		@AttributeDefinition(
+				name = "Distribution Agent",
+				description = "Name of the distribution agent that invalidates the dispatcher cache",
+				type = AttributeType.STRING
+		)
+		String agent_name() default "publish";
+
+		@AttributeDefinition(
+				name = "Quiet Period",
+				description = "Seconds without a stock data change before the pending pages are flushed",
+				type = AttributeType.INTEGER
+		)
+		int quiet_period() default 5;
+
+		@AttributeDefinition(
+				name = "Max Delay",
+				description = "Maximum seconds between the first pending change and the flush, also while imports keep running",
+				type = AttributeType.INTEGER
+		)
+		int max_delay() default 30;
+	}
+
+	private static final String JOB_NAME = StockCacheFlushListener.class.getName();
+
+	@Reference
+	private StockReferenceIndex stockReferenceIndex;
+
+	@Reference
+	private Distributor distributor;
+
+	@Reference
+	private ResourceResolverFactory resourceResolverFactory;
+
+	@Reference
+	private Scheduler scheduler;
+
+	private volatile Config config;
+
+	//Symbols changed since the last flush, guarded by this
+	private Set<String> pending = new LinkedHashSet<>();
+	private long firstChange;
+	private long lastChange;
+
+	@Activate
+	@Modified
+	protected void activate(Config config) {
+		this.config = config;
+		scheduler.unschedule(JOB_NAME);
+		if (!config.enabled()) {
+			logger.info(searchableLogStr + "Stock cache flush is disabled");
+			return;
+		}
+		ScheduleOptions options = scheduler.NOW(-1, 1)
+				.name(JOB_NAME)
+				.canRunConcurrently(false);
+		scheduler.schedule((Runnable) () -> flushIfDue(System.currentTimeMillis()), options);
+	}
+
+	@Deactivate
+	protected void deactivate() {
+		scheduler.unschedule(JOB_NAME);
+	}
+
+	@Override
+	public void onChange(List<ResourceChange> changes) {
+		if (!config.enabled()) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			for (ResourceChange change : changes) {
+				String symbolPath = change.getPath().substring(0, change.getPath().lastIndexOf('/'));
+				pending.add(symbolPath.substring(symbolPath.lastIndexOf('/') + 1));
+			}
+			if (firstChange == 0) {
+				firstChange = now;
+			}
+			lastChange = now;
+		}
+	}
+
+	/**
+	 * Timer tick: flushes the pending symbols once the imports are quiet or max_delay is reached
+	 */
+	void flushIfDue(long now) {
+		Set<String> symbols;
+		synchronized (this) {
+			if (pending.isEmpty()
+					|| now - lastChange < config.quiet_period() * 1000L
+					&& now - firstChange < config.max_delay() * 1000L) {
+				return;
+			}
+			symbols = pending;
+			pending = new LinkedHashSet<>();
+			firstChange = 0;
+		}
+		flush(symbols);
+	}
+
+	private void flush(Set<String> symbols) {
+		Set<String> pages = new LinkedHashSet<>();
+		for (String symbol : symbols) {
+			pages.addAll(stockReferenceIndex.getPages(symbol));
+		}
+		if (pages.isEmpty()) {
+			return;
+		}
+		//Get the service user (training-user) that belongs to the training.core:training subservice
+		Map<String, Object> serviceParams = new HashMap<>();
+		serviceParams.put(ResourceResolverFactory.SUBSERVICE, "training");
+		try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(serviceParams)) {
+			DistributionRequest request = new SimpleDistributionRequest(DistributionRequestType.INVALIDATE, false, pages.toArray(new String[0]));
+			DistributionResponse response = distributor.distribute(config.agent_name(), resourceResolver, request);
+			if (response.isSuccessful()) {
+				logger.info(searchableLogStr + "Flushed {} pages for {} changed symbols", pages.size(), symbols.size());
+			} else {
+				logger.error(searchableLogStr + "Flush of {} pages failed: {}", pages.size(), response.getMessage());
+			}
+		} catch (LoginException | RuntimeException e) {
+			logger.error(searchableLogStr + "Could not flush the pages of " + symbols.size() + " changed symbols", e);
+		}
+	}
+}
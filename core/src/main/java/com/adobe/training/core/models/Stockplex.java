@@ -1,28 +1,33 @@
 package com.adobe.training.core.models;
 
-import java.util.HashMap;
+import java.time.Instant;
+import java.util.Collections;
 import java.util.Map;
 
 import javax.annotation.PostConstruct;
 
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.Resource;
-import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.models.annotations.DefaultInjectionStrategy;
 import org.apache.sling.models.annotations.Exporter;
 import org.apache.sling.models.annotations.Model;
-import org.apache.sling.models.annotations.injectorspecific.ResourcePath;
+import org.apache.sling.models.annotations.injectorspecific.OSGiService;
 import org.apache.sling.models.annotations.injectorspecific.ScriptVariable;
 import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
 
 import com.adobe.cq.export.json.ComponentExporter;
-import com.adobe.training.core.StockDataWriterJob;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.adobe.training.core.services.StockFeedClient;
+import com.adobe.training.core.services.StockSnapshot;
+import com.adobe.training.core.services.StockSnapshotCache;
+import com.adobe.training.core.services.TradingCalendar;
 import com.day.cq.wcm.api.designer.Style;
 
 /**
  * This model is used as the backend logic for the stockplex component. Using a Sling model allows the component
  * to be exportable via JSON for a headless scenarios. Stock data that this model uses is imported into the JCR
- * via StockImportScheduler.java
+ * via StockImportScheduler.java. The data map is an immutable snapshot shared by every component showing the
+ * same symbol (see StockSnapshotCache), so it must not be modified
  * 
  * The stock data that is expected is in the form:
  * /content/stocks
@@ -33,6 +38,10 @@ import com.day.cq.wcm.api.designer.Style;
  *     - lastTrade = <value
  *     - ..
  *     LK, updated for GITHUB data, 190710
+ *
+ * Renders can tell old data from fresh data: latestUpdate is the time of the shown trade, quoteAge
+ * the number of seconds since then (not exported) and stale is true while the stock feed is unavailable or, during the trading session, when
+ * the trade is older than STALE_AFTER_SECONDS.
  */
 
 @Model(adaptables=SlingHttpServletRequest.class,		
@@ -42,7 +51,9 @@ import com.day.cq.wcm.api.designer.Style;
 @Exporter(name="jackson", extensions = "json")
 public class Stockplex implements ComponentExporter{
 	
-	protected static final String RESOURCE_TYPE = "training/components/stockplex";
+	public static final String RESOURCE_TYPE = "training/components/stockplex";
+	//During the trading session quotes older than 15 minutes are shown as stale
+	protected static final long STALE_AFTER_SECONDS = 15 * 60;
 	
 	//HTL global object in the model
 	//Learn more  at Helpx > HTL Global Objects
@@ -64,47 +75,38 @@ public class Stockplex implements ComponentExporter{
     @ValueMapValue
     private String showStockDetails;
 
-    //content root of for stock data. /content/stocks
-    @ResourcePath(path = StockDataWriterJob.STOCK_IMPORT_FOLDER)
-    private Resource stocksRoot;
+    //Shared snapshots of the imported stock data
+    @OSGiService
+    private StockSnapshotCache stockSnapshotCache;
+
+    @OSGiService
+    private StockFeedClient stockFeedClient;
+
+    @OSGiService
+    private TradingCalendar tradingCalendar;
     
+    //0.0 while no trade was imported, as the exported JSON always had
     private double currentPrice;
+    private Long latestUpdate;
     private Map<String,Object> data;
+    private Map<String,Double> analytics;
     
     @PostConstruct
     public void constructDataMap() {
-        ValueMap tradeValues = null;
-        
-        //Check to see if stock data has been imported into the JCR
-        if(stocksRoot != null) {
-	        Resource stockResource = stocksRoot.getChild(symbol);
-	    	if(stockResource != null) {
-	        	Resource lastTradeResource = stockResource.getChild("trade");
-	        	if(lastTradeResource != null){
-                    tradeValues = lastTradeResource.getValueMap();
-                } 
-	    	}
-        }
-        
-        data = new HashMap<>();
-        //If stock information is in the JCR, display the data
-        if(tradeValues != null) {
-        	currentPrice = tradeValues.get(StockDataWriterJob.LASTTRADE, Double.class);   	
-            data.put("Request Date", tradeValues.get(StockDataWriterJob.DAYOFUPDATE, String.class));
-            data.put("Request Time", tradeValues.get(StockDataWriterJob.UPDATETIME, String.class));
-            data.put("UpDown", tradeValues.get(StockDataWriterJob.UPDOWN, Double.class));
-            data.put("Open Price", tradeValues.get(StockDataWriterJob.OPENPRICE, Double.class));
-            data.put("Range High", tradeValues.get(StockDataWriterJob.RANGEHIGH, Double.class));
-            data.put("Range Low", tradeValues.get(StockDataWriterJob.RANGELOW, Double.class));
-            data.put("Volume",  tradeValues.get(StockDataWriterJob.VOLUME, Integer.class));
-            data.put("Company", tradeValues.get(StockDataWriterJob.COMPANY, String.class));
-            data.put("Sector", tradeValues.get(StockDataWriterJob.SECTOR, String.class));
-            data.put("52 Week Low", tradeValues.get(StockDataWriterJob.WEEK52LOW, Double.class));
+        //All components showing the same symbol share one snapshot until the next import changes it
+        StockSnapshot snapshot = stockSnapshotCache != null ? stockSnapshotCache.get(symbol) : null;
+        if(snapshot != null) {
+            data = snapshot.getData();
+            Double price = snapshot.getCurrentPrice();
+            currentPrice = price != null ? price : 0;
+            latestUpdate = snapshot.getLatestUpdate();
+            analytics = snapshot.getAnalytics();
         } else {
-        	data.put(symbol,"No import config found. If the StockListener.java class is apart of your project: Go to Sites console > Create Folder: stocks > Create Folder: ADBE");
+            data = Collections.singletonMap(symbol, StockSnapshot.NO_DATA_MESSAGE);
+            analytics = Collections.emptyMap();
         }
     }
-    
+
     /**
      * All getter methods below will be apart of the output by the JSON Exporter
      */ 
@@ -125,10 +127,45 @@ public class Stockplex implements ComponentExporter{
     public Double getCurrentPrice() {
         return currentPrice;
     }
+    //Epoch milliseconds of the trade shown, null if unknown
+    public Long getLatestUpdate() {
+        return latestUpdate;
+    }
+    //Seconds since the trade shown, null if the time of the trade is unknown
+    //Not exported, so the JSON of a symbol stays the same until the next import
+    @JsonIgnore
+    public Long getQuoteAge() {
+        return latestUpdate != null ? Math.max(0, (System.currentTimeMillis() - latestUpdate) / 1000) : null;
+    }
+    //True if the shown trade data may be out of date
+    public boolean isStale() {
+        return isStale(latestUpdate, stockFeedClient, tradingCalendar);
+    }
+    /**
+     * @param latestUpdate epoch milliseconds of the trade, null if unknown
+     * @return true while the stock feed is unavailable or, during the trading session, when the trade is older than STALE_AFTER_SECONDS
+     */
+    public static boolean isStale(Long latestUpdate, StockFeedClient stockFeedClient, TradingCalendar tradingCalendar) {
+        if (stockFeedClient != null && !stockFeedClient.isAvailable()) {
+            return true;
+        }
+        if (latestUpdate == null) {
+            return true;
+        }
+        long age = (System.currentTimeMillis() - latestUpdate) / 1000;
+        //Outside of the trading session the last trade is expected to be old
+        return tradingCalendar != null
+                && tradingCalendar.getPhase(Instant.now()) == TradingCalendar.Phase.OPEN
+                && age > STALE_AFTER_SECONDS;
+    }
     //Calculated trade values based on imported stock info 
     public Map<String,Object> getData() {
         return data;
     }
+    //Rolling indicators updated with every import, e.g. sma20, ema12, vwap, percentFromWeek52High
+    public Map<String,Double> getAnalytics() {
+        return analytics;
+    }
     @Override
 	public String getExportedType() {
         return resource.getResourceType();
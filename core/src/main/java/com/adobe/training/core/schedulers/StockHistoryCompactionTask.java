@@ -0,0 +1,196 @@
+package com.adobe.training.core.schedulers;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ValueMap;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.StockDataWriterJob;
+
+/**
+ * Rolls the intraday ticks of the stock history up into daily OHLC summaries. Day buckets older
+ * than the retention period get the summary properties and lose their tick children:
+ *
+ * /content/stocks/<SYMBOL>/history/yyyy/MM/dd
+ *   - open = <first trade of the day>
+ *   - high = <highest trade>
+ *   - low = <lowest trade>
+ *   - close = <last trade of the day>
+ *   - volume = <day volume>
+ *   - ticks = <number of ticks rolled up>
+ *   - compacted = true
+ *
+ * Compacted days are skipped, so every run only touches the days that became old enough since
+ * the last run. Changes are committed once per symbol. The task runs on a single instance of the
+ * cluster (scheduler.runOn=SINGLE).
+ */
+@Designate(ocd=StockHistoryCompactionTask.Config.class)
+@Component(service=Runnable.class,
+        property = {
+                //Every instance sees the same content, one compaction per cluster is enough
+                "scheduler.runOn=SINGLE"
+        })
+public class StockHistoryCompactionTask implements Runnable {
+
+    public static final String OPEN = "open";
+    public static final String HIGH = "high";
+    public static final String LOW = "low";
+    public static final String CLOSE = "close";
+    public static final String TICKS = "ticks";
+    public static final String COMPACTED = "compacted";
+
+    @ObjectClassDefinition(name="Training Stock History Compaction",
+                           description = "Rolls old intraday stock ticks up into daily OHLC summaries")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Cron-job expression")
+        String scheduler_expression() default "0 30 1 * * ?";
+
+        @AttributeDefinition(name = "Concurrent task",
+                             description = "Whether or not to schedule this task concurrently")
+        boolean scheduler_concurrent() default false;
+
+        @AttributeDefinition(name = "Retention days",
+                             description = "Number of days for which intraday ticks are kept before they are compacted")
+        int retention_days() default 7;
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    // Convenience string to find the log messages for this training example class
+    // Logs can be found in crx-quickstart/logs/error.log
+    private String searchableLogStr = "*****";
+
+    @Reference
+    private ResourceResolverFactory resourceResolverFactory;
+
+    private int retentionDays;
+
+    @Activate
+    @Modified
+    protected void activate(final Config config) {
+        retentionDays = Math.max(1, config.retention_days());
+    }
+
+    @Override
+    public void run() {
+        LocalDate cutoff = LocalDate.now(StockDataWriterJob.TIME_ZONE).minusDays(retentionDays);
+
+        //Get the service user (training-user) that belongs to the training.core:training subservice
+        Map<String, Object> serviceParams = new HashMap<>();
+        serviceParams.put(ResourceResolverFactory.SUBSERVICE, "training");
+
+        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(serviceParams)) {
+            Resource stocksRoot = resourceResolver.getResource(StockDataWriterJob.STOCK_IMPORT_FOLDER);
+            if (stocksRoot == null) {
+                return;
+            }
+            int compactedDays = 0;
+            for (Resource stock : stocksRoot.getChildren()) {
+                Resource history = stock.getChild(StockDataWriterJob.HISTORY);
+                if (history == null) {
+                    continue;
+                }
+                try {
+                    compactedDays += compactHistory(resourceResolver, history, cutoff);
+                    resourceResolver.commit();
+                } catch (PersistenceException e) {
+                    logger.error(searchableLogStr + "Could not compact the history of " + stock.getName(), e);
+                    resourceResolver.revert();
+                }
+            }
+            logger.info(searchableLogStr + "Stock history compaction rolled up {} days older than {}", compactedDays, cutoff);
+        } catch (LoginException e) {
+            logger.error(searchableLogStr + "Exception with getting the service resource resolver", e);
+        }
+    }
+
+    private int compactHistory(ResourceResolver resourceResolver, Resource history, LocalDate cutoff) throws PersistenceException {
+        int compactedDays = 0;
+        for (Resource year : history.getChildren()) {
+            for (Resource month : year.getChildren()) {
+                for (Resource day : month.getChildren()) {
+                    LocalDate date;
+                    try {
+                        date = LocalDate.of(Integer.parseInt(year.getName()), Integer.parseInt(month.getName()), Integer.parseInt(day.getName()));
+                    } catch (NumberFormatException | DateTimeException e) {
+                        continue;
+                    }
+                    if (date.isBefore(cutoff) && !day.getValueMap().get(COMPACTED, false)) {
+                        compactDay(resourceResolver, day);
+                        compactedDays++;
+                    }
+                }
+            }
+        }
+        return compactedDays;
+    }
+
+    /**
+     * Computes the OHLC summary of one day bucket and removes its ticks.
+     */
+    private void compactDay(ResourceResolver resourceResolver, Resource day) throws PersistenceException {
+        long firstTime = Long.MAX_VALUE;
+        long lastTime = Long.MIN_VALUE;
+        double open = 0, close = 0;
+        double high = Double.NEGATIVE_INFINITY;
+        double low = Double.POSITIVE_INFINITY;
+        long volume = 0;
+        List<Resource> ticks = new ArrayList<>();
+
+        for (Resource tick : day.getChildren()) {
+            ValueMap values = tick.getValueMap();
+            Double price = values.get(StockDataWriterJob.LASTTRADE, Double.class);
+            Long time = values.get(StockDataWriterJob.LATESTUPDATE, Long.class);
+            if (price == null || time == null) {
+                continue;
+            }
+            ticks.add(tick);
+            if (time < firstTime) {
+                firstTime = time;
+                open = price;
+            }
+            if (time > lastTime) {
+                lastTime = time;
+                close = price;
+            }
+            high = Math.max(high, price);
+            low = Math.min(low, price);
+            //The feed reports the accumulated volume of the day
+            volume = Math.max(volume, values.get(StockDataWriterJob.VOLUME, 0L));
+        }
+
+        ModifiableValueMap summary = day.adaptTo(ModifiableValueMap.class);
+        if (!ticks.isEmpty()) {
+            summary.put(OPEN, open);
+            summary.put(HIGH, high);
+            summary.put(LOW, low);
+            summary.put(CLOSE, close);
+            summary.put(StockDataWriterJob.VOLUME, volume);
+        }
+        summary.put(TICKS, ticks.size());
+        summary.put(COMPACTED, true);
+
+        for (Resource tick : ticks) {
+            resourceResolver.delete(tick);
+        }
+    }
+}
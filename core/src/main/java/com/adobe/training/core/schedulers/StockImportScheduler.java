@@ -1,6 +1,8 @@
 package com.adobe.training.core.schedulers;
 
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 
@@ -9,6 +11,8 @@ import org.apache.sling.event.jobs.JobBuilder;
 import org.apache.sling.event.jobs.JobBuilder.ScheduleBuilder;
 import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.event.jobs.ScheduledJobInfo;
+import org.apache.sling.commons.scheduler.ScheduleOptions;
+import org.apache.sling.commons.scheduler.Scheduler;
 
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -23,10 +27,21 @@ import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.adobe.training.core.services.StockFeedClient;
+import com.adobe.training.core.services.TradingCalendar;
+
 /**
  * This class adds a Sling Job to the job queue so that a job consumer can process
  * work. Sling Jobs are guaranteed to be proceed and the scheduler can be configured
  * based on an OSGi config node.
+ *
+ * In adaptive mode the cron-job expression is not used. Instead every run schedules the next one
+ * based on the trading phase of the market (see TradingCalendar) and on how many fetches in a row
+ * returned unchanged data (see StockFeedClient). Like the cron schedule, the adaptive runs only add
+ * jobs on the leader of the cluster.
+ *
+ * Use a configuration of this class for individual imports. Every symbol folder below
+ * /content/stocks is imported by the StockUniverseScheduler without any configuration.
  */
 @Component(immediate = true,
 			configurationPid = "com.adobe.training.core.schedulers.StockImportScheduler",
@@ -34,7 +49,9 @@ import org.slf4j.LoggerFactory;
 @Designate(ocd = StockImportScheduler.StockImportConfiguration.class, factory=true)
 public class StockImportScheduler {
 	public static final String JOB_TOPIC_STOCKIMPORT = "com/adobe/training/core/jobs/stockimportjob";
+	public static final String JOB_TOPIC_STOCKIMPORT_BATCH = "com/adobe/training/core/jobs/stockimportbatchjob";
 	public static final String JOB_PROP_SYMBOL = "symbol";
+	public static final String JOB_PROP_SYMBOLS = "symbols";
 	public static final String JOB_PROP_URL = "url";
 	public static final String DEFAULT_IMPORT_URL = "https://raw.githubusercontent.com/Adobe-Marketing-Cloud/ADLS-Samples/master/stock-data/";
 	
@@ -52,6 +69,13 @@ public class StockImportScheduler {
 		)
 		public String symbol() default "";
 
+		@AttributeDefinition(
+				name = "Stock Symbols (batch)",
+				description = "When set, all listed stocks are imported together by one batch job with a single repository commit. Stock Symbol is ignored.",
+				type = AttributeType.STRING
+		)
+		public String[] symbols() default {};
+
 		@AttributeDefinition(
 			name = "Expression",
 			description = "Run every so often as defined in the cron-job expression.",
@@ -65,16 +89,69 @@ public class StockImportScheduler {
 				type = AttributeType.STRING
 		)
 		public String stock_url() default DEFAULT_IMPORT_URL;
+
+		@AttributeDefinition(
+				name = "Adaptive",
+				description = "Ignore the cron-job expression and poll based on the Training Trading Calendar: "
+						+ "fast while the market is open, slowly pre/post-market and not at all when it is closed",
+				type = AttributeType.BOOLEAN
+		)
+		public boolean adaptive() default false;
+
+		@AttributeDefinition(
+				name = "Session Interval",
+				description = "Adaptive mode: seconds between imports while the market is open",
+				type = AttributeType.INTEGER
+		)
+		public int session_interval() default 60;
+
+		@AttributeDefinition(
+				name = "Extended Hours Interval",
+				description = "Adaptive mode: seconds between imports pre- and post-market. 0 disables imports in extended hours",
+				type = AttributeType.INTEGER
+		)
+		public int extended_interval() default 600;
+
+		@AttributeDefinition(
+				name = "Back Off After",
+				description = "Adaptive mode: number of consecutive unchanged fetches after which the interval is doubled with every further unchanged fetch",
+				type = AttributeType.INTEGER
+		)
+		public int backoff_after() default 3;
+
+		@AttributeDefinition(
+				name = "Max Interval",
+				description = "Adaptive mode: upper limit in seconds for the interval when backing off",
+				type = AttributeType.INTEGER
+		)
+		public int max_interval() default 1800;
 	}
 
 	@Reference
 	private JobManager jobManager;
+
+	@Reference
+	private Scheduler scheduler;
+
+	@Reference
+	private TradingCalendar tradingCalendar;
+
+	@Reference
+	private StockFeedClient stockFeedClient;
 	
     private int schedulerID;
 
 	private JobBuilder jobBuilder;
 	private ScheduleBuilder scheduleBuilder;
 	private ScheduledJobInfo theScheduledJob;
+
+	//Adaptive mode, guarded by this
+	private StockImportConfiguration adaptiveConfig;
+	private String adaptiveJobName;
+	//Incremented whenever the adaptive schedule is removed, runs of an older generation do nothing
+	private int adaptiveGeneration;
+	private String jobTopic;
+	private HashMap<String, Object> jobProps;
 	
     @Activate @Modified
 	protected void activate(StockImportConfiguration config) {
@@ -94,14 +171,28 @@ public class StockImportScheduler {
 		removeScheduler(config);
 	}
 
-    private void startScheduledJob(StockImportConfiguration config){
+    private synchronized void startScheduledJob(StockImportConfiguration config){
     	
-    	jobBuilder = jobManager.createJob(StockImportScheduler.JOB_TOPIC_STOCKIMPORT);
-        // Create a properties map that contains the configurations we want to pass to the job
-		HashMap<String, Object> jobProps = new HashMap<>();
-		jobProps.put(JOB_PROP_SYMBOL, config.symbol());
+    	// Create a properties map that contains the configurations we want to pass to the job
+		jobProps = new HashMap<>();
 		jobProps.put(JOB_PROP_URL, config.stock_url());
+		if(isBatch(config)) {
+			//One job imports every listed symbol
+			jobTopic = StockImportScheduler.JOB_TOPIC_STOCKIMPORT_BATCH;
+			jobProps.put(JOB_PROP_SYMBOLS, config.symbols());
+		} else {
+			jobTopic = StockImportScheduler.JOB_TOPIC_STOCKIMPORT;
+			jobProps.put(JOB_PROP_SYMBOL, config.symbol());
+		}
+
+		if(config.adaptive()) {
+			adaptiveConfig = config;
+			adaptiveJobName = getClass().getName() + "." + schedulerID;
+			scheduleAdaptiveRun(true);
+			return;
+		}
 		
+		jobBuilder = jobManager.createJob(jobTopic);
         jobBuilder.properties(jobProps);
         scheduleBuilder = jobBuilder.schedule();
     	scheduleBuilder.cron(config.cronExpression());
@@ -116,10 +207,105 @@ public class StockImportScheduler {
         }
     }
     
-	private void removeScheduler(StockImportConfiguration config) {
+	/**
+	 * Adaptive mode: adds the import job to the queue and schedules the next run
+	 */
+	private synchronized void runAdaptive(int generation) {
+		if(generation != adaptiveGeneration || adaptiveJobName == null) {
+			//Removed by deactivate or modified while this run was due or waiting for the lock
+			return;
+		}
+		jobManager.addJob(jobTopic, jobProps);
+		scheduleAdaptiveRun(false);
+	}
+
+	private synchronized void scheduleAdaptiveRun(boolean first) {
+		Instant now = Instant.now();
+		Instant next = getNextAdaptiveExecution(now, first);
+		int generation = adaptiveGeneration;
+		ScheduleOptions options = scheduler.AT(Date.from(next))
+				.name(adaptiveJobName)
+				.canRunConcurrently(false)
+				.onLeaderOnly(true);
+		scheduler.schedule((Runnable) () -> runAdaptive(generation), options);
+		logger.info(searchableLogStr + "Adaptive ScheduledJob added.  Topic: " + jobTopic + "  "
+				+ "Properties: " + jobProps.toString() + " "
+				+ "Market: " + tradingCalendar.getPhase(now) + " "
+				+ "Unchanged fetches: " + getUnchangedCount() + " "
+				+ "Next Execution: " + Date.from(next).toString());
+	}
+
+	/**
+	 * Poll fast during the session, slowly pre/post-market and not at all when the market is closed.
+	 * The interval doubles with every unchanged fetch once backoff_after unchanged fetches in a row
+	 * were seen. A run is never scheduled past the next phase change, so the first import of a
+	 * session happens right at the open.
+	 */
+	private Instant getNextAdaptiveExecution(Instant now, boolean first) {
+		long interval = getInterval(tradingCalendar.getPhase(now));
+		if(interval <= 0) {
+			//Nothing to poll now, wait for the next phase in which imports run
+			Instant change = now;
+			for(int i = 0; i < 100 && interval <= 0; i++) {
+				change = tradingCalendar.getNextPhaseChange(change);
+				interval = getInterval(tradingCalendar.getPhase(change));
+			}
+			return change;
+		}
+		if(first) {
+			return now;
+		}
+
+		int backoffSteps = Math.min(getUnchangedCount() - adaptiveConfig.backoff_after() + 1, 16);
+		if(backoffSteps > 0) {
+			interval = Math.max(interval, Math.min(interval << backoffSteps, adaptiveConfig.max_interval()));
+		}
+		Instant next = now.plusSeconds(interval);
+		Instant change = tradingCalendar.getNextPhaseChange(now);
+		return next.isAfter(change) ? change : next;
+	}
+
+	private long getInterval(TradingCalendar.Phase phase) {
+		switch(phase) {
+			case OPEN:
+				return adaptiveConfig.session_interval();
+			case PRE_MARKET:
+			case POST_MARKET:
+				return adaptiveConfig.extended_interval();
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * @return consecutive unchanged fetches, for a batch the lowest count of all its symbols
+	 */
+	private int getUnchangedCount() {
+		if(!isBatch(adaptiveConfig)) {
+			return stockFeedClient.getUnchangedCount(adaptiveConfig.stock_url(), adaptiveConfig.symbol().toUpperCase());
+		}
+		int unchanged = Integer.MAX_VALUE;
+		for(String symbol : adaptiveConfig.symbols()) {
+			unchanged = Math.min(unchanged, stockFeedClient.getUnchangedCount(adaptiveConfig.stock_url(), symbol.trim().toUpperCase()));
+		}
+		return unchanged;
+	}
+
+	private boolean isBatch(StockImportConfiguration config) {
+		return config.symbols() != null && config.symbols().length > 0;
+	}
+
+	private synchronized void removeScheduler(StockImportConfiguration config) {
 		if(theScheduledJob != null) {
 			logger.info(searchableLogStr + "Removing '{}' ScheduledJob, with ID: '{}'", config.symbol(), schedulerID);		
 			theScheduledJob.unschedule();
+			theScheduledJob = null;
+		}
+		if(adaptiveJobName != null) {
+			logger.info(searchableLogStr + "Removing '{}' adaptive ScheduledJob, with ID: '{}'", config.symbol(), schedulerID);
+			scheduler.unschedule(adaptiveJobName);
+			adaptiveJobName = null;
 		}
+		adaptiveGeneration++;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,385 @@
+package com.adobe.training.core.schedulers;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.apache.sling.commons.scheduler.ScheduleOptions;
+import org.apache.sling.commons.scheduler.Scheduler;
+import org.apache.sling.event.jobs.JobManager;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.StockDataWriterJob;
+import com.adobe.training.core.services.StockFeedClient;
+import com.adobe.training.core.services.StockReferenceIndex;
+import com.adobe.training.core.services.StockUniverse;
+import com.adobe.training.core.services.TradingCalendar;
+
+/**
+ * Imports every symbol folder below /content/stocks with one component and one timer, instead of
+ * one StockImportScheduler configuration and cron trigger per symbol.
+ *
+ * The universe of symbols is read from the children of /content/stocks in one pass at activation
+ * and kept up to date by resource change events. Each symbol has its own next due time, held in a
+ * priority queue. Every tick of the timer takes the symbols that are due off the queue and adds
+ * them to the job queue as StockBatchWriterJob jobs of up to batch_size symbols.
+ *
+ * The next due time of a symbol follows the same rules as the adaptive mode of
+ * StockImportScheduler: the interval depends on the trading phase (see TradingCalendar), doubles
+ * once a symbol returned unchanged data backoff_after times in a row (see StockFeedClient) and is
+ * never scheduled past the next phase change. While the market is closed nothing is due.
+ *
+ * Imports follow demand: symbols that no published page shows (see StockReferenceIndex) are only
+ * imported every unreferenced_interval seconds, or not at all with 0. Such symbols are parked
+ * without a due time and are put back on the queue as soon as the index changes and reports them
+ * as referenced again.
+ */
+@Component(immediate = true,
+			service = {StockUniverse.class, ResourceChangeListener.class},
+			property = {
+					ResourceChangeListener.PATHS + "=glob:" + StockDataWriterJob.STOCK_IMPORT_FOLDER + "/*",
+					ResourceChangeListener.CHANGES + "=ADDED",
+					ResourceChangeListener.CHANGES + "=REMOVED"
+			})
+@Designate(ocd = StockUniverseScheduler.Config.class)
+public class StockUniverseScheduler implements StockUniverse, ResourceChangeListener, ExternalResourceChangeListener {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	// Convenience string to find the log messages for this training example class
+	// Logs can be found in crx-quickstart/logs/error.log
+	private String searchableLogStr = "*****";
+
+	@ObjectClassDefinition(name = "Training Stock Universe Scheduler",
+						   description = "Imports every stock symbol folder below /content/stocks from a single timer")
+	public @interface Config {
+		@AttributeDefinition(
+				name = "Enabled",
+				type = AttributeType.BOOLEAN
+		)
+		boolean enabled() default true;
+
+		@AttributeDefinition(
+				name = "Stock URL",
+				description = "URL to request the stock data to be imported",
+				type = AttributeType.STRING
+		)
+		String stock_url() default StockImportScheduler.DEFAULT_IMPORT_URL;
+
+		@AttributeDefinition(
+				name = "Tick",
+				description = "Seconds between two checks for symbols that are due",
+				type = AttributeType.INTEGER
+		)
+		int tick() default 15;
+
+		@AttributeDefinition(
+				name = "Batch Size",
+				description = "Maximum number of symbols imported by one batch job",
+				type = AttributeType.INTEGER
+		)
+		int batch_size() default 100;
+
+		@AttributeDefinition(
+				name = "Session Interval",
+				description = "Seconds between imports of a symbol while the market is open",
+				type = AttributeType.INTEGER
+		)
+		int session_interval() default 60;
+
+		@AttributeDefinition(
+				name = "Extended Hours Interval",
+				description = "Seconds between imports of a symbol pre- and post-market. 0 disables imports in extended hours",
+				type = AttributeType.INTEGER
+		)
+		int extended_interval() default 600;
+
+		@AttributeDefinition(
+				name = "Back Off After",
+				description = "Number of consecutive unchanged fetches after which the interval of a symbol is doubled with every further unchanged fetch",
+				type = AttributeType.INTEGER
+		)
+		int backoff_after() default 3;
+
+		@AttributeDefinition(
+				name = "Max Interval",
+				description = "Upper limit in seconds for the interval of a symbol when backing off",
+				type = AttributeType.INTEGER
+		)
+		int max_interval() default 1800;
+
+		@AttributeDefinition(
+				name = "Unreferenced Interval",
+				description = "Seconds between imports of a symbol that no published page shows. 0 disables their import",
+				type = AttributeType.INTEGER
+		)
+		int unreferenced_interval() default 21600;
+	}
+
+	private static final String JOB_NAME = StockUniverseScheduler.class.getName();
+
+	@Reference
+	private ResourceResolverFactory resourceResolverFactory;
+
+	@Reference
+	private JobManager jobManager;
+
+	@Reference
+	private Scheduler scheduler;
+
+	@Reference
+	private TradingCalendar tradingCalendar;
+
+	@Reference
+	private StockFeedClient stockFeedClient;
+
+	@Reference
+	private StockReferenceIndex stockReferenceIndex;
+
+	private volatile Config config;
+
+	//Next due time per symbol, the queue may hold outdated entries which are skipped when polled
+	private final Map<String, Long> dueTimes = new ConcurrentHashMap<>();
+	private final PriorityQueue<Due> queue = new PriorityQueue<>();
+	//Unreferenced symbols without a due time, guarded by queue
+	private final Set<String> parked = new HashSet<>();
+	private long indexRevision = -1;
+
+	@Activate
+	@Modified
+	protected void activate(Config config) {
+		this.config = config;
+		scheduler.unschedule(JOB_NAME);
+		reconcile();
+		if (!config.enabled()) {
+			logger.info(searchableLogStr + "Stock universe scheduler is disabled");
+			return;
+		}
+		//One timer for all symbols, only the leader of the cluster adds import jobs
+		ScheduleOptions options = scheduler.NOW(-1, Math.max(1, config.tick()))
+				.name(JOB_NAME)
+				.canRunConcurrently(false)
+				.onLeaderOnly(true);
+		scheduler.schedule((Runnable) this::run, options);
+		logger.info(searchableLogStr + "Stock universe scheduler started for {} symbols, tick {}s", dueTimes.size(), config.tick());
+	}
+
+	@Deactivate
+	protected void deactivate() {
+		scheduler.unschedule(JOB_NAME);
+	}
+
+	@Override
+	public int add(Collection<String> symbols) {
+		long now = System.currentTimeMillis();
+		long spread = Math.max(1, config.session_interval()) * 1000L;
+		int added = 0;
+		synchronized (queue) {
+			for (String symbol : symbols) {
+				if (symbol == null || !symbol.matches(SYMBOL_PATTERN) || dueTimes.containsKey(symbol)) {
+					continue;
+				}
+				//Spread the first imports of many new symbols over one session interval
+				schedule(symbol, now + Math.floorMod(symbol.hashCode(), spread));
+				added++;
+			}
+		}
+		return added;
+	}
+
+	@Override
+	public void remove(String symbol) {
+		dueTimes.remove(symbol);
+		synchronized (queue) {
+			parked.remove(symbol);
+		}
+	}
+
+	@Override
+	public int reconcile() {
+		Set<String> symbols = new HashSet<>();
+		Map<String, Object> serviceParams = new HashMap<>();
+		serviceParams.put(ResourceResolverFactory.SUBSERVICE, "training");
+		try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(serviceParams)) {
+			Resource stocksRoot = resourceResolver.getResource(StockDataWriterJob.STOCK_IMPORT_FOLDER);
+			if (stocksRoot != null) {
+				for (Resource stock : stocksRoot.getChildren()) {
+					symbols.add(stock.getName());
+				}
+			}
+		} catch (LoginException e) {
+			logger.error(searchableLogStr + "Could not read the stock universe", e);
+			return dueTimes.size();
+		}
+		dueTimes.keySet().retainAll(symbols);
+		synchronized (queue) {
+			parked.retainAll(symbols);
+		}
+		int added = add(symbols);
+		logger.info(searchableLogStr + "Stock universe reconciled: {} symbols, {} new", dueTimes.size(), added);
+		return dueTimes.size();
+	}
+
+	@Override
+	public Set<String> getSymbols() {
+		return Collections.unmodifiableSet(dueTimes.keySet());
+	}
+
+	@Override
+	public void onChange(List<ResourceChange> changes) {
+		List<String> added = new ArrayList<>();
+		for (ResourceChange change : changes) {
+			String symbol = change.getPath().substring(change.getPath().lastIndexOf('/') + 1);
+			if (change.getType() == ResourceChange.ChangeType.REMOVED) {
+				remove(symbol);
+			} else {
+				added.add(symbol);
+			}
+		}
+		if (!added.isEmpty()) {
+			add(added);
+		}
+	}
+
+	/**
+	 * Timer tick: adds batch jobs for all symbols that are due and schedules their next import
+	 */
+	private void run() {
+		Instant now = Instant.now();
+		TradingCalendar.Phase phase = tradingCalendar.getPhase(now);
+		long interval = getInterval(phase);
+		if (interval <= 0) {
+			//Market closed, symbols stay due and are imported with the first tick of the next polling phase
+			return;
+		}
+		long nowMillis = now.toEpochMilli();
+		long phaseChange = tradingCalendar.getNextPhaseChange(now).toEpochMilli();
+
+		long unreferencedInterval = config.unreferenced_interval();
+
+		List<String> due = new ArrayList<>();
+		synchronized (queue) {
+			unpark(nowMillis);
+			while (!queue.isEmpty() && queue.peek().time <= nowMillis) {
+				Due entry = queue.poll();
+				Long time = dueTimes.get(entry.symbol);
+				if (time == null || time != entry.time) {
+					//Removed or rescheduled since this entry was queued
+					continue;
+				}
+				if (stockReferenceIndex.isReferenced(entry.symbol)) {
+					due.add(entry.symbol);
+					schedule(entry.symbol, Math.min(nowMillis + getBackoffInterval(entry.symbol, interval) * 1000L, phaseChange));
+				} else if (unreferencedInterval > 0) {
+					due.add(entry.symbol);
+					schedule(entry.symbol, nowMillis + Math.max(unreferencedInterval, interval) * 1000L);
+				} else {
+					parked.add(entry.symbol);
+				}
+			}
+		}
+		if (due.isEmpty()) {
+			return;
+		}
+
+		int batchSize = Math.max(1, config.batch_size());
+		for (int i = 0; i < due.size(); i += batchSize) {
+			List<String> batch = due.subList(i, Math.min(i + batchSize, due.size()));
+			Map<String, Object> jobProps = new HashMap<>();
+			jobProps.put(StockImportScheduler.JOB_PROP_URL, config.stock_url());
+			jobProps.put(StockImportScheduler.JOB_PROP_SYMBOLS, batch.toArray(new String[0]));
+			jobManager.addJob(StockImportScheduler.JOB_TOPIC_STOCKIMPORT_BATCH, jobProps);
+		}
+		logger.info(searchableLogStr + "Added import jobs for {} due symbols. Market: {}", due.size(), phase);
+	}
+
+	/**
+	 * Makes parked symbols due right away once the reference index reports them as referenced.
+	 * The parked symbols are only checked after the index changed.
+	 */
+	private void unpark(long nowMillis) {
+		long revision = stockReferenceIndex.getRevision();
+		if (revision == indexRevision) {
+			return;
+		}
+		indexRevision = revision;
+		for (Iterator<String> symbols = parked.iterator(); symbols.hasNext();) {
+			String symbol = symbols.next();
+			if (!dueTimes.containsKey(symbol)) {
+				symbols.remove();
+			} else if (stockReferenceIndex.isReferenced(symbol)) {
+				symbols.remove();
+				schedule(symbol, nowMillis);
+			}
+		}
+	}
+
+	private void schedule(String symbol, long time) {
+		dueTimes.put(symbol, time);
+		queue.add(new Due(symbol, time));
+	}
+
+	private long getInterval(TradingCalendar.Phase phase) {
+		switch (phase) {
+			case OPEN:
+				return config.session_interval();
+			case PRE_MARKET:
+			case POST_MARKET:
+				return config.extended_interval();
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * @return the interval doubled for every unchanged fetch of the symbol beyond backoff_after
+	 */
+	private long getBackoffInterval(String symbol, long interval) {
+		int unchanged = stockFeedClient.getUnchangedCount(config.stock_url(), symbol);
+		int backoffSteps = Math.min(unchanged - config.backoff_after() + 1, 16);
+		if (backoffSteps > 0) {
+			return Math.max(interval, Math.min(interval << backoffSteps, config.max_interval()));
+		}
+		return interval;
+	}
+
+	private static class Due implements Comparable<Due> {
+		private final String symbol;
+		private final long time;
+
+		private Due(String symbol, long time) {
+			this.symbol = symbol;
+			this.time = time;
+		}
+
+		@Override
+		public int compareTo(Due other) {
+			return Long.compare(time, other.time);
+		}
+	}
+}
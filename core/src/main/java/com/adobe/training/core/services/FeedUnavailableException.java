@@ -0,0 +1,16 @@
+package com.adobe.training.core.services;
+
+import java.io.IOException;
+
+/**
+ * Thrown by the StockFeedClient without contacting the feed while its circuit breaker is open,
+ * i.e. after too many recent requests failed. Jobs should give up on the import cheaply instead
+ * of waiting for timeouts or being retried.
+ */
+public class FeedUnavailableException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	public FeedUnavailableException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,98 @@
+package com.adobe.training.core.services;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+
+/**
+ * Creates AEM pages from PageRows, used by the PageCreator servlet and the PageCreator job.
+ *
+ * The result of every row is a map with a Status of "Successful" or "Error" and further details
+ * such as Location, Title, Template Used, Tagged with, Warning or Error.
+ *
+ * With upsert, rows of pages that already exist update the title, template and tag of the page
+ * where they differ from the row, with a Status of "Updated" and the changed properties listed
+ * as Changed. An empty title, template or tag in a row keeps the one of the page. Rows that
+ * match their page have a Status of "Unchanged" and write nothing.
+ */
+public interface PageImporter {
+
+	//Template of rows that name none
+	public static final String DEFAULT_TEMPLATE_PATH = "/conf/training/settings/wcm/templates/page-content";
+
+	/**
+	 * Receives the results of an import as soon as their rows are saved
+	 */
+	public interface RowHandler {
+
+		/**
+		 * Called before the changes of the given rows are committed, so the handler can add
+		 * changes of its own, e.g. a checkpoint, that are saved in the same commit. If the commit
+		 * fails the changes are reverted and the rows are committed again one by one.
+		 *
+		 * @param resourceResolver resolver that commits the rows
+		 * @param rows rows about to be committed
+		 * @param results results of the rows, in the order of the rows
+		 */
+		public default void beforeCommit(ResourceResolver resourceResolver, List<PageRow> rows,
+				List<Map<String, String>> results) throws PersistenceException {
+		}
+
+		/**
+		 * Called once per row after its changes were committed or failed
+		 */
+		public void onResult(PageRow row, Map<String, String> result) throws IOException;
+	}
+
+	/**
+	 * Checks all rows before any page is written. The distinct templates, parent paths and tags
+	 * of the rows are looked up once each.
+	 *
+	 * @return the result of every row in the order of the rows, with a Status of "Valid" or
+	 *         "Invalid", the reasons as Error and the problems that do not stop the row as Warning
+	 */
+	public List<Map<String, String>> validate(ResourceResolver resourceResolver, List<PageRow> rows, boolean upsert);
+
+	/**
+	 * Creates the page, and the tag if needed, of one row
+	 *
+	 * @param autoSave false to leave the changes unsaved, the caller commits them
+	 * @param upsert true to update the page if it exists
+	 * @return the result of the row
+	 */
+	public Map<String, String> createPage(ResourceResolver resourceResolver, PageRow row, boolean autoSave, boolean upsert);
+
+	/**
+	 * Default mode: the page of every row is created and saved on its own, in the order of the
+	 * rows. Templates and tags are looked up once per call.
+	 *
+	 * @param rows rows to create, read one at a time
+	 */
+	public void importRows(ResourceResolver resourceResolver, Iterator<PageRow> rows, boolean upsert, RowHandler handler)
+			throws IOException;
+
+	/**
+	 * Bulk mode: all rows are sorted by the depth of their path, so parents are created before
+	 * their children, and saved with one commit per chunk of commitSize pages. If the commit of a
+	 * chunk fails, its changes are reverted and its rows are created again one commit per row, so
+	 * only the rows that really fail are reported as errors. Templates and tags are looked up
+	 * once per call.
+	 *
+	 * @param rows rows to create, sorted in place
+	 */
+	public void importBulk(ResourceResolver resourceResolver, List<PageRow> rows, int commitSize, boolean upsert,
+			RowHandler handler) throws IOException;
+
+	/**
+	 * Parallel mode: the rows are partitioned by the first partitionDepth segments of their path
+	 * and the partitions are created concurrently in bulk mode, each with its own clone of the
+	 * given resolver. The handler is called from several threads, but never after the method
+	 * returned or threw.
+	 */
+	public void importParallel(ResourceResolver resourceResolver, List<PageRow> rows, int commitSize, int partitionDepth,
+			boolean upsert, RowHandler handler) throws IOException;
+}
@@ -0,0 +1,91 @@
+package com.adobe.training.core.services;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.adobe.training.core.CsvTokenizer;
+
+/**
+ * One record of the PageCreator input: JCR path, Page Title, Page Template, AEM Tag
+ *
+ * The input is CSV as in RFC 4180, so titles containing commas are quoted: "Coats, Jackets"
+ */
+public final class PageRow {
+	private final int row;
+	private final String line;
+	private final String path;
+	private final String title;
+	private final String template;
+	private final String tag;
+
+	/**
+	 * @param tokenizer tokenizer positioned on the record of this row
+	 */
+	public PageRow(CsvTokenizer tokenizer) {
+		this.row = tokenizer.getRecordNumber();
+		this.line = tokenizer.getRecord();
+		this.path = tokenizer.getField(0);
+		this.title = tokenizer.getField(1);
+		this.template = tokenizer.getField(2);
+		this.tag = tokenizer.getField(3);
+	}
+
+	/**
+	 * Reads all records of the input, numbered in the order of the input
+	 */
+	public static List<PageRow> readRows(Reader reader) throws IOException {
+		CsvTokenizer tokenizer = new CsvTokenizer(reader);
+		List<PageRow> rows = new ArrayList<>();
+		while (tokenizer.nextRecord()) {
+			rows.add(new PageRow(tokenizer));
+		}
+		return rows;
+	}
+
+	public int getRow() {
+		return row;
+	}
+
+	public String getLine() {
+		return line;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getTemplate() {
+		return template;
+	}
+
+	public String getTag() {
+		return tag;
+	}
+
+	/**
+	 * @return the first depth segments of the path, e.g. /content/training/us for depth 3
+	 */
+	public String getPartition(int depth) {
+		int end = 0;
+		for (int i = 0; i < depth && end >= 0; i++) {
+			end = path.indexOf('/', end + 1);
+		}
+		return end > 0 ? path.substring(0, end) : path;
+	}
+
+	public int getDepth() {
+		int depth = 0;
+		for (int i = 0; i < path.length(); i++) {
+			if (path.charAt(i) == '/') {
+				depth++;
+			}
+		}
+		return depth;
+	}
+}
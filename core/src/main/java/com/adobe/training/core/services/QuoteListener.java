@@ -0,0 +1,24 @@
+package com.adobe.training.core.services;
+
+/**
+ * Whiteboard service called by the QuoteStore whenever the quote of a symbol changes, either
+ * after a local import committed it or after a change on another cluster node was read back.
+ *
+ * Listeners are called on the thread of the import and must return quickly without blocking.
+ */
+public interface QuoteListener {
+
+	/**
+	 * @param symbol stock symbol
+	 * @param quote the new quote, shared and must not be modified
+	 */
+	public void onQuote(String symbol, StockQuote quote);
+
+	/**
+	 * Called when a symbol was removed from the QuoteStore.
+	 *
+	 * @param symbol stock symbol
+	 */
+	public default void onRemove(String symbol) {
+	}
+}
@@ -0,0 +1,35 @@
+package com.adobe.training.core.services;
+
+import java.util.Collection;
+
+/**
+ * Holds the latest quote per stock symbol in memory, so components can read stock data in O(1)
+ * without touching the repository. The store is loaded from /content/stocks once at activation,
+ * updated by the import jobs after each commit and kept in sync with changes made on other
+ * cluster nodes through resource change events.
+ *
+ * Quotes returned by the store are shared and must not be modified.
+ */
+public interface QuoteStore {
+
+	/**
+	 * @param symbol stock symbol, e.g. ADBE
+	 * @return the latest quote or null if the symbol is not known
+	 */
+	public StockQuote get(String symbol);
+
+	/**
+	 * @return all quotes currently held by the store
+	 */
+	public Collection<StockQuote> getAll();
+
+	/**
+	 * Replaces the quote of a symbol. The store keeps its own copy of the quote.
+	 */
+	public void put(String symbol, StockQuote quote);
+
+	/**
+	 * Removes a symbol from the store.
+	 */
+	public void remove(String symbol);
+}
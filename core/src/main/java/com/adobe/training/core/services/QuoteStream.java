@@ -0,0 +1,39 @@
+package com.adobe.training.core.services;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fan-out registry for live quote updates. Every update is serialized once as a Server-Sent
+ * Event and offered to the bounded queue of every subscriber of its symbol without blocking.
+ * A subscriber whose queue is full is evicted instead of slowing down the import.
+ */
+public interface QuoteStream {
+
+	/**
+	 * Subscribes to the updates of the given symbols. The last known quote of every symbol is
+	 * queued right away.
+	 *
+	 * @return the subscription or null if the maximum number of subscriptions is reached
+	 */
+	public Subscription subscribe(Collection<String> symbols);
+
+	public interface Subscription {
+
+		/**
+		 * Waits for the next event.
+		 * @return the UTF-8 bytes of the event or null if no event arrived within the timeout
+		 */
+		public byte[] next(long timeout, TimeUnit unit) throws InterruptedException;
+
+		/**
+		 * @return true if the subscription was evicted because its events were not taken fast enough
+		 */
+		public boolean isEvicted();
+
+		/**
+		 * Ends the subscription. Must be called once the client disconnected.
+		 */
+		public void close();
+	}
+}
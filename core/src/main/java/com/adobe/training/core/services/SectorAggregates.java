@@ -0,0 +1,21 @@
+package com.adobe.training.core.services;
+
+import java.util.List;
+
+/**
+ * Per sector aggregates of the latest quotes. The aggregates are updated with the difference
+ * between the old and the new quote of a symbol whenever the QuoteStore changes, so reading them
+ * never touches the quotes of the symbols.
+ */
+public interface SectorAggregates {
+
+	/**
+	 * @return the aggregates of all sectors, sorted by sector name. The list is shared and must not be modified.
+	 */
+	public List<SectorSummary> getSectors();
+
+	/**
+	 * @return a number that changes whenever an aggregate changed
+	 */
+	public long getVersion();
+}
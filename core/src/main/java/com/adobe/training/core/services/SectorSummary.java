@@ -0,0 +1,71 @@
+package com.adobe.training.core.services;
+
+/**
+ * Immutable aggregate of the latest quotes of all symbols of one sector.
+ */
+public final class SectorSummary {
+
+	private final String sector;
+	private final int count;
+	private final double averageChangePercent;
+	private final int advancers;
+	private final int decliners;
+	private final int unchanged;
+	private final long totalVolume;
+
+	public SectorSummary(String sector, int count, double averageChangePercent, int advancers, int decliners, int unchanged, long totalVolume) {
+		this.sector = sector;
+		this.count = count;
+		this.averageChangePercent = averageChangePercent;
+		this.advancers = advancers;
+		this.decliners = decliners;
+		this.unchanged = unchanged;
+		this.totalVolume = totalVolume;
+	}
+
+	public String getSector() {
+		return sector;
+	}
+
+	/**
+	 * @return the number of symbols of the sector
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the average change in percent of the previous close, NaN if no symbol reported a change
+	 */
+	public double getAverageChangePercent() {
+		return averageChangePercent;
+	}
+
+	/**
+	 * @return the number of symbols trading above the previous close
+	 */
+	public int getAdvancers() {
+		return advancers;
+	}
+
+	/**
+	 * @return the number of symbols trading below the previous close
+	 */
+	public int getDecliners() {
+		return decliners;
+	}
+
+	/**
+	 * @return the number of symbols without a change or with an unknown change
+	 */
+	public int getUnchanged() {
+		return unchanged;
+	}
+
+	/**
+	 * @return the volume traded today by all symbols of the sector
+	 */
+	public long getTotalVolume() {
+		return totalVolume;
+	}
+}
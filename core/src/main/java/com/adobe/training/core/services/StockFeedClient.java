@@ -0,0 +1,51 @@
+package com.adobe.training.core.services;
+
+import java.io.IOException;
+
+/**
+ * Shared client for the stock data feed. Connections are pooled and kept alive between imports,
+ * responses are requested gzip compressed and every request is conditional: the ETag and
+ * Last-Modified values of the previous response for the same url are sent back, so an unchanged
+ * quote is answered with 304 Not Modified and does not have to be parsed or written again.
+ *
+ * A circuit breaker protects the feed host and the job queue: once too many recent requests
+ * failed, fetch throws FeedUnavailableException without sending a request until a probe request
+ * succeeds again.
+ */
+public interface StockFeedClient {
+
+	/**
+	 * Requests the stock data for a symbol, e.g. &lt;feedUrl&gt;ADBE.json
+	 *
+	 * @param feedUrl base url of the feed, ending with a slash
+	 * @param symbol stock symbol
+	 * @return the uncompressed JSON payload or null if the data did not change since the last fetch
+	 * @throws FeedUnavailableException if the circuit breaker is open and no request was made
+	 * @throws IOException if the feed could not be reached or did not answer with 200 or 304
+	 */
+	public byte[] fetch(String feedUrl, String symbol) throws IOException;
+
+	/**
+	 * Forgets the ETag and Last-Modified values of a symbol so that the next fetch is unconditional.
+	 * Callers use this when fetched data could not be written to the repository.
+	 */
+	public void invalidate(String feedUrl, String symbol);
+
+	/**
+	 * @return the number of consecutive fetches for a symbol that returned unchanged data, either
+	 * as 304 Not Modified or as the same payload as before. 0 if the last fetch returned new data.
+	 */
+	public int getUnchangedCount(String feedUrl, String symbol);
+
+	/**
+	 * @return the time in milliseconds a fetch takes at most to get a pooled connection, connect
+	 * and wait for data. Callers waiting for fetches derive their timeouts from it.
+	 */
+	public long getRequestTimeout();
+
+	/**
+	 * @return false while the circuit breaker is open, i.e. imports are currently skipped and the
+	 * stored quotes are not being refreshed
+	 */
+	public boolean isAvailable();
+}
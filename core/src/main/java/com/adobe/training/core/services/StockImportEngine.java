@@ -0,0 +1,28 @@
+package com.adobe.training.core.services;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Imports stock symbols in two stages. The network stage requests and parses the feed data of
+ * many symbols concurrently, limited by a configurable concurrency cap shared by all imports.
+ * Parsed quotes are handed over through a bounded queue to the repository stage, where a small
+ * pool of writer threads writes and commits them in chunks.
+ *
+ * Job threads only wait for the outcome of their symbols and never hold a connection or a
+ * resource resolver themselves.
+ */
+public interface StockImportEngine {
+
+	/**
+	 * Imports the given symbols and waits until all of them are done.
+	 *
+	 * @param feedUrl base url of the feed, ending with a slash
+	 * @param symbols uppercase stock symbols
+	 * @param stopped checked before each symbol is requested, symbols not requested yet are cancelled once it returns true
+	 * @return the outcome per symbol in the order of the symbols: OK, UNCHANGED, SKIPPED (feed unavailable),
+	 * CANCELLED or FAILED (reason)
+	 */
+	public Map<String, String> importSymbols(String feedUrl, List<String> symbols, BooleanSupplier stopped) throws InterruptedException;
+}
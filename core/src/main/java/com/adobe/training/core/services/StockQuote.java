@@ -0,0 +1,176 @@
+package com.adobe.training.core.services;
+
+import com.adobe.training.core.Fnv1a;
+
+/**
+ * Typed quote for one stock symbol as delivered by the stock feed. Numbers are kept as primitives
+ * so that a quote can be filled by StockQuoteParser without boxing. Instances are mutable so a job
+ * can reuse one quote for every symbol it imports; use copy() to keep a quote beyond that.
+ */
+public class StockQuote {
+
+	private String symbol;
+	private String companyName;
+	private String sector;
+	private double latestPrice;
+	private double open;
+	private double high;
+	private double low;
+	private long latestVolume;
+	private double change;
+	private double week52High;
+	private double week52Low;
+	private double ytdChange;
+	private long latestUpdate;
+
+	public StockQuote() {
+		reset();
+	}
+
+	/**
+	 * Clears all values so the quote can be filled again.
+	 */
+	public void reset() {
+		symbol = null;
+		companyName = null;
+		sector = null;
+		latestPrice = Double.NaN;
+		open = Double.NaN;
+		high = Double.NaN;
+		low = Double.NaN;
+		latestVolume = 0;
+		change = Double.NaN;
+		week52High = Double.NaN;
+		week52Low = Double.NaN;
+		ytdChange = Double.NaN;
+		latestUpdate = 0;
+	}
+
+	/**
+	 * @return a new quote holding the same values
+	 */
+	public StockQuote copy() {
+		StockQuote copy = new StockQuote();
+		copy.symbol = symbol;
+		copy.companyName = companyName;
+		copy.sector = sector;
+		copy.latestPrice = latestPrice;
+		copy.open = open;
+		copy.high = high;
+		copy.low = low;
+		copy.latestVolume = latestVolume;
+		copy.change = change;
+		copy.week52High = week52High;
+		copy.week52Low = week52Low;
+		copy.ytdChange = ytdChange;
+		copy.latestUpdate = latestUpdate;
+		return copy;
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+	public void setSymbol(String symbol) {
+		this.symbol = symbol;
+	}
+	public String getCompanyName() {
+		return companyName;
+	}
+	public void setCompanyName(String companyName) {
+		this.companyName = companyName;
+	}
+	public String getSector() {
+		return sector;
+	}
+	public void setSector(String sector) {
+		this.sector = sector;
+	}
+	public double getLatestPrice() {
+		return latestPrice;
+	}
+	public void setLatestPrice(double latestPrice) {
+		this.latestPrice = latestPrice;
+	}
+	public double getOpen() {
+		return open;
+	}
+	public void setOpen(double open) {
+		this.open = open;
+	}
+	public double getHigh() {
+		return high;
+	}
+	public void setHigh(double high) {
+		this.high = high;
+	}
+	public double getLow() {
+		return low;
+	}
+	public void setLow(double low) {
+		this.low = low;
+	}
+	public long getLatestVolume() {
+		return latestVolume;
+	}
+	public void setLatestVolume(long latestVolume) {
+		this.latestVolume = latestVolume;
+	}
+	public double getChange() {
+		return change;
+	}
+	public void setChange(double change) {
+		this.change = change;
+	}
+	public double getWeek52High() {
+		return week52High;
+	}
+	public void setWeek52High(double week52High) {
+		this.week52High = week52High;
+	}
+	public double getWeek52Low() {
+		return week52Low;
+	}
+	public void setWeek52Low(double week52Low) {
+		this.week52Low = week52Low;
+	}
+	public double getYtdChange() {
+		return ytdChange;
+	}
+	public void setYtdChange(double ytdChange) {
+		this.ytdChange = ytdChange;
+	}
+	//Epoch milliseconds of the last trade
+	public long getLatestUpdate() {
+		return latestUpdate;
+	}
+	public void setLatestUpdate(long latestUpdate) {
+		this.latestUpdate = latestUpdate;
+	}
+
+	/**
+	 * 64 bit FNV-1a hash over all values of the quote. Two quotes with the same fingerprint
+	 * hold the same data, which lets writers skip quotes that did not change.
+	 */
+	public long fingerprint() {
+		long hash = Fnv1a.OFFSET;
+		hash = Fnv1a.mix(hash, symbol);
+		hash = Fnv1a.mix(hash, companyName);
+		hash = Fnv1a.mix(hash, sector);
+		hash = Fnv1a.mix(hash, Double.doubleToLongBits(latestPrice));
+		hash = Fnv1a.mix(hash, Double.doubleToLongBits(open));
+		hash = Fnv1a.mix(hash, Double.doubleToLongBits(high));
+		hash = Fnv1a.mix(hash, Double.doubleToLongBits(low));
+		hash = Fnv1a.mix(hash, latestVolume);
+		hash = Fnv1a.mix(hash, Double.doubleToLongBits(change));
+		hash = Fnv1a.mix(hash, Double.doubleToLongBits(week52High));
+		hash = Fnv1a.mix(hash, Double.doubleToLongBits(week52Low));
+		hash = Fnv1a.mix(hash, Double.doubleToLongBits(ytdChange));
+		hash = Fnv1a.mix(hash, latestUpdate);
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return symbol + " " + latestPrice + " @ " + latestUpdate;
+	}
+}
@@ -0,0 +1,27 @@
+package com.adobe.training.core.services;
+
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+
+/**
+ * Writes imported quotes to /content/stocks/&lt;SYMBOL&gt;/trade. The writer remembers a fingerprint
+ * of the last quote written per symbol, in memory and on the trade node, and skips quotes that
+ * did not change. Outside market hours this avoids every write, commit and the observation,
+ * replication and dispatcher work that would follow.
+ */
+public interface StockQuoteWriter {
+
+	/**
+	 * Writes the trade node of a symbol without committing, so callers decide how many symbols
+	 * are saved in one commit.
+	 *
+	 * @return true if the trade node was changed, false if the quote is the same as the last one written
+	 */
+	public boolean write(ResourceResolver resourceResolver, String symbol, StockQuote quote) throws PersistenceException;
+
+	/**
+	 * Forgets the remembered fingerprint of a symbol. Callers use this when the commit after
+	 * write() failed, so that the quote is written again next time.
+	 */
+	public void forget(String symbol);
+}
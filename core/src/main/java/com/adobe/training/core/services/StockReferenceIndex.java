@@ -0,0 +1,32 @@
+package com.adobe.training.core.services;
+
+import java.util.Set;
+
+/**
+ * Reverse index from stock symbol to the pages that contain a stockplex component showing it.
+ * The index is maintained from resource change events, it never queries the whole tree again.
+ */
+public interface StockReferenceIndex {
+
+	/**
+	 * @param symbol stock symbol, e.g. ADBE, in any case
+	 * @return the paths of the pages showing the symbol, empty if no page shows it
+	 */
+	public Set<String> getPages(String symbol);
+
+	/**
+	 * @return the symbols shown by at least one page, in upper case
+	 */
+	public Set<String> getSymbols();
+
+	/**
+	 * @return true if a published page shows the symbol
+	 */
+	public boolean isReferenced(String symbol);
+
+	/**
+	 * @return a number that changes whenever a component or the published state of a page changed,
+	 *         so callers only need to check isReferenced() again after a change
+	 */
+	public long getRevision();
+}
@@ -0,0 +1,80 @@
+package com.adobe.training.core.services;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable view of the stock data of one symbol as rendered by the stockplex component. One
+ * snapshot is shared by every component showing the symbol until the next import changes it.
+ */
+public final class StockSnapshot {
+
+	//Shown in place of the data of a symbol that has no stock data
+	public static final String NO_DATA_MESSAGE = "No import config found. If the StockListener.java class is apart of your project: Go to Sites console > Create Folder: stocks > Create Folder: ADBE";
+
+	private final String symbol;
+	private final Map<String, Object> data;
+	private final Double currentPrice;
+	private final Long latestUpdate;
+	private final StockQuote quote;
+	private final Map<String, Double> analytics;
+
+	/**
+	 * @param quote typed values of the trade node or null if not all of them are known, the snapshot keeps its own copy
+	 */
+	public StockSnapshot(String symbol, Map<String, Object> data, Double currentPrice, Long latestUpdate, StockQuote quote) {
+		this(symbol, data, currentPrice, latestUpdate, quote, Collections.<String, Double>emptyMap());
+	}
+
+	/**
+	 * @param analytics rolling indicators of the symbol, e.g. sma20 or vwap
+	 */
+	public StockSnapshot(String symbol, Map<String, Object> data, Double currentPrice, Long latestUpdate, StockQuote quote, Map<String, Double> analytics) {
+		this.symbol = symbol;
+		this.data = Collections.unmodifiableMap(data);
+		this.currentPrice = currentPrice;
+		this.latestUpdate = latestUpdate;
+		this.quote = quote != null ? quote.copy() : null;
+		this.analytics = Collections.unmodifiableMap(analytics);
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	/**
+	 * @return the display values of the symbol, e.g. "Open Price" or "52 Week Low"
+	 */
+	public Map<String, Object> getData() {
+		return data;
+	}
+
+	/**
+	 * @return the last trade or null if no stock data was imported for the symbol
+	 */
+	public Double getCurrentPrice() {
+		return currentPrice;
+	}
+
+	/**
+	 * @return epoch milliseconds of the last trade or null if unknown
+	 */
+	public Long getLatestUpdate() {
+		return latestUpdate;
+	}
+
+	/**
+	 * @return the typed values of the trade node or null if the trade node is missing or was written
+	 * before latestUpdate was stored. The quote is shared and must not be modified.
+	 */
+	public StockQuote getQuote() {
+		return quote;
+	}
+
+	/**
+	 * @return the rolling indicators of the symbol (see StockDataWriterJob.ANALYTICS), empty if none were computed yet
+	 */
+	public Map<String, Double> getAnalytics() {
+		return analytics;
+	}
+}
@@ -0,0 +1,19 @@
+package com.adobe.training.core.services;
+
+/**
+ * Builds one StockSnapshot per symbol from the quote of the QuoteStore and shares it until the
+ * QuoteStore reports a new quote or the removal of the symbol.
+ */
+public interface StockSnapshotCache {
+
+	/**
+	 * @param symbol stock symbol, e.g. ADBE
+	 * @return the snapshot of the symbol or null if the stock data could not be read
+	 */
+	public StockSnapshot get(String symbol);
+
+	/**
+	 * Drops the snapshot of a symbol, the next get() builds it again.
+	 */
+	public void invalidate(String symbol);
+}
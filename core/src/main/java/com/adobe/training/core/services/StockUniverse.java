@@ -0,0 +1,40 @@
+package com.adobe.training.core.services;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * The set of stock symbols that are imported. Every child folder of /content/stocks whose name
+ * is an uppercase stock symbol belongs to the universe. The universe is read from the repository
+ * in one pass and then kept up to date by resource change events, so adding or removing a symbol
+ * is O(1) and does not create any OSGi configuration.
+ */
+public interface StockUniverse {
+
+	/**
+	 * Stock symbols are 1 to 10 uppercase letters, digits or dots and start with a letter, e.g. ADBE or BRK.B
+	 */
+	public static final String SYMBOL_PATTERN = "^[A-Z][A-Z0-9.]{0,9}$";
+
+	/**
+	 * Adds symbols to the universe. Symbols that do not match SYMBOL_PATTERN are ignored.
+	 * @return the number of symbols that were not part of the universe before
+	 */
+	public int add(Collection<String> symbols);
+
+	/**
+	 * Removes a symbol from the universe.
+	 */
+	public void remove(String symbol);
+
+	/**
+	 * Re-reads the symbol folders below /content/stocks and adds or removes symbols accordingly.
+	 * @return the number of symbols in the universe
+	 */
+	public int reconcile();
+
+	/**
+	 * @return the symbols currently imported
+	 */
+	public Set<String> getSymbols();
+}
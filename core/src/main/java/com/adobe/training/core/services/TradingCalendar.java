@@ -0,0 +1,28 @@
+package com.adobe.training.core.services;
+
+import java.time.Instant;
+
+/**
+ * Trading hours of the stock exchange the quotes come from. Used to poll the stock feed often
+ * while the market is open, rarely during pre- and post-market hours and not at all when the
+ * exchange is closed (nights, weekends and holidays).
+ */
+public interface TradingCalendar {
+
+	public enum Phase {
+		PRE_MARKET,
+		OPEN,
+		POST_MARKET,
+		CLOSED
+	}
+
+	/**
+	 * @return the trading phase of the exchange at the given time
+	 */
+	public Phase getPhase(Instant time);
+
+	/**
+	 * @return the next time after the given time at which the phase changes
+	 */
+	public Instant getNextPhaseChange(Instant time);
+}
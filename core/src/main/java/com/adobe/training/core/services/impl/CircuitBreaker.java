@@ -0,0 +1,135 @@
+package com.adobe.training.core.services.impl;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker with a rolling failure-rate window.
+ *
+ * CLOSED     calls pass. Outcomes are counted in time buckets covering the window. When at least
+ *            minimumCalls were made in the window and the failure rate reaches the threshold, the
+ *            circuit opens.
+ * OPEN       calls are rejected right away until openMillis have passed.
+ * HALF_OPEN  a limited number of probe calls pass. A successful probe closes the circuit and
+ *            clears the window, a failed probe opens it again.
+ */
+class CircuitBreaker {
+
+	enum State {
+		CLOSED,
+		OPEN,
+		HALF_OPEN
+	}
+
+	private final int failureRatePercent;
+	private final int minimumCalls;
+	private final long bucketMillis;
+	private final long openMillis;
+	private final int halfOpenProbes;
+	private final LongSupplier clock;
+
+	//Ring of time buckets, bucketIds[i] is the time slot (now / bucketMillis) bucket i counts for
+	private final long[] bucketIds;
+	private final int[] successes;
+	private final int[] failures;
+
+	private State state = State.CLOSED;
+	private long openedAt;
+	private int probes;
+
+	CircuitBreaker(int failureRatePercent, int minimumCalls, long windowMillis, int buckets, long openMillis, int halfOpenProbes, LongSupplier clock) {
+		this.failureRatePercent = failureRatePercent;
+		this.minimumCalls = Math.max(1, minimumCalls);
+		this.bucketMillis = Math.max(1, windowMillis / Math.max(1, buckets));
+		this.openMillis = openMillis;
+		this.halfOpenProbes = Math.max(1, halfOpenProbes);
+		this.clock = clock;
+		bucketIds = new long[Math.max(1, buckets)];
+		successes = new int[bucketIds.length];
+		failures = new int[bucketIds.length];
+		clearWindow();
+	}
+
+	/**
+	 * @return true if a call may be made now. Every permitted call must be followed by
+	 * onSuccess() or onFailure().
+	 */
+	synchronized boolean tryAcquire() {
+		if (state == State.OPEN) {
+			if (clock.getAsLong() - openedAt < openMillis) {
+				return false;
+			}
+			state = State.HALF_OPEN;
+			probes = 0;
+		}
+		if (state == State.HALF_OPEN) {
+			if (probes >= halfOpenProbes) {
+				return false;
+			}
+			probes++;
+		}
+		return true;
+	}
+
+	synchronized void onSuccess() {
+		if (state == State.HALF_OPEN) {
+			state = State.CLOSED;
+			clearWindow();
+		} else if (state == State.CLOSED) {
+			successes[bucket()]++;
+		}
+	}
+
+	synchronized void onFailure() {
+		if (state == State.HALF_OPEN) {
+			open();
+		} else if (state == State.CLOSED) {
+			failures[bucket()]++;
+			long now = clock.getAsLong() / bucketMillis;
+			int calls = 0;
+			int failed = 0;
+			for (int i = 0; i < bucketIds.length; i++) {
+				if (now - bucketIds[i] < bucketIds.length) {
+					calls += successes[i] + failures[i];
+					failed += failures[i];
+				}
+			}
+			if (calls >= minimumCalls && failed * 100 >= failureRatePercent * calls) {
+				open();
+			}
+		}
+	}
+
+	synchronized State getState() {
+		if (state == State.OPEN && clock.getAsLong() - openedAt >= openMillis) {
+			return State.HALF_OPEN;
+		}
+		return state;
+	}
+
+	private void open() {
+		state = State.OPEN;
+		openedAt = clock.getAsLong();
+	}
+
+	/**
+	 * @return the index of the bucket for the current time, cleared if it last counted an older slot
+	 */
+	private int bucket() {
+		long id = clock.getAsLong() / bucketMillis;
+		int index = (int) (id % bucketIds.length);
+		if (bucketIds[index] != id) {
+			bucketIds[index] = id;
+			successes[index] = 0;
+			failures[index] = 0;
+		}
+		return index;
+	}
+
+	private void clearWindow() {
+		for (int i = 0; i < bucketIds.length; i++) {
+			bucketIds[i] = Long.MIN_VALUE;
+			successes[i] = 0;
+			failures[i] = 0;
+		}
+	}
+}
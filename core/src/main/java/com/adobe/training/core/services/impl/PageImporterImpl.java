@@ -0,0 +1,683 @@
+package com.adobe.training.core.services.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.AccessControlException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+
+import com.adobe.training.core.services.PageImporter;
+import com.adobe.training.core.services.PageRow;
+import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.tagging.InvalidTagFormatException;
+import com.day.cq.tagging.Tag;
+import com.day.cq.tagging.TagConstants;
+import com.day.cq.tagging.TagManager;
+import com.day.cq.wcm.api.NameConstants;
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.day.cq.wcm.api.PageManagerFactory;
+import com.day.cq.wcm.api.WCMException;
+
+/**
+ * Creates the pages of the PageCreator. Pages are created with the resolver of the caller, so
+ * the permissions of the user (or service user) importing apply.
+ *
+ * Parallel mode runs the partitions on a pool of at most 8 threads shared by all imports.
+ */
+@Component(service = PageImporter.class)
+public class PageImporterImpl implements PageImporter {
+
+	private static final int WORKERS = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 8));
+
+	//Get a PageManager instance from the factory Service
+	@Reference
+	private PageManagerFactory pageManagerFactory;
+
+	//Workers of the parallel mode, shared by all imports
+	private volatile ExecutorService workers;
+
+	@Activate
+	protected void activate() {
+		AtomicInteger count = new AtomicInteger();
+		workers = Executors.newFixedThreadPool(WORKERS, runnable -> {
+			Thread thread = new Thread(runnable, "pagecreator-worker-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Deactivate
+	protected void deactivate() {
+		//Running workers are interrupted, the partitions not started yet are cancelled so that
+		//the imports waiting for them end
+		for (Runnable task : workers.shutdownNow()) {
+			((Future<?>) task).cancel(false);
+		}
+	}
+
+	@Override
+	public void importBulk(ResourceResolver resourceResolver, List<PageRow> rows, int commitSize, boolean upsert,
+			RowHandler handler) throws IOException {
+		importBulk(resourceResolver, rows, commitSize, upsert, handler, new AtomicBoolean());
+	}
+
+	/**
+	 * @param stopped checked before every chunk, the remaining rows are skipped once it is set
+	 */
+	private void importBulk(ResourceResolver resourceResolver, List<PageRow> rows, int commitSize, boolean upsert,
+			RowHandler handler, AtomicBoolean stopped) throws IOException {
+		//Stable sort, rows of the same depth keep the order of the input
+		rows.sort(Comparator.comparingInt(PageRow::getDepth));
+
+		Lookups lookups = new Lookups(resourceResolver);
+		List<PageRow> chunk = new ArrayList<>(commitSize);
+		List<Map<String, String>> chunkResults = new ArrayList<>(commitSize);
+		for (int i = 0; i < rows.size(); i++) {
+			if (chunk.isEmpty() && stopped.get()) {
+				return;
+			}
+			PageRow pageRow = rows.get(i);
+			chunk.add(pageRow);
+			chunkResults.add(createPage(resourceResolver, pageRow, false, upsert, lookups));
+			if (chunk.size() == commitSize || i == rows.size() - 1) {
+				try {
+					handler.beforeCommit(resourceResolver, chunk, chunkResults);
+					resourceResolver.commit();
+				} catch (PersistenceException e) {
+					resourceResolver.revert();
+					lookups.reverted();
+					chunkResults = retryRowByRow(resourceResolver, chunk, upsert, handler, lookups);
+				}
+				for (int j = 0; j < chunk.size(); j++) {
+					handler.onResult(chunk.get(j), chunkResults.get(j));
+				}
+				chunk.clear();
+				chunkResults = new ArrayList<>(commitSize);
+			}
+		}
+	}
+
+	/**
+	 * Parallel mode: the rows are partitioned by the first partitionDepth segments of their path,
+	 * e.g. /content/training/us and /content/training/de, and every partition is created in bulk
+	 * mode by a worker with its own clone of the caller's resolver. Only one worker writes below
+	 * a partition, so the commits of the workers never touch the same nodes:
+	 *
+	 *  1. rows at or above the partition depth (the partition roots and their parents) are created
+	 *     first on the calling thread
+	 *  2. missing tags of all rows are created and committed once, so no worker creates tags
+	 *  3. the partitions are created concurrently, parents before children within each partition
+	 *
+	 * Results are handed over as the chunks of the workers are committed, so rows of different
+	 * partitions are interleaved. If a worker fails, e.g. because the handler cannot write to a
+	 * client that went away, or the calling thread is interrupted, the other workers stop after
+	 * their current chunk. The method only returns or throws once every worker is done, so the
+	 * handler is never called after it. Partitions that were not started when the importer is
+	 * deactivated are cancelled and the method throws.
+	 */
+	@Override
+	public void importParallel(ResourceResolver resourceResolver, List<PageRow> rows, int commitSize, int partitionDepth,
+			boolean upsert, RowHandler handler) throws IOException {
+		List<PageRow> shared = new ArrayList<>();
+		Map<String, List<PageRow>> partitions = new LinkedHashMap<>();
+		for (PageRow pageRow : rows) {
+			if (pageRow.getDepth() <= partitionDepth) {
+				shared.add(pageRow);
+			} else {
+				partitions.computeIfAbsent(pageRow.getPartition(partitionDepth), p -> new ArrayList<>()).add(pageRow);
+			}
+		}
+		importBulk(resourceResolver, shared, commitSize, upsert, handler);
+		createTags(resourceResolver, rows);
+
+		ExecutorService executor = workers;
+		AtomicBoolean stopped = new AtomicBoolean();
+		List<Future<?>> futures = new ArrayList<>(partitions.size());
+		IOException failure = null;
+		for (List<PageRow> partition : partitions.values()) {
+			try {
+				futures.add(executor.submit(() -> {
+					if (stopped.get()) {
+						return null;
+					}
+					try (ResourceResolver workerResolver = resourceResolver.clone(null)) {
+						importBulk(workerResolver, partition, commitSize, upsert, handler, stopped);
+					} catch (IOException | RuntimeException e) {
+						stopped.set(true);
+						throw e;
+					} catch (LoginException e) {
+						Map<String, String> pageInfo = new HashMap<>();
+						pageInfo.put("Status", "Error");
+						pageInfo.put("Error", "Could not get a resolver for the partition: " + e.getMessage());
+						for (PageRow pageRow : partition) {
+							handler.onResult(pageRow, pageInfo);
+						}
+					}
+					return null;
+				}));
+			} catch (RejectedExecutionException e) {
+				//The importer is being deactivated, the partitions submitted so far are awaited
+				stopped.set(true);
+				failure = new IOException("Page importer is not active", e);
+				break;
+			}
+		}
+		boolean interrupted = false;
+		for (Future<?> future : futures) {
+			while (true) {
+				try {
+					future.get(1, TimeUnit.SECONDS);
+					break;
+				} catch (TimeoutException e) {
+					//A partition dropped by a terminated pool would never complete
+					if (executor.isTerminated() && !future.isDone()) {
+						future.cancel(false);
+					}
+				} catch (InterruptedException e) {
+					//Keep waiting, the workers stop after their current chunk
+					interrupted = true;
+					stopped.set(true);
+				} catch (CancellationException e) {
+					if (failure == null) {
+						failure = new IOException("Page importer was deactivated before all partitions were created");
+					}
+					break;
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = new IOException("Parallel page creation failed", e.getCause());
+					}
+					break;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+			if (failure == null) {
+				failure = new InterruptedIOException("Parallel page creation was interrupted");
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Creates the missing tags of all rows with a single commit
+	 */
+	private void createTags(ResourceResolver resourceResolver, List<PageRow> rows) {
+		TagManager tm = resourceResolver.adaptTo(TagManager.class);
+		if (tm == null) {
+			return;
+		}
+		Set<String> tagPaths = new LinkedHashSet<>();
+		for (PageRow pageRow : rows) {
+			String tagPath = pageRow.getTag();
+			if (!tagPath.isEmpty() && isTagPath(tagPath)) {
+				tagPaths.add(tagPath);
+			}
+		}
+		for (String tagPath : tagPaths) {
+			try {
+				if (tm.resolve(tagPath) == null) {
+					tm.createTag(tagPath, null, null, false);
+				}
+			} catch (AccessControlException | InvalidTagFormatException e) {
+				//Reported by createPage for every row with this tag
+			}
+		}
+		try {
+			resourceResolver.commit();
+		} catch (PersistenceException e) {
+			//The workers create the tags that could not be saved here
+			resourceResolver.revert();
+		}
+	}
+
+	@Override
+	public void importRows(ResourceResolver resourceResolver, Iterator<PageRow> rows, boolean upsert, RowHandler handler)
+			throws IOException {
+		Lookups lookups = new Lookups(resourceResolver);
+		while (rows.hasNext()) {
+			PageRow pageRow = rows.next();
+			handler.onResult(pageRow, createAndCommit(resourceResolver, pageRow, upsert, handler, lookups));
+		}
+	}
+
+	private List<Map<String, String>> retryRowByRow(ResourceResolver resourceResolver, List<PageRow> chunk, boolean upsert,
+			RowHandler handler, Lookups lookups) {
+		List<Map<String, String>> chunkResults = new ArrayList<>(chunk.size());
+		for (PageRow pageRow : chunk) {
+			chunkResults.add(createAndCommit(resourceResolver, pageRow, upsert, handler, lookups));
+		}
+		return chunkResults;
+	}
+
+	/**
+	 * Creates the page of one row with a commit of its own
+	 */
+	private Map<String, String> createAndCommit(ResourceResolver resourceResolver, PageRow pageRow, boolean upsert,
+			RowHandler handler, Lookups lookups) {
+		List<PageRow> single = Collections.singletonList(pageRow);
+		Map<String, String> pageInfo = createPage(resourceResolver, pageRow, false, upsert, lookups);
+		try {
+			handler.beforeCommit(resourceResolver, single, Collections.singletonList(pageInfo));
+			resourceResolver.commit();
+		} catch (PersistenceException e) {
+			resourceResolver.revert();
+			lookups.reverted();
+			pageInfo.clear();
+			pageInfo.put("Status", "Error");
+			pageInfo.put("Error", "Page couldn't be saved: " + e.getMessage());
+			//The handler still gets to save that the row is done
+			try {
+				handler.beforeCommit(resourceResolver, single, Collections.singletonList(pageInfo));
+				resourceResolver.commit();
+			} catch (PersistenceException e2) {
+				resourceResolver.revert();
+			}
+		}
+		return pageInfo;
+	}
+
+	/**
+	 * Pre-pass: the distinct templates, parent paths and tags of all rows are looked up once and
+	 * every row is checked the way createPage would, without writing anything:
+	 *
+	 *  - the path must have a parent and a name, and must not appear in another row or, unless
+	 *    upserting, exist yet
+	 *  - the parent must exist or be created by another valid row of the input
+	 *  - the template must exist
+	 *  - tags that do not exist yet must be valid tag ids; tag problems are warnings, the page
+	 *    is created without the tag like createPage does
+	 */
+	@Override
+	public List<Map<String, String>> validate(ResourceResolver resourceResolver, List<PageRow> rows, boolean upsert) {
+		//Paths created by the input and the index of the first row creating them
+		Map<String, Integer> created = new HashMap<>();
+		for (int i = 0; i < rows.size(); i++) {
+			if (!rows.get(i).getPath().isEmpty()) {
+				created.putIfAbsent(rows.get(i).getPath(), i);
+			}
+		}
+
+		Lookups lookups = new Lookups(resourceResolver);
+		Map<String, Boolean> parents = new HashMap<>();
+		List<List<String>> rowErrors = new ArrayList<>(rows.size());
+		//Index of the row creating the parent of a row, -1 if the parent exists
+		int[] parentRows = new int[rows.size()];
+		List<Map<String, String>> report = new ArrayList<>(rows.size());
+		for (int i = 0; i < rows.size(); i++) {
+			PageRow pageRow = rows.get(i);
+			List<String> errors = new ArrayList<>(2);
+			List<String> warnings = new ArrayList<>(1);
+			parentRows[i] = -1;
+			String path = pageRow.getPath();
+			int lastSlash = path.lastIndexOf('/');
+			if (path.isEmpty()) {
+				errors.add("Page path not provided");
+			} else if (lastSlash <= 0 || lastSlash == path.length() - 1) {
+				errors.add("Invalid page path: " + path);
+			} else {
+				String parentPath = path.substring(0, lastSlash);
+				int first = created.get(path);
+				if (first != i) {
+					errors.add("Duplicate of row " + rows.get(first).getRow());
+				} else if (!upsert && resourceResolver.getResource(path) != null) {
+					errors.add("Page already exists: " + path);
+				}
+				if (!parents.computeIfAbsent(parentPath, p -> resourceResolver.getResource(p) != null)) {
+					if (created.containsKey(parentPath)) {
+						parentRows[i] = created.get(parentPath);
+					} else {
+						errors.add("Parent path doesn't exist: " + parentPath);
+					}
+				}
+			}
+
+			String template = pageRow.getTemplate();
+			if (!template.isEmpty() && !lookups.templateExists(template)) {
+				errors.add("The template " + template + " does not exist.");
+			}
+
+			String tagPath = pageRow.getTag();
+			if (!tagPath.isEmpty()) {
+				if (!isTagPath(tagPath)) {
+					warnings.add("Tag path malformed and not added: " + tagPath);
+				} else {
+					String tagWarning = lookups.tagWarning(tagPath);
+					if (tagWarning != null) {
+						warnings.add(tagWarning);
+					}
+				}
+			}
+
+			Map<String, String> result = new HashMap<>();
+			if (!warnings.isEmpty()) {
+				result.put("Warning", String.join("; ", warnings));
+			}
+			rowErrors.add(errors);
+			report.add(result);
+		}
+
+		//A parent is always less deep than its child, so the rows creating parents are done first
+		Integer[] order = new Integer[rows.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, Comparator.comparingInt(i -> rows.get(i).getDepth()));
+		for (int i : order) {
+			List<String> errors = rowErrors.get(i);
+			int parentRow = parentRows[i];
+			if (parentRow >= 0 && !"Valid".equals(report.get(parentRow).get("Status"))) {
+				PageRow pageRow = rows.get(i);
+				errors.add("Parent path doesn't exist: " + pageRow.getPath().substring(0, pageRow.getPath().lastIndexOf('/'))
+						+ " (row " + rows.get(parentRow).getRow() + " is invalid)");
+			}
+			Map<String, String> result = report.get(i);
+			result.put("Status", errors.isEmpty() ? "Valid" : "Invalid");
+			if (!errors.isEmpty()) {
+				result.put("Error", String.join("; ", errors));
+			}
+		}
+		return report;
+	}
+
+	@Override
+	public Map<String, String> createPage(ResourceResolver resourceResolver, PageRow pageRow, boolean autoSave, boolean upsert) {
+		return createPage(resourceResolver, pageRow, autoSave, upsert, new Lookups(resourceResolver));
+	}
+
+	/** Helper method to create the page based on available input
+	 *
+	 * @param resourceResolver resourceResolver of the caller
+	 * @param pageRow input row with the JCR location of the page to be created, the Page Title,
+	 *        the AEM Template this page should be created from (it must exist in the JCR already)
+	 *        and the Tag in the form of a path. Ex /content/cq:tags/marketing/interest
+	 * @param autoSave false to leave the changes unsaved, the caller commits them
+	 * @param upsert true to update the page if it exists, see updatePage
+	 * @param lookups templates and tags already looked up with this resolver
+	 * @return HashMap
+	 */
+	private Map<String, String> createPage(ResourceResolver resourceResolver, PageRow pageRow, boolean autoSave, boolean upsert,
+			Lookups lookups) {
+		String path = pageRow.getPath();
+		String title = pageRow.getTitle();
+		String template = pageRow.getTemplate();
+		String tagPath = pageRow.getTag();
+		HashMap<String, String> pageInfo = new HashMap<>();
+		pageInfo.put("Status","Error");
+
+		if (path != null && !path.isEmpty()) {
+			//Parse the path to get the pageNodeName and parentPath
+			int lastSlash = path.lastIndexOf("/");
+			String pageNodeName = path.substring(lastSlash + 1);
+			String parentPath = path.substring(0, lastSlash);
+
+			//Set a default template if none is given
+			boolean invalidTemplate = false;
+			if (template == null || template.isEmpty()) { //if no template has been given, assign the default
+				template = DEFAULT_TEMPLATE_PATH;
+			}
+			else if(!lookups.templateExists(template)) { //check to see if the template exists
+				invalidTemplate = true;
+				pageInfo.put("Template","The template " + template + " doesn not exist.");
+			}
+
+			//Create page
+			PageManager pageManager = pageManagerFactory.getPageManager(resourceResolver);
+			if (upsert && pageManager != null && !invalidTemplate) {
+				Page existing = pageManager.getPage(path);
+				if (existing != null) {
+					return updatePage(resourceResolver, existing, pageRow, autoSave, lookups);
+				}
+			}
+
+			Page p = null;
+			//Verify parentPath exists, a node for this page exists, and the template is valid
+			if (pageManager != null && !parentPath.isEmpty() && !pageNodeName.isEmpty() && !invalidTemplate) {
+				if(title == null || title.isEmpty()) {
+					pageInfo.put("Warning","No Page title given, using path name: " + pageNodeName);
+					title = pageNodeName;
+				}
+				try {
+					p = pageManager.create(parentPath,
+							pageNodeName,
+							template,
+							title,
+							autoSave);
+				} catch (WCMException e) {
+					pageInfo.put("Error","Page couldn't be created. Parent path probably doesn't exist.");
+				}
+
+				//Check to see if the page was successfully created
+				if(p != null) {
+					//Add a tag to the page
+					if (tagPath != null && !tagPath.isEmpty()) {
+						//Make sure tag namespaces are properly formed
+						if(isTagPath(tagPath)) {
+							//TagManager can be retrieved via adaptTo
+							TagManager tm = resourceResolver.adaptTo(TagManager.class);
+							Tag tag;
+							try {
+								tag = lookups.tag(tagPath); //check if tag already exists
+								if(tag == null) {
+									pageInfo.put("Warning","Tag doesn't exist, creating new tag: " + tagPath);
+									tag = tm.createTag(tagPath, null, null, autoSave);
+									lookups.tagCreated(tagPath, tag);
+								}
+								tm.setTags(p.getContentResource(), new Tag[] {tag}, autoSave);
+							} catch (AccessControlException e) {
+								pageInfo.put("Warning","Could not access the tags.");
+							} catch (InvalidTagFormatException e) {
+								pageInfo.put("Warning","Invalid Tag.");
+							}
+						} else {
+							pageInfo.put("Warning", "Tag path malformed and not added: " + tagPath);
+						}
+					}
+
+					pageInfo.put("Status", "Successful");
+					pageInfo.put("Location", p.getPath());
+					pageInfo.put("Title", p.getTitle());
+					pageInfo.put("Template Used", p.getTemplate().getPath());
+					String tags = "";
+					for(Tag t : p.getTags() ) { tags = tags + t.getTitle() + " "; }
+					pageInfo.put("Tagged with", tags);
+				}
+			}
+		} else {
+			pageInfo.put("Error", "Page path not provided");
+		}
+		return pageInfo;
+	}
+
+	/**
+	 * Upsert of an existing page: the title, template and tag of the row are compared with the
+	 * page and only the ones that differ are written. An empty title, template or tag in the row
+	 * leaves the one of the page as it is. A row that matches its page writes nothing.
+	 */
+	private Map<String, String> updatePage(ResourceResolver resourceResolver, Page page, PageRow pageRow, boolean autoSave,
+			Lookups lookups) {
+		HashMap<String, String> pageInfo = new HashMap<>();
+		pageInfo.put("Status", "Error");
+		pageInfo.put("Location", page.getPath());
+		Resource content = page.getContentResource();
+		if (content == null) {
+			pageInfo.put("Error", "Page has no content resource: " + page.getPath());
+			return pageInfo;
+		}
+		ValueMap properties = content.getValueMap();
+		List<String> changed = new ArrayList<>(3);
+
+		String title = pageRow.getTitle();
+		if (!title.isEmpty() && !title.equals(properties.get(JcrConstants.JCR_TITLE, String.class))) {
+			changed.add("title");
+		}
+		String template = pageRow.getTemplate();
+		if (!template.isEmpty() && !template.equals(properties.get(NameConstants.PN_TEMPLATE, String.class))) {
+			changed.add("template");
+		}
+
+		String tagPath = pageRow.getTag();
+		Tag tag = null;
+		if (!tagPath.isEmpty()) {
+			if (isTagPath(tagPath)) {
+				try {
+					tag = lookups.tag(tagPath);
+					if (tag == null) {
+						pageInfo.put("Warning", "Tag doesn't exist, creating new tag: " + tagPath);
+						tag = resourceResolver.adaptTo(TagManager.class).createTag(tagPath, null, null, autoSave);
+						lookups.tagCreated(tagPath, tag);
+					}
+					String[] tags = properties.get(TagConstants.PN_TAGS, new String[0]);
+					if (tags.length != 1 || !tags[0].equals(tag.getTagID())) {
+						changed.add("tags");
+					}
+				} catch (AccessControlException e) {
+					pageInfo.put("Warning", "Could not access the tags.");
+				} catch (InvalidTagFormatException e) {
+					pageInfo.put("Warning", "Invalid Tag.");
+				}
+			} else {
+				pageInfo.put("Warning", "Tag path malformed and not added: " + tagPath);
+			}
+		}
+
+		if (changed.isEmpty()) {
+			pageInfo.put("Status", "Unchanged");
+			return pageInfo;
+		}
+
+		ModifiableValueMap modifiable = content.adaptTo(ModifiableValueMap.class);
+		if (modifiable == null) {
+			pageInfo.put("Error", "Page can't be modified: " + page.getPath());
+			return pageInfo;
+		}
+		try {
+			if (changed.contains("title")) {
+				modifiable.put(JcrConstants.JCR_TITLE, title);
+			}
+			if (changed.contains("template")) {
+				modifiable.put(NameConstants.PN_TEMPLATE, template);
+			}
+			if (changed.contains("tags")) {
+				resourceResolver.adaptTo(TagManager.class).setTags(content, new Tag[] {tag}, false);
+			}
+			modifiable.put(NameConstants.PN_PAGE_LAST_MOD, Calendar.getInstance());
+			modifiable.put(NameConstants.PN_PAGE_LAST_MOD_BY, resourceResolver.getUserID());
+			if (autoSave) {
+				resourceResolver.commit();
+			}
+		} catch (PersistenceException e) {
+			resourceResolver.revert();
+			lookups.reverted();
+			pageInfo.put("Error", "Page couldn't be saved: " + e.getMessage());
+			return pageInfo;
+		}
+		pageInfo.put("Status", "Updated");
+		pageInfo.put("Changed", String.join(", ", changed));
+		return pageInfo;
+	}
+
+	/**
+	 * Makes sure tag namespaces are properly formed
+	 */
+	private static boolean isTagPath(String tagPath) {
+		return tagPath.contains("/content/cq:tags") || tagPath.contains(":") || tagPath.contains("/etc/tags");
+	}
+
+	/**
+	 * Templates and tags looked up with one resolver, so rows sharing a template or tag look
+	 * them up once per import instead of once per row
+	 */
+	private static class Lookups {
+		private final ResourceResolver resourceResolver;
+		private final Map<String, Boolean> templates = new HashMap<>();
+		//Values are null for tags that do not exist
+		private final Map<String, Tag> tags = new HashMap<>();
+		private TagManager tagManager;
+
+		private Lookups(ResourceResolver resourceResolver) {
+			this.resourceResolver = resourceResolver;
+		}
+
+		private boolean templateExists(String template) {
+			return templates.computeIfAbsent(template, t -> resourceResolver.getResource(t) != null);
+		}
+
+		private TagManager getTagManager() {
+			if (tagManager == null) {
+				tagManager = resourceResolver.adaptTo(TagManager.class);
+			}
+			return tagManager;
+		}
+
+		private Tag tag(String tagPath) {
+			if (!tags.containsKey(tagPath)) {
+				tags.put(tagPath, getTagManager().resolve(tagPath));
+			}
+			return tags.get(tagPath);
+		}
+
+		private void tagCreated(String tagPath, Tag tag) {
+			tags.put(tagPath, tag);
+		}
+
+		/**
+		 * @return the warning createPage would report for the tag, null if the tag exists
+		 */
+		private String tagWarning(String tagPath) {
+			try {
+				if (tag(tagPath) != null) {
+					return null;
+				}
+				return getTagManager().canCreateTag(tagPath)
+						? "Tag doesn't exist, creating new tag: " + tagPath
+						: "Could not access the tags.";
+			} catch (AccessControlException e) {
+				return "Could not access the tags.";
+			} catch (InvalidTagFormatException e) {
+				return "Invalid Tag.";
+			}
+		}
+
+		/**
+		 * Forgets the tags, the ones created since the last commit are gone after a revert
+		 */
+		private void reverted() {
+			tags.clear();
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package com.adobe.training.core.services.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.FieldOption;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.StockDataWriterJob;
+import com.adobe.training.core.services.QuoteListener;
+import com.adobe.training.core.services.QuoteStore;
+import com.adobe.training.core.services.StockQuote;
+
+/**
+ * In-memory quote store. Local imports update the store directly after their commit, so only
+ * trades written on other cluster nodes (external events) are read back from the repository.
+ * Removals are handled wherever they happen, e.g. a symbol deleted in the author UI or parked
+ * by the StockUniverseScheduler:
+ *
+ * /content/stocks/<SYMBOL>/trade  ADDED, CHANGED  external: the trade node is read into the store
+ * /content/stocks/<SYMBOL>/trade  REMOVED         the symbol is removed from the store
+ * /content/stocks/<SYMBOL>        REMOVED         the symbol is removed from the store
+ *
+ * Every changed or removed quote is passed on to the registered QuoteListener services.
+ */
+@Component(service = {QuoteStore.class, ResourceChangeListener.class},
+		immediate = true,
+		property = {
+				ResourceChangeListener.PATHS + "=glob:" + StockDataWriterJob.STOCK_IMPORT_FOLDER + "/*",
+				ResourceChangeListener.PATHS + "=glob:" + StockDataWriterJob.STOCK_IMPORT_FOLDER + "/*/trade",
+				ResourceChangeListener.CHANGES + "=ADDED",
+				ResourceChangeListener.CHANGES + "=CHANGED",
+				ResourceChangeListener.CHANGES + "=REMOVED"
+		})
+public class QuoteStoreImpl implements QuoteStore, ResourceChangeListener, ExternalResourceChangeListener {
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	// Convenience string to find the log messages for this training example class
+	// Logs can be found in crx-quickstart/logs/error.log
+	private String searchableLogStr = "$$$$$";
+
+	private static final String TRADE = "trade";
+
+	@Reference
+	private ResourceResolverFactory resourceResolverFactory;
+
+	@Reference(cardinality = ReferenceCardinality.MULTIPLE,
+			policy = ReferencePolicy.DYNAMIC,
+			fieldOption = FieldOption.UPDATE)
+	private final List<QuoteListener> listeners = new CopyOnWriteArrayList<>();
+
+	private final Map<String, StockQuote> quotes = new ConcurrentHashMap<>();
+
+	/**
+	 * Loads all trade nodes below /content/stocks with a single traversal.
+	 */
+	@Activate
+	protected void activate() {
+		try (ResourceResolver resourceResolver = getServiceResolver()) {
+			Resource stocksRoot = resourceResolver.getResource(StockDataWriterJob.STOCK_IMPORT_FOLDER);
+			if (stocksRoot != null) {
+				for (Resource stock : stocksRoot.getChildren()) {
+					load(stock.getName(), stock.getChild(TRADE));
+				}
+			}
+			logger.info(searchableLogStr + "Quote store loaded {} symbols", quotes.size());
+		} catch (LoginException e) {
+			logger.error(searchableLogStr + "Could not load the quote store", e);
+		}
+	}
+
+	@Override
+	public StockQuote get(String symbol) {
+		return symbol != null ? quotes.get(symbol) : null;
+	}
+
+	@Override
+	public Collection<StockQuote> getAll() {
+		return Collections.unmodifiableCollection(quotes.values());
+	}
+
+	@Override
+	public void put(String symbol, StockQuote quote) {
+		StockQuote copy = quote.copy();
+		copy.setSymbol(symbol);
+		quotes.put(symbol, copy);
+		notifyListeners(symbol, copy);
+	}
+
+	@Override
+	public void remove(String symbol) {
+		if (quotes.remove(symbol) != null) {
+			for (QuoteListener listener : listeners) {
+				try {
+					listener.onRemove(symbol);
+				} catch (RuntimeException e) {
+					logger.error(searchableLogStr + "Quote listener failed for " + symbol, e);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void onChange(List<ResourceChange> changes) {
+		ResourceResolver resourceResolver = null;
+		try {
+			for (ResourceChange change : changes) {
+				String path = change.getPath();
+				boolean isTrade = path.endsWith("/" + TRADE);
+				String symbolPath = isTrade ? path.substring(0, path.lastIndexOf('/')) : path;
+				String symbol = symbolPath.substring(symbolPath.lastIndexOf('/') + 1);
+
+				if (change.getType() == ResourceChange.ChangeType.REMOVED) {
+					remove(symbol);
+				} else if (isTrade && change.isExternal()) {
+					//Local imports already updated the store
+					if (resourceResolver == null) {
+						resourceResolver = getServiceResolver();
+					}
+					load(symbol, resourceResolver.getResource(path));
+				}
+			}
+		} catch (LoginException e) {
+			logger.error(searchableLogStr + "Could not update the quote store", e);
+		} finally {
+			if (resourceResolver != null) {
+				resourceResolver.close();
+			}
+		}
+	}
+
+	private void load(String symbol, Resource trade) {
+		StockQuote quote = trade != null ? readQuote(symbol, trade.getValueMap()) : null;
+		if (quote != null) {
+			quotes.put(symbol, quote);
+			notifyListeners(symbol, quote);
+		}
+	}
+
+	private void notifyListeners(String symbol, StockQuote quote) {
+		for (QuoteListener listener : listeners) {
+			try {
+				listener.onQuote(symbol, quote);
+			} catch (RuntimeException e) {
+				logger.error(searchableLogStr + "Quote listener failed for " + symbol, e);
+			}
+		}
+	}
+
+	/**
+	 * Reads a quote from the properties of a trade node.
+	 * @return the quote or null if the trade node was written before latestUpdate was stored
+	 */
+	static StockQuote readQuote(String symbol, ValueMap trade) {
+		Long latestUpdate = trade.get(StockDataWriterJob.LATESTUPDATE, Long.class);
+		Double lastTrade = trade.get(StockDataWriterJob.LASTTRADE, Double.class);
+		if (latestUpdate == null || lastTrade == null) {
+			return null;
+		}
+		StockQuote quote = new StockQuote();
+		quote.setSymbol(symbol);
+		quote.setCompanyName(trade.get(StockDataWriterJob.COMPANY, String.class));
+		quote.setSector(trade.get(StockDataWriterJob.SECTOR, String.class));
+		quote.setLatestPrice(lastTrade);
+		quote.setOpen(trade.get(StockDataWriterJob.OPENPRICE, Double.NaN));
+		quote.setHigh(trade.get(StockDataWriterJob.RANGEHIGH, Double.NaN));
+		quote.setLow(trade.get(StockDataWriterJob.RANGELOW, Double.NaN));
+		quote.setLatestVolume(trade.get(StockDataWriterJob.VOLUME, 0L));
+		quote.setChange(trade.get(StockDataWriterJob.UPDOWN, Double.NaN));
+		quote.setWeek52High(trade.get(StockDataWriterJob.WEEK52HIGH, Double.NaN));
+		quote.setWeek52Low(trade.get(StockDataWriterJob.WEEK52LOW, Double.NaN));
+		quote.setYtdChange(trade.get(StockDataWriterJob.YTDCHANGE, Double.NaN));
+		quote.setLatestUpdate(latestUpdate);
+		return quote;
+	}
+
+	private ResourceResolver getServiceResolver() throws LoginException {
+		//Get the service user (training-user) that belongs to the training.core:training subservice
+		Map<String, Object> serviceParams = new HashMap<>();
+		serviceParams.put(ResourceResolverFactory.SUBSERVICE, "training");
+		return resourceResolverFactory.getServiceResourceResolver(serviceParams);
+	}
+}
@@ -0,0 +1,247 @@
+package com.adobe.training.core.services.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.commons.metrics.Counter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.StockQuoteSerializer;
+import com.adobe.training.core.services.QuoteListener;
+import com.adobe.training.core.services.QuoteStore;
+import com.adobe.training.core.services.QuoteStream;
+import com.adobe.training.core.services.StockQuote;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Quote update fan-out. The QuoteStore calls onQuote for every changed quote, the quote is
+ * serialized once into a Server-Sent Event and the same bytes are offered to the queue of every
+ * subscriber of the symbol:
+ *
+ * id: <latestUpdate>
+ * event: quote
+ * data: {"symbol":"ADBE","companyName":"Adobe Inc.",...,"latestUpdate":1553192968000}
+ *
+ * Offering never blocks. A subscriber whose queue is full is evicted, its connection ends and the
+ * client reconnects, getting the latest quotes again. The number of subscriptions is capped.
+ *
+ * The following metrics are available in the Sling metrics console:
+ *  - training.quotestream.evicted   subscriptions evicted as slow consumers
+ *  - training.quotestream.rejected  subscriptions rejected because the maximum was reached
+ */
+@Component(service = {QuoteStream.class, QuoteListener.class})
+@Designate(ocd = QuoteStreamImpl.Config.class)
+public class QuoteStreamImpl implements QuoteStream, QuoteListener {
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	// Convenience string to find the log messages for this training example class
+	// Logs can be found in crx-quickstart/logs/error.log
+	private String searchableLogStr = "$$$$$";
+
+	@ObjectClassDefinition(name = "Training Quote Stream")
+	public @interface Config {
+		@AttributeDefinition(
+				name = "Max Subscriptions",
+				description = "Maximum number of concurrent quote stream connections",
+				type = AttributeType.INTEGER
+		)
+		int max_subscriptions() default 100;
+
+		@AttributeDefinition(
+				name = "Queue Size",
+				description = "Number of events that may wait for a subscriber before it is evicted as a slow consumer",
+				type = AttributeType.INTEGER
+		)
+		int queue_size() default 32;
+	}
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	@Reference
+	private QuoteStore quoteStore;
+
+	@Reference
+	private MetricsService metricsService;
+
+	//Subscriptions per symbol
+	private final Map<String, Set<SubscriptionImpl>> subscriptions = new ConcurrentHashMap<>();
+	//Last event per symbol, queued for new subscriptions
+	private final Map<String, byte[]> lastEvents = new ConcurrentHashMap<>();
+	private final AtomicInteger count = new AtomicInteger();
+
+	private volatile int maxSubscriptions;
+	private volatile int queueSize;
+
+	private Counter evicted;
+	private Counter rejected;
+
+	@Activate
+	@Modified
+	protected void activate(Config config) {
+		maxSubscriptions = config.max_subscriptions();
+		queueSize = Math.max(1, config.queue_size());
+		evicted = metricsService.counter("training.quotestream.evicted");
+		rejected = metricsService.counter("training.quotestream.rejected");
+	}
+
+	@Override
+	public Subscription subscribe(Collection<String> symbols) {
+		if (count.incrementAndGet() > maxSubscriptions) {
+			count.decrementAndGet();
+			rejected.increment();
+			return null;
+		}
+		//Room for the last quote of every symbol plus the regular queue
+		SubscriptionImpl subscription = new SubscriptionImpl(symbols, symbols.size() + queueSize);
+		for (String symbol : subscription.symbols) {
+			//Added within compute, a concurrent close() of the last subscriber must not drop the set first
+			subscriptions.compute(symbol, (s, subscribers) -> {
+				Set<SubscriptionImpl> set = subscribers != null ? subscribers : ConcurrentHashMap.newKeySet();
+				set.add(subscription);
+				return set;
+			});
+			byte[] event = getLastEvent(symbol);
+			if (event != null) {
+				subscription.offer(event);
+			}
+		}
+		return subscription;
+	}
+
+	@Override
+	public void onQuote(String symbol, StockQuote quote) {
+		byte[] event = toEvent(symbol, quote);
+		if (event == null) {
+			return;
+		}
+		//The same quote is passed on after the local commit and again when the change event is read back
+		byte[] last = lastEvents.put(symbol, event);
+		if (Arrays.equals(last, event)) {
+			return;
+		}
+		Set<SubscriptionImpl> subscribers = subscriptions.get(symbol);
+		if (subscribers == null) {
+			return;
+		}
+		for (SubscriptionImpl subscriber : subscribers) {
+			if (!subscriber.offer(event)) {
+				subscriber.evicted = true;
+				subscriber.close();
+				evicted.increment();
+			}
+		}
+	}
+
+	@Override
+	public void onRemove(String symbol) {
+		lastEvents.remove(symbol);
+	}
+
+	/**
+	 * @return the number of open subscriptions
+	 */
+	int getSubscriptionCount() {
+		return count.get();
+	}
+
+	private byte[] getLastEvent(String symbol) {
+		byte[] event = lastEvents.get(symbol);
+		if (event == null) {
+			StockQuote quote = quoteStore.get(symbol);
+			if (quote != null) {
+				event = toEvent(symbol, quote);
+				if (event != null) {
+					lastEvents.putIfAbsent(symbol, event);
+				}
+			}
+		}
+		return event;
+	}
+
+	/**
+	 * @return the Server-Sent Event of a quote as UTF-8 bytes
+	 */
+	byte[] toEvent(String symbol, StockQuote quote) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+		try {
+			out.write(("id: " + quote.getLatestUpdate() + "\nevent: quote\ndata: ").getBytes(StandardCharsets.UTF_8));
+			try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+				json.writeStartObject();
+				json.writeStringField("symbol", symbol);
+				StockQuoteSerializer.writeFields(json, quote);
+				json.writeEndObject();
+			}
+			out.write("\n\n".getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			logger.error(searchableLogStr + "Could not serialize the quote of " + symbol, e);
+			return null;
+		}
+		return out.toByteArray();
+	}
+
+	private class SubscriptionImpl implements Subscription {
+		private final List<String> symbols;
+		private final BlockingQueue<byte[]> queue;
+		private final AtomicBoolean closed = new AtomicBoolean();
+		private volatile boolean evicted;
+
+		private SubscriptionImpl(Collection<String> symbols, int capacity) {
+			this.symbols = new ArrayList<>(symbols);
+			this.queue = new ArrayBlockingQueue<>(capacity);
+		}
+
+		/**
+		 * @return false if the queue is full
+		 */
+		private boolean offer(byte[] event) {
+			return closed.get() || queue.offer(event);
+		}
+
+		@Override
+		public byte[] next(long timeout, TimeUnit unit) throws InterruptedException {
+			return queue.poll(timeout, unit);
+		}
+
+		@Override
+		public boolean isEvicted() {
+			return evicted;
+		}
+
+		@Override
+		public void close() {
+			if (!closed.compareAndSet(false, true)) {
+				return;
+			}
+			for (String symbol : symbols) {
+				subscriptions.computeIfPresent(symbol, (s, subscribers) -> {
+					subscribers.remove(this);
+					return subscribers.isEmpty() ? null : subscribers;
+				});
+			}
+			count.decrementAndGet();
+		}
+	}
+}
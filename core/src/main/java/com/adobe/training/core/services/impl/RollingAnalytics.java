@@ -0,0 +1,262 @@
+package com.adobe.training.core.services.impl;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.sling.api.resource.ValueMap;
+
+import com.adobe.training.core.StockDataWriterJob;
+import com.adobe.training.core.services.StockQuote;
+
+/**
+ * Rolling indicators of a symbol, kept on /content/stocks/&lt;SYMBOL&gt;/analytics together with the
+ * compact state needed to update them. Every tick is folded into the state in O(1), the history
+ * is never read again:
+ *
+ *  - sma<N>   simple moving average of the last N ticks. The last prices are kept in a ring
+ *             buffer sized for the largest window, one property per slot (p0, p1, ...), so a tick
+ *             only writes the slot it replaces. Every window keeps a running sum
+ *  - ema<N>   exponential moving average with alpha = 2 / (N + 1), seeded with the first price
+ *  - vwap     volume weighted average price of the trading day. The feed reports the volume of
+ *             the day so far, the volume traded since the previous tick is weighted with its price
+ *  - percentFromWeek52High, percentFromWeek52Low  distance of the last trade in percent
+ *
+ * Windows are counted in imported ticks. When the windows are reconfigured the sums are rebuilt
+ * once from the ring buffer and the indicators of windows that are no longer configured are
+ * removed. The configured windows are kept with the state, indicators() only exports those.
+ */
+final class RollingAnalytics {
+
+	//State, not exported
+	static final String SLOT_PREFIX = "p";
+	static final String RING_SIZE = "ringSize";
+	static final String RING_POSITION = "ringPosition";
+	static final String RING_COUNT = "ringCount";
+	static final String SUM_SUFFIX = "Sum";
+	static final String VWAP_DAY = "vwapDay";
+	static final String VWAP_PRICE_VOLUME = "vwapPriceVolume";
+	static final String VWAP_VOLUME = "vwapVolume";
+	static final String VWAP_LAST_VOLUME = "vwapLastVolume";
+	static final String SMA_WINDOWS = "smaWindows";
+	static final String EMA_WINDOWS = "emaWindows";
+	//Ring buffer of earlier versions, a single array rewritten on every tick
+	static final String PRICES = "prices";
+
+	private static final Pattern INDICATOR = Pattern.compile("^(" + StockDataWriterJob.SMA + "|" + StockDataWriterJob.EMA + ")(\\d{1,9})$");
+	private static final Pattern WINDOW_STATE = Pattern.compile("^(" + StockDataWriterJob.SMA + "|" + StockDataWriterJob.EMA + ")(\\d{1,9})(" + SUM_SUFFIX + ")?$");
+
+	private RollingAnalytics() {
+	}
+
+	/**
+	 * Folds a tick into the state. Ticks that are not newer than the last one folded in, e.g.
+	 * corrections of a trade, are ignored.
+	 *
+	 * @return false if the tick was ignored
+	 */
+	static boolean update(ValueMap state, StockQuote quote, int[] smaWindows, int[] emaWindows) {
+		long latestUpdate = quote.getLatestUpdate();
+		if (latestUpdate <= state.get(StockDataWriterJob.LATESTUPDATE, 0L)) {
+			return false;
+		}
+		double price = quote.getLatestPrice();
+		putWindows(state, SMA_WINDOWS, StockDataWriterJob.SMA, smaWindows);
+		putWindows(state, EMA_WINDOWS, StockDataWriterJob.EMA, emaWindows);
+		updateSma(state, price, smaWindows);
+		updateEma(state, price, emaWindows);
+		updateVwap(state, price, quote.getLatestVolume(), latestUpdate);
+		putPercent(state, StockDataWriterJob.FROMWEEK52HIGH, price, quote.getWeek52High());
+		putPercent(state, StockDataWriterJob.FROMWEEK52LOW, price, quote.getWeek52Low());
+		state.put(StockDataWriterJob.LATESTUPDATE, latestUpdate);
+		return true;
+	}
+
+	private static void updateSma(ValueMap state, double price, int[] windows) {
+		migrateRing(state);
+		int size = 0;
+		for (int window : windows) {
+			size = Math.max(size, window);
+		}
+		if (size == 0) {
+			removeRing(state);
+			return;
+		}
+		int ringSize = state.get(RING_SIZE, 0);
+		int position = state.get(RING_POSITION, 0);
+		int count = state.get(RING_COUNT, 0);
+		if (ringSize != size || !hasSums(state, windows)) {
+			//Windows changed: keep the latest prices and rebuild the sums once
+			double[] resized = new double[size];
+			int kept = ringSize > 0 ? Math.min(Math.min(count, ringSize), size) : 0;
+			for (int i = 0; i < kept; i++) {
+				resized[kept - 1 - i] = getSlot(state, Math.floorMod(position - 1 - i, ringSize));
+			}
+			for (int i = 0; i < size; i++) {
+				state.put(SLOT_PREFIX + i, resized[i]);
+			}
+			for (int i = size; i < ringSize; i++) {
+				state.remove(SLOT_PREFIX + i);
+			}
+			state.put(RING_SIZE, size);
+			count = kept;
+			position = kept % size;
+			for (int window : windows) {
+				double sum = 0;
+				for (int i = 0; i < Math.min(window, count); i++) {
+					sum += resized[Math.floorMod(position - 1 - i, size)];
+				}
+				state.put(StockDataWriterJob.SMA + window + SUM_SUFFIX, sum);
+			}
+		}
+
+		for (int window : windows) {
+			String sumKey = StockDataWriterJob.SMA + window + SUM_SUFFIX;
+			double sum = state.get(sumKey, 0d) + price;
+			if (count >= window) {
+				//The price leaving the window
+				sum -= getSlot(state, Math.floorMod(position - window, size));
+			}
+			state.put(sumKey, sum);
+			if (count + 1 >= window) {
+				state.put(StockDataWriterJob.SMA + window, sum / window);
+			} else {
+				state.remove(StockDataWriterJob.SMA + window);
+			}
+		}
+		//Only the replaced slot is written
+		state.put(SLOT_PREFIX + position, price);
+		state.put(RING_POSITION, (position + 1) % size);
+		state.put(RING_COUNT, Math.min(count + 1, size));
+	}
+
+	private static void updateEma(ValueMap state, double price, int[] windows) {
+		for (int window : windows) {
+			String key = StockDataWriterJob.EMA + window;
+			Double previous = state.get(key, Double.class);
+			double alpha = 2d / (window + 1);
+			state.put(key, previous == null ? price : alpha * price + (1 - alpha) * previous);
+		}
+	}
+
+	private static void updateVwap(ValueMap state, double price, long volume, long latestUpdate) {
+		String day = Instant.ofEpochMilli(latestUpdate).atZone(StockDataWriterJob.TIME_ZONE).toLocalDate().toString();
+		double priceVolume = 0;
+		long totalVolume = 0;
+		long lastVolume = 0;
+		if (day.equals(state.get(VWAP_DAY, String.class))) {
+			priceVolume = state.get(VWAP_PRICE_VOLUME, 0d);
+			totalVolume = state.get(VWAP_VOLUME, 0L);
+			lastVolume = state.get(VWAP_LAST_VOLUME, 0L);
+		}
+		long traded = volume - lastVolume;
+		if (traded > 0) {
+			priceVolume += price * traded;
+			totalVolume += traded;
+		}
+		state.put(VWAP_DAY, day);
+		state.put(VWAP_PRICE_VOLUME, priceVolume);
+		state.put(VWAP_VOLUME, totalVolume);
+		state.put(VWAP_LAST_VOLUME, Math.max(volume, lastVolume));
+		if (totalVolume > 0) {
+			state.put(StockDataWriterJob.VWAP, priceVolume / totalVolume);
+		}
+	}
+
+	private static void putPercent(ValueMap state, String key, double price, double reference) {
+		if (reference > 0 && !Double.isNaN(price)) {
+			state.put(key, (price - reference) / reference * 100);
+		} else {
+			state.remove(key);
+		}
+	}
+
+	private static double getSlot(ValueMap state, int index) {
+		return state.get(SLOT_PREFIX + index, 0d);
+	}
+
+	/**
+	 * Moves the prices of a ring buffer stored as one array into slot properties
+	 */
+	private static void migrateRing(ValueMap state) {
+		Double[] prices = state.get(PRICES, Double[].class);
+		if (prices == null) {
+			return;
+		}
+		for (int i = 0; i < prices.length; i++) {
+			state.put(SLOT_PREFIX + i, prices[i] != null ? prices[i] : 0d);
+		}
+		state.put(RING_SIZE, prices.length);
+		state.remove(PRICES);
+	}
+
+	private static void removeRing(ValueMap state) {
+		int ringSize = state.get(RING_SIZE, 0);
+		for (int i = 0; i < ringSize; i++) {
+			state.remove(SLOT_PREFIX + i);
+		}
+		state.remove(RING_SIZE);
+		state.remove(RING_POSITION);
+		state.remove(RING_COUNT);
+	}
+
+	/**
+	 * Records the configured windows of an indicator. When they changed, the values and sums of
+	 * the windows that are no longer configured are removed.
+	 */
+	private static void putWindows(ValueMap state, String key, String indicator, int[] windows) {
+		Integer[] configured = Arrays.stream(windows).boxed().toArray(Integer[]::new);
+		if (Arrays.equals(configured, state.get(key, Integer[].class))) {
+			return;
+		}
+		for (String name : new ArrayList<>(state.keySet())) {
+			Matcher matcher = WINDOW_STATE.matcher(name);
+			if (matcher.matches() && indicator.equals(matcher.group(1))
+					&& !Arrays.asList(configured).contains(Integer.parseInt(matcher.group(2)))) {
+				state.remove(name);
+			}
+		}
+		state.put(key, configured);
+	}
+
+	private static boolean hasSums(ValueMap state, int[] windows) {
+		for (int window : windows) {
+			if (!state.containsKey(StockDataWriterJob.SMA + window + SUM_SUFFIX)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the indicators of an analytics node without the state, empty if there are none
+	 */
+	static Map<String, Double> indicators(ValueMap analytics) {
+		Map<String, Double> indicators = new HashMap<>();
+		if (analytics == null) {
+			return indicators;
+		}
+		for (String key : analytics.keySet()) {
+			Matcher matcher = INDICATOR.matcher(key);
+			if (matcher.matches() ? isConfigured(analytics, matcher) : Arrays.asList(StockDataWriterJob.VWAP,
+					StockDataWriterJob.FROMWEEK52HIGH, StockDataWriterJob.FROMWEEK52LOW).contains(key)) {
+				indicators.put(key, analytics.get(key, Double.class));
+			}
+		}
+		return indicators;
+	}
+
+	/**
+	 * @return false for an sma or ema of a window that is no longer configured but was not
+	 * removed yet, because no tick was folded in since the windows changed
+	 */
+	private static boolean isConfigured(ValueMap analytics, Matcher indicator) {
+		String key = StockDataWriterJob.SMA.equals(indicator.group(1)) ? SMA_WINDOWS : EMA_WINDOWS;
+		Integer[] windows = analytics.get(key, Integer[].class);
+		return windows == null || Arrays.asList(windows).contains(Integer.parseInt(indicator.group(2)));
+	}
+}
@@ -0,0 +1,178 @@
+package com.adobe.training.core.services.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.services.QuoteListener;
+import com.adobe.training.core.services.QuoteStore;
+import com.adobe.training.core.services.SectorAggregates;
+import com.adobe.training.core.services.SectorSummary;
+import com.adobe.training.core.services.StockQuote;
+
+/**
+ * Sector aggregates maintained by deltas. The contribution of every symbol to its sector (change
+ * in percent, direction and volume) is remembered, a new quote subtracts the old contribution and
+ * adds the new one, also when the sector of the symbol changed. Each update is O(1), reading the
+ * aggregates is O(number of sectors) and the summaries are only rebuilt after a change.
+ *
+ * The aggregates are seeded once from the QuoteStore at activation.
+ */
+@Component(service = {SectorAggregates.class, QuoteListener.class})
+public class SectorAggregatesImpl implements SectorAggregates, QuoteListener {
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	// Convenience string to find the log messages for this training example class
+	// Logs can be found in crx-quickstart/logs/error.log
+	private String searchableLogStr = "$$$$$";
+
+	@Reference
+	private QuoteStore quoteStore;
+
+	//Guarded by this
+	private final Map<String, Contribution> contributions = new HashMap<>();
+	private final Map<String, Totals> sectors = new TreeMap<>();
+	private long version;
+
+	private volatile List<SectorSummary> summaries;
+
+	@Activate
+	protected void activate() {
+		for (StockQuote quote : quoteStore.getAll()) {
+			onQuote(quote.getSymbol(), quote);
+		}
+		logger.info(searchableLogStr + "Sector aggregates seeded with {} symbols in {} sectors", contributions.size(), sectors.size());
+	}
+
+	@Override
+	public void onQuote(String symbol, StockQuote quote) {
+		if (symbol == null) {
+			return;
+		}
+		Contribution contribution = new Contribution(quote);
+		synchronized (this) {
+			Contribution previous = contributions.get(symbol);
+			if (previous != null && previous.latestUpdate > contribution.latestUpdate) {
+				//Seeding raced with a newer import
+				return;
+			}
+			if (previous != null) {
+				apply(previous, -1);
+			}
+			if (contribution.sector != null) {
+				contributions.put(symbol, contribution);
+				apply(contribution, 1);
+			} else {
+				contributions.remove(symbol);
+			}
+			changed();
+		}
+	}
+
+	@Override
+	public void onRemove(String symbol) {
+		synchronized (this) {
+			Contribution previous = contributions.remove(symbol);
+			if (previous != null) {
+				apply(previous, -1);
+				changed();
+			}
+		}
+	}
+
+	@Override
+	public List<SectorSummary> getSectors() {
+		List<SectorSummary> result = summaries;
+		if (result == null) {
+			synchronized (this) {
+				if (summaries == null) {
+					List<SectorSummary> built = new ArrayList<>(sectors.size());
+					for (Map.Entry<String, Totals> sector : sectors.entrySet()) {
+						built.add(sector.getValue().toSummary(sector.getKey()));
+					}
+					summaries = Collections.unmodifiableList(built);
+				}
+				result = summaries;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	private void apply(Contribution contribution, int sign) {
+		Totals totals = sectors.computeIfAbsent(contribution.sector, s -> new Totals());
+		totals.count += sign;
+		if (!Double.isNaN(contribution.changePercent)) {
+			totals.changeCount += sign;
+			totals.changeSum += sign * contribution.changePercent;
+		}
+		if (contribution.direction > 0) {
+			totals.advancers += sign;
+		} else if (contribution.direction < 0) {
+			totals.decliners += sign;
+		} else {
+			totals.unchanged += sign;
+		}
+		totals.volume += sign * contribution.volume;
+		if (totals.count == 0) {
+			sectors.remove(contribution.sector);
+		} else if (totals.changeCount == 0) {
+			//No rounding error survives an empty sum
+			totals.changeSum = 0;
+		}
+	}
+
+	private void changed() {
+		version++;
+		summaries = null;
+	}
+
+	/**
+	 * What one symbol adds to the totals of its sector
+	 */
+	private static class Contribution {
+		private final String sector;
+		private final double changePercent;
+		private final int direction;
+		private final long volume;
+		private final long latestUpdate;
+
+		private Contribution(StockQuote quote) {
+			String name = quote.getSector();
+			this.sector = name != null && !name.trim().isEmpty() ? name.trim() : null;
+			double change = quote.getChange();
+			double previousClose = quote.getLatestPrice() - change;
+			this.changePercent = !Double.isNaN(change) && previousClose > 0 ? change / previousClose * 100 : Double.NaN;
+			this.direction = Double.isNaN(change) ? 0 : (int) Math.signum(change);
+			this.volume = Math.max(0, quote.getLatestVolume());
+			this.latestUpdate = quote.getLatestUpdate();
+		}
+	}
+
+	private static class Totals {
+		private int count;
+		private int changeCount;
+		private double changeSum;
+		private int advancers;
+		private int decliners;
+		private int unchanged;
+		private long volume;
+
+		private SectorSummary toSummary(String sector) {
+			return new SectorSummary(sector, count, changeCount > 0 ? changeSum / changeCount : Double.NaN,
+					advancers, decliners, unchanged, volume);
+		}
+	}
+}
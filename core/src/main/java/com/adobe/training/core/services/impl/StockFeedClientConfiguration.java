@@ -0,0 +1,65 @@
+package com.adobe.training.core.services.impl;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+@ObjectClassDefinition(name = "Training Stock Feed Client")
+public @interface StockFeedClientConfiguration {
+
+    @AttributeDefinition(
+            name = "Connect Timeout",
+            description = "Connect timeout in milliseconds",
+            type = AttributeType.INTEGER
+    )
+    int connect_timeout() default 5000;
+
+    @AttributeDefinition(
+            name = "Read Timeout",
+            description = "Socket read timeout in milliseconds",
+            type = AttributeType.INTEGER
+    )
+    int read_timeout() default 10000;
+
+    @AttributeDefinition(
+            name = "Max Connections",
+            description = "Maximum number of pooled keep-alive connections to the feed host",
+            type = AttributeType.INTEGER
+    )
+    int max_connections() default 20;
+
+    @AttributeDefinition(
+            name = "Failure Rate Threshold",
+            description = "Percentage of failed requests within the window that opens the circuit breaker",
+            type = AttributeType.INTEGER
+    )
+    int failure_rate_threshold() default 50;
+
+    @AttributeDefinition(
+            name = "Minimum Requests",
+            description = "Number of requests within the window before the failure rate is evaluated",
+            type = AttributeType.INTEGER
+    )
+    int minimum_requests() default 10;
+
+    @AttributeDefinition(
+            name = "Failure Window",
+            description = "Length of the rolling failure window in seconds",
+            type = AttributeType.INTEGER
+    )
+    int failure_window() default 60;
+
+    @AttributeDefinition(
+            name = "Open Duration",
+            description = "Seconds requests are rejected without contacting the feed once the circuit breaker opened",
+            type = AttributeType.INTEGER
+    )
+    int open_duration() default 30;
+
+    @AttributeDefinition(
+            name = "Half-Open Probes",
+            description = "Number of trial requests let through after the open duration to test if the feed recovered",
+            type = AttributeType.INTEGER
+    )
+    int half_open_probes() default 1;
+}
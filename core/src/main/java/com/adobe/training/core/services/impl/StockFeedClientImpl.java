@@ -0,0 +1,247 @@
+package com.adobe.training.core.services.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.osgi.services.HttpClientBuilderFactory;
+import org.apache.http.util.EntityUtils;
+import org.apache.sling.commons.metrics.Counter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.Designate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.services.FeedUnavailableException;
+import com.adobe.training.core.services.StockFeedClient;
+
+/**
+ * Pooled keep-alive HTTP client for the stock feed.
+ *
+ * The following metrics are available in the Sling metrics console:
+ *  - training.stockfeed.fetches      requests answered by the feed
+ *  - training.stockfeed.notmodified  requests answered with 304 (ratio = notmodified / fetches)
+ *  - training.stockfeed.bytes        bytes received on the wire (compressed size)
+ *  - training.stockfeed.rejected     requests skipped because the circuit breaker was open
+ *
+ * Connection errors, timeouts and 5xx answers count as failures for the circuit breaker. Other
+ * answers (including 404 for an unknown symbol) show that the host is healthy and count as
+ * successes.
+ */
+@Component(service = StockFeedClient.class,
+			immediate = true)
+@Designate(ocd = StockFeedClientConfiguration.class)
+public class StockFeedClientImpl implements StockFeedClient {
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	// Convenience string to find the log messages for this training example class
+	// Logs can be found in crx-quickstart/logs/error.log
+	private String searchableLogStr = "&&&&&";
+
+	@Reference
+	private HttpClientBuilderFactory httpClientBuilderFactory;
+
+	@Reference
+	private MetricsService metricsService;
+
+	//Replaced as a whole when the configuration changes, fetches read each field once
+	private volatile CloseableHttpClient httpClient;
+
+	//ETag, Last-Modified and payload hash of the last response per feed url
+	private final Map<String, FeedState> feedStates = new ConcurrentHashMap<>();
+
+	private volatile Counter fetches;
+	private volatile Counter notModified;
+	private volatile Counter bytesReceived;
+	private volatile Counter rejected;
+
+	private volatile CircuitBreaker circuitBreaker;
+	private volatile long requestTimeout;
+
+	@Activate
+	@Modified
+	protected void activate(StockFeedClientConfiguration config) {
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(config.max_connections());
+		connectionManager.setDefaultMaxPerRoute(config.max_connections());
+
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(config.connect_timeout())
+				.setConnectionRequestTimeout(config.connect_timeout())
+				.setSocketTimeout(config.read_timeout())
+				.build();
+
+		//Content compression is handled here so the compressed size can be counted
+		CloseableHttpClient newClient = httpClientBuilderFactory.newBuilder()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.disableContentCompression()
+				.build();
+
+		fetches = metricsService.counter("training.stockfeed.fetches");
+		notModified = metricsService.counter("training.stockfeed.notmodified");
+		bytesReceived = metricsService.counter("training.stockfeed.bytes");
+		rejected = metricsService.counter("training.stockfeed.rejected");
+
+		//The rolling window is kept in 10 buckets
+		circuitBreaker = new CircuitBreaker(config.failure_rate_threshold(), config.minimum_requests(),
+				config.failure_window() * 1000L, 10, config.open_duration() * 1000L, config.half_open_probes(),
+				System::currentTimeMillis);
+
+		//Connection request and connect timeout, then the read timeout
+		requestTimeout = 2L * config.connect_timeout() + config.read_timeout();
+
+		//Publish the new client before the old one is closed, so new fetches never see a closed or missing client
+		CloseableHttpClient oldClient = httpClient;
+		httpClient = newClient;
+		closeClient(oldClient);
+		logger.info(searchableLogStr + "Stock feed client started with {} pooled connections", config.max_connections());
+	}
+
+	@Deactivate
+	protected void deactivate() {
+		CloseableHttpClient oldClient = httpClient;
+		httpClient = null;
+		closeClient(oldClient);
+	}
+
+	@Override
+	public byte[] fetch(String feedUrl, String symbol) throws IOException {
+		String stockUrl = feedUrl + symbol + ".json";
+		HttpGet get = new HttpGet(stockUrl);
+		get.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+
+		FeedState state = feedStates.computeIfAbsent(stockUrl, url -> new FeedState());
+		if (state.etag != null) {
+			get.setHeader(HttpHeaders.IF_NONE_MATCH, state.etag);
+		}
+		if (state.lastModified != null) {
+			get.setHeader(HttpHeaders.IF_MODIFIED_SINCE, state.lastModified);
+		}
+
+		CloseableHttpClient client = httpClient;
+		CircuitBreaker breaker = circuitBreaker;
+		if (client == null) {
+			throw new IOException("Stock feed client is not active, skipped " + stockUrl);
+		}
+		if (!breaker.tryAcquire()) {
+			rejected.increment();
+			throw new FeedUnavailableException("Stock feed circuit breaker is open, skipped " + stockUrl);
+		}
+
+		//Every permitted call reports its outcome whatever is thrown, otherwise a half-open probe slot stays taken
+		boolean hostHealthy = false;
+		try (CloseableHttpResponse response = client.execute(get)) {
+			fetches.increment();
+			int status = response.getStatusLine().getStatusCode();
+			HttpEntity entity = response.getEntity();
+
+			if (status >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+				EntityUtils.consume(entity);
+				throw new IOException("Stock feed answered " + status + " for " + stockUrl);
+			}
+			hostHealthy = true;
+			if (status == HttpStatus.SC_NOT_MODIFIED) {
+				notModified.increment();
+				state.unchanged++;
+				EntityUtils.consume(entity);
+				return null;
+			}
+			if (status != HttpStatus.SC_OK || entity == null) {
+				EntityUtils.consume(entity);
+				throw new IOException("Stock feed answered " + status + " for " + stockUrl);
+			}
+
+			//A read timeout or connection reset while receiving the body counts as a failure
+			hostHealthy = false;
+			byte[] payload = EntityUtils.toByteArray(entity);
+			hostHealthy = true;
+			bytesReceived.increment(payload.length);
+
+			Header encoding = entity.getContentEncoding();
+			if (encoding != null && encoding.getValue().toLowerCase().contains("gzip")) {
+				try (InputStream unzipped = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+					payload = IOUtils.toByteArray(unzipped);
+				}
+			}
+
+			state.etag = headerValue(response.getFirstHeader(HttpHeaders.ETAG));
+			state.lastModified = headerValue(response.getFirstHeader(HttpHeaders.LAST_MODIFIED));
+			//Feeds without validators may still send the same bytes again
+			int payloadHash = Arrays.hashCode(payload);
+			state.unchanged = state.payloadHash == payloadHash ? state.unchanged + 1 : 0;
+			state.payloadHash = payloadHash;
+			return payload;
+		} finally {
+			if (hostHealthy) {
+				breaker.onSuccess();
+			} else {
+				breaker.onFailure();
+			}
+		}
+	}
+
+	@Override
+	public void invalidate(String feedUrl, String symbol) {
+		feedStates.remove(feedUrl + symbol + ".json");
+	}
+
+	@Override
+	public int getUnchangedCount(String feedUrl, String symbol) {
+		FeedState state = feedStates.get(feedUrl + symbol + ".json");
+		return state != null ? state.unchanged : 0;
+	}
+
+	@Override
+	public long getRequestTimeout() {
+		return requestTimeout;
+	}
+
+	@Override
+	public boolean isAvailable() {
+		return circuitBreaker.getState() != CircuitBreaker.State.OPEN;
+	}
+
+	private static String headerValue(Header header) {
+		return header != null ? header.getValue() : null;
+	}
+
+	/**
+	 * What is known about the last response of a feed url. A symbol is only fetched by
+	 * one job at a time, so the fields are not synchronized.
+	 */
+	private static class FeedState {
+		private volatile String etag;
+		private volatile String lastModified;
+		private volatile int payloadHash;
+		private volatile int unchanged;
+	}
+
+	private void closeClient(CloseableHttpClient client) {
+		if (client != null) {
+			try {
+				client.close();
+			} catch (IOException e) {
+				logger.error(searchableLogStr + "Could not close the stock feed client", e);
+			}
+		}
+	}
+}
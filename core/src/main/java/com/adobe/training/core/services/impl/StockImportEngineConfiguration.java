@@ -0,0 +1,46 @@
+package com.adobe.training.core.services.impl;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+@ObjectClassDefinition(name = "Training Stock Import Engine")
+public @interface StockImportEngineConfiguration {
+
+    @AttributeDefinition(
+            name = "Fetch Concurrency",
+            description = "Maximum number of feed requests in flight across all imports. "
+                    + "Requests beyond Max Connections of the Training Stock Feed Client wait for a pooled connection.",
+            type = AttributeType.INTEGER
+    )
+    int fetch_concurrency() default 64;
+
+    @AttributeDefinition(
+            name = "Writer Threads",
+            description = "Number of threads writing quotes to the repository",
+            type = AttributeType.INTEGER
+    )
+    int writer_threads() default 2;
+
+    @AttributeDefinition(
+            name = "Commit Chunk Size",
+            description = "Maximum number of symbols written per repository commit",
+            type = AttributeType.INTEGER
+    )
+    int commit_chunk_size() default 100;
+
+    @AttributeDefinition(
+            name = "Write Queue Size",
+            description = "Number of parsed quotes that may wait for a writer. Fetching pauses while the queue is full.",
+            type = AttributeType.INTEGER
+    )
+    int write_queue_size() default 1000;
+
+    @AttributeDefinition(
+            name = "Write Timeout",
+            description = "Seconds an import waits for its quotes to be written after the last request of the Training Stock Feed Client timed out. "
+                    + "Symbols without an outcome by then are reported as FAILED (timeout).",
+            type = AttributeType.INTEGER
+    )
+    int write_timeout() default 30;
+}
@@ -0,0 +1,386 @@
+package com.adobe.training.core.services.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.Designate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.StockQuoteParser;
+import com.adobe.training.core.services.FeedUnavailableException;
+import com.adobe.training.core.services.QuoteStore;
+import com.adobe.training.core.services.StockFeedClient;
+import com.adobe.training.core.services.StockImportEngine;
+import com.adobe.training.core.services.StockQuote;
+import com.adobe.training.core.services.StockQuoteWriter;
+
+/**
+ * Two stage import engine.
+ *
+ * Fetch stage   up to fetch_concurrency threads request and parse the feed data. The threads are
+ *               shared by all imports and time out when idle, so the cap bounds the number of
+ *               requests in flight on the instance no matter how many import jobs run.
+ * Write stage   writer_threads threads take parsed quotes from a bounded queue, write up to
+ *               commit_chunk_size of them with one service resolver and commit them together.
+ *               A full queue pauses the fetch stage until the writers caught up.
+ *
+ * The outcome of every symbol is completed by the stage that finished it, the calling job thread
+ * only waits for the outcomes. The wait is bounded by the request timeout of the feed client and
+ * write_timeout (see getTimeout), symbols without an outcome by then are FAILED (timeout).
+ */
+@Component(service = StockImportEngine.class,
+			immediate = true)
+@Designate(ocd = StockImportEngineConfiguration.class)
+public class StockImportEngineImpl implements StockImportEngine {
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	// Convenience string to find the log messages for this training example class
+	// Logs can be found in crx-quickstart/logs/error.log
+	private String searchableLogStr = "&&&&&";
+
+	private static final String CANCELLED = "CANCELLED";
+	private static final String TIMED_OUT = "FAILED (timeout)";
+
+	@Reference
+	private ResourceResolverFactory resourceResolverFactory;
+
+	@Reference
+	private StockFeedClient stockFeedClient;
+
+	@Reference
+	private StockQuoteWriter stockQuoteWriter;
+
+	@Reference
+	private QuoteStore quoteStore;
+
+	//Replaced on reconfiguration while imports run, importSymbols reads each field once
+	private volatile ThreadPoolExecutor fetchExecutor;
+	private volatile ExecutorService writeExecutor;
+	private volatile BlockingQueue<PendingWrite> writeQueue;
+	private volatile long writeTimeout;
+	private int chunkSize;
+	//Set on deactivation, the writers end once the queue is empty
+	private volatile boolean draining;
+
+	@Activate
+	@Modified
+	protected void activate(StockImportEngineConfiguration config) {
+		deactivate();
+		draining = false;
+		int concurrency = Math.max(1, config.fetch_concurrency());
+		ThreadPoolExecutor fetcher = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), threadFactory("stock-import-fetch-"));
+		fetcher.allowCoreThreadTimeOut(true);
+
+		int writers = Math.max(1, config.writer_threads());
+		chunkSize = Math.max(1, config.commit_chunk_size());
+		writeTimeout = TimeUnit.SECONDS.toNanos(Math.max(0, config.write_timeout()));
+		BlockingQueue<PendingWrite> queue = new ArrayBlockingQueue<>(Math.max(chunkSize, config.write_queue_size()));
+		ExecutorService executor = Executors.newFixedThreadPool(writers, threadFactory("stock-import-write-"));
+		int size = chunkSize;
+		for (int i = 0; i < writers; i++) {
+			executor.execute(() -> writeLoop(queue, size));
+		}
+		writeQueue = queue;
+		writeExecutor = executor;
+		//Published last, an import that sees the new fetch executor also sees the new queue
+		fetchExecutor = fetcher;
+		logger.info(searchableLogStr + "Stock import engine started with {} fetch and {} writer threads", concurrency, writers);
+	}
+
+	@Deactivate
+	protected void deactivate() {
+		if (fetchExecutor != null) {
+			//Symbols that were not requested yet are cancelled
+			for (Runnable task : fetchExecutor.shutdownNow()) {
+				((FetchTask) task).outcome.complete(CANCELLED);
+			}
+			//Requests in flight end within the feed client timeouts, their quotes still get written
+			try {
+				fetchExecutor.awaitTermination(30, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			fetchExecutor = null;
+		}
+		if (writeExecutor != null) {
+			//The writers drain the queue and end, writes still queued after the timeout are cancelled
+			draining = true;
+			writeExecutor.shutdown();
+			try {
+				if (!writeExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+					writeExecutor.shutdownNow();
+					writeExecutor.awaitTermination(10, TimeUnit.SECONDS);
+				}
+			} catch (InterruptedException e) {
+				writeExecutor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+			List<PendingWrite> unwritten = new ArrayList<>();
+			writeQueue.drainTo(unwritten);
+			for (PendingWrite pending : unwritten) {
+				pending.outcome.complete(CANCELLED);
+			}
+			writeExecutor = null;
+		}
+	}
+
+	@Override
+	public Map<String, String> importSymbols(String feedUrl, List<String> symbols, BooleanSupplier stopped) throws InterruptedException {
+		Map<String, CompletableFuture<String>> outcomes = new LinkedHashMap<>();
+		ThreadPoolExecutor executor = fetchExecutor;
+		BlockingQueue<PendingWrite> queue = writeQueue;
+		long deadline = System.nanoTime() + getTimeout(executor, symbols.size());
+		for (String symbol : symbols) {
+			FetchTask task = new FetchTask(feedUrl, symbol, stopped, queue);
+			outcomes.put(symbol, task.outcome);
+			try {
+				if (executor == null) {
+					throw new RejectedExecutionException("Stock import engine is not active");
+				}
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				//The engine is being deactivated
+				task.outcome.complete(CANCELLED);
+			}
+		}
+
+		Map<String, String> result = new LinkedHashMap<>();
+		for (Map.Entry<String, CompletableFuture<String>> outcome : outcomes.entrySet()) {
+			String symbol = outcome.getKey();
+			try {
+				result.put(symbol, outcome.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+			} catch (ExecutionException e) {
+				result.put(symbol, "FAILED (" + e.getCause().getMessage() + ")");
+			} catch (TimeoutException e) {
+				//A fetch or write that ends late does not change the outcome any more
+				outcome.getValue().complete(TIMED_OUT);
+				logger.warn(searchableLogStr + "No outcome for {} within the import timeout", symbol);
+				stockFeedClient.invalidate(feedUrl, symbol);
+				result.put(symbol, outcome.getValue().getNow(TIMED_OUT));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The symbols are fetched in waves of fetch_concurrency requests, behind the requests of
+	 * other imports already queued. Every wave takes at most the request timeout of the feed
+	 * client, the last quotes then get the write timeout to be written.
+	 *
+	 * @return the time in nanoseconds an import of that many symbols may take
+	 */
+	private long getTimeout(ThreadPoolExecutor executor, int symbols) {
+		long waves = 1;
+		if (executor != null) {
+			int concurrency = executor.getMaximumPoolSize();
+			waves = (executor.getQueue().size() + symbols + concurrency - 1) / concurrency + 1;
+		}
+		return waves * TimeUnit.MILLISECONDS.toNanos(stockFeedClient.getRequestTimeout()) + writeTimeout;
+	}
+
+	/**
+	 * Fetch stage for one symbol: requests and parses the feed data and queues the quote for a writer
+	 */
+	private class FetchTask implements Runnable {
+		private final String feedUrl;
+		private final String symbol;
+		private final BooleanSupplier stopped;
+		private final BlockingQueue<PendingWrite> queue;
+		private final CompletableFuture<String> outcome = new CompletableFuture<>();
+
+		private FetchTask(String feedUrl, String symbol, BooleanSupplier stopped, BlockingQueue<PendingWrite> queue) {
+			this.feedUrl = feedUrl;
+			this.symbol = symbol;
+			this.stopped = stopped;
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			if (outcome.isDone()) {
+				//The import timed out before the symbol was requested
+				return;
+			}
+			if (stopped.getAsBoolean()) {
+				outcome.complete(CANCELLED);
+				return;
+			}
+			try {
+				byte[] payload = stockFeedClient.fetch(feedUrl, symbol);
+				if (payload == null) {
+					//304 Not Modified, the trade node already holds this data
+					outcome.complete("UNCHANGED");
+					return;
+				}
+				StockQuote quote = StockQuoteParser.parse(payload, new StockQuote());
+				queue.put(new PendingWrite(feedUrl, symbol, quote, outcome));
+			} catch (FeedUnavailableException e) {
+				outcome.complete("SKIPPED");
+			} catch (IOException | RuntimeException e) {
+				logger.error(searchableLogStr + "Cannot read stock info for " + symbol, e);
+				stockFeedClient.invalidate(feedUrl, symbol);
+				outcome.complete("FAILED (" + e.getMessage() + ")");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				stockFeedClient.invalidate(feedUrl, symbol);
+				outcome.complete(CANCELLED);
+			}
+		}
+	}
+
+	/**
+	 * Write stage: takes up to a chunk of quotes at a time until the engine is deactivated and
+	 * the queue is empty
+	 */
+	private void writeLoop(BlockingQueue<PendingWrite> queue, int size) {
+		List<PendingWrite> chunk = new ArrayList<>(size);
+		while (!Thread.currentThread().isInterrupted()) {
+			PendingWrite first;
+			try {
+				first = queue.poll(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			if (first == null) {
+				if (draining) {
+					break;
+				}
+				continue;
+			}
+			chunk.add(first);
+			queue.drainTo(chunk, size - 1);
+			writeChunk(chunk);
+			chunk.clear();
+		}
+	}
+
+	private void writeChunk(List<PendingWrite> chunk) {
+		//Get the service user (training-user) that belongs to the training.core:training subservice
+		Map<String, Object> serviceParams = new HashMap<>();
+		serviceParams.put(ResourceResolverFactory.SUBSERVICE, "training");
+
+		try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(serviceParams)) {
+			List<PendingWrite> remaining = new ArrayList<>(chunk);
+			List<PendingWrite> written = new ArrayList<>(chunk.size());
+			while (!write(resourceResolver, remaining, written)) {
+				written.clear();
+			}
+			for (PendingWrite pending : remaining) {
+				if (!written.contains(pending)) {
+					//Same quote as the last one written, nothing to commit
+					pending.outcome.complete("UNCHANGED");
+				}
+			}
+			if (written.isEmpty()) {
+				return;
+			}
+			try {
+				resourceResolver.commit();
+				for (PendingWrite pending : written) {
+					quoteStore.put(pending.symbol, pending.quote);
+					pending.outcome.complete("OK");
+				}
+			} catch (PersistenceException e) {
+				logger.error(searchableLogStr + "Cannot commit stock info for " + written.size() + " symbols", e);
+				resourceResolver.revert();
+				for (PendingWrite pending : written) {
+					fail(pending, e);
+				}
+			}
+		} catch (LoginException e) {
+			logger.error(searchableLogStr + "Exception with getting the service resource resolver", e);
+			for (PendingWrite pending : chunk) {
+				fail(pending, e);
+			}
+		}
+	}
+
+	/**
+	 * Writes the quotes into the session of the resolver. If a quote cannot be written the session
+	 * may hold part of it, so all changes are reverted and the failed quote is removed from the
+	 * list, the caller writes the rest again.
+	 *
+	 * @return false if a quote failed and the remaining quotes need to be written again
+	 */
+	private boolean write(ResourceResolver resourceResolver, List<PendingWrite> remaining, List<PendingWrite> written) {
+		for (PendingWrite pending : remaining) {
+			try {
+				if (stockQuoteWriter.write(resourceResolver, pending.symbol, pending.quote)) {
+					written.add(pending);
+				}
+			} catch (PersistenceException | RuntimeException e) {
+				logger.error(searchableLogStr + "Cannot write stock info for " + pending.symbol, e);
+				resourceResolver.revert();
+				//The writer remembered the quotes written before, they are written again
+				for (PendingWrite reverted : written) {
+					stockQuoteWriter.forget(reverted.symbol);
+				}
+				remaining.remove(pending);
+				fail(pending, e);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Makes sure the next import requests and writes the symbol again
+	 */
+	private void fail(PendingWrite pending, Exception e) {
+		stockFeedClient.invalidate(pending.feedUrl, pending.symbol);
+		stockQuoteWriter.forget(pending.symbol);
+		pending.outcome.complete("FAILED (" + e.getMessage() + ")");
+	}
+
+	private static class PendingWrite {
+		private final String feedUrl;
+		private final String symbol;
+		private final StockQuote quote;
+		private final CompletableFuture<String> outcome;
+
+		private PendingWrite(String feedUrl, String symbol, StockQuote quote, CompletableFuture<String> outcome) {
+			this.feedUrl = feedUrl;
+			this.symbol = symbol;
+			this.quote = quote;
+			this.outcome = outcome;
+		}
+	}
+
+	private static ThreadFactory threadFactory(String prefix) {
+		AtomicInteger count = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
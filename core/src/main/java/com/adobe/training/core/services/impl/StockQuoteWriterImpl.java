@@ -0,0 +1,219 @@
+package com.adobe.training.core.services.impl;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.commons.metrics.Counter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.StockDataWriterJob;
+import com.adobe.training.core.services.StockQuote;
+import com.adobe.training.core.services.StockQuoteWriter;
+import com.day.cq.commons.jcr.JcrConstants;
+
+/**
+ * Writes the stock data structure
+ *
+ *  + <STOCK_SYMBOL> [sling:OrderedFolder]
+ *     + trade [nt:unstructured]
+ *       - companyName = <value>
+ *       - sector = <value>
+ *       - lastTrade = <value>
+ *       - ...
+ *       - latestUpdate = <epoch milliseconds of the trade>
+ *       - fingerprint = <hash of the quote written>
+ *     + analytics [nt:unstructured]
+ *       - sma<N>, ema<N>, vwap, percentFromWeek52High, percentFromWeek52Low = <value>
+ *       - ... compact rolling state (see RollingAnalytics)
+ *     + history
+ *       + yyyy
+ *         + MM
+ *           + dd
+ *             + <latestUpdate> [nt:unstructured]
+ *               - lastTrade = <value>
+ *               - volume = <value>
+ *               - upDown = <value>
+ *               - latestUpdate = <value>
+ *
+ * Every changed quote is appended as a tick to the day bucket of its trade time. Bucketing by day
+ * keeps the number of child nodes per node bounded, so appending stays O(1) and reading a range
+ * of days only touches the buckets of those days. StockHistoryCompactionTask rolls older days up
+ * into daily OHLC summaries. The analytics node is updated in the same write from its rolling
+ * state, so the indicators never need the history.
+ *
+ * The following metrics are available in the Sling metrics console:
+ *  - training.stockimport.writes.performed
+ *  - training.stockimport.writes.skipped
+ */
+@Component(service = StockQuoteWriter.class)
+@Designate(ocd = StockQuoteWriterImpl.Config.class)
+public class StockQuoteWriterImpl implements StockQuoteWriter {
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	// Convenience string to find the log messages for this training example class
+	// Logs can be found in crx-quickstart/logs/error.log
+	private String searchableLogStr = "&&&&&";
+
+	@ObjectClassDefinition(name = "Training Stock Analytics",
+						   description = "Rolling indicators written next to the trade node of every symbol")
+	public @interface Config {
+		@AttributeDefinition(
+				name = "SMA Windows",
+				description = "Number of ticks of each simple moving average",
+				type = AttributeType.INTEGER
+		)
+		int[] sma_windows() default {20, 50};
+
+		@AttributeDefinition(
+				name = "EMA Windows",
+				description = "Number of ticks of each exponential moving average",
+				type = AttributeType.INTEGER
+		)
+		int[] ema_windows() default {12, 26};
+	}
+
+	private static final DateTimeFormatter BUCKET_FORMATTER = DateTimeFormatter.ofPattern("yyyy/MM/dd");
+
+	@Reference
+	private MetricsService metricsService;
+
+	//Fingerprint of the last quote written per symbol
+	private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+
+	private Counter writesPerformed;
+	private Counter writesSkipped;
+
+	private volatile int[] smaWindows;
+	private volatile int[] emaWindows;
+
+	@Activate
+	@Modified
+	protected void activate(Config config) {
+		smaWindows = positive(config.sma_windows());
+		emaWindows = positive(config.ema_windows());
+		writesPerformed = metricsService.counter("training.stockimport.writes.performed");
+		writesSkipped = metricsService.counter("training.stockimport.writes.skipped");
+	}
+
+	@Override
+	public boolean write(ResourceResolver resourceResolver, String stockSymbol, StockQuote quote) throws PersistenceException {
+		String fingerprint = Long.toHexString(quote.fingerprint());
+		if (fingerprint.equals(fingerprints.get(stockSymbol))) {
+			writesSkipped.increment();
+			return false;
+		}
+
+		String stockPath = StockDataWriterJob.STOCK_IMPORT_FOLDER + "/" + stockSymbol;
+		String tradePath = stockPath + "/trade";
+		Resource trade = resourceResolver.getResource(tradePath);
+
+		//After a restart the fingerprint is only known from the trade node
+		if (trade != null && fingerprint.equals(trade.getValueMap().get(StockDataWriterJob.FINGERPRINT, String.class))) {
+			fingerprints.put(stockSymbol, fingerprint);
+			writesSkipped.increment();
+			return false;
+		}
+
+		if (trade == null) {
+			//Test if stock import folder exists, otherwise create it
+			Resource stockFolder = ResourceUtil.getOrCreateResource(resourceResolver, stockPath, "", "", false);
+			// set jcr:primaryType to nt:unstructured when resource is created
+			trade = resourceResolver.create(stockFolder, "trade",
+					Collections.<String, Object>singletonMap(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED));
+		}
+
+		// Transform the time stamp into a readable format
+		ZonedDateTime timeWithZone = Instant.ofEpochMilli(quote.getLatestUpdate()).atZone(StockDataWriterJob.TIME_ZONE);
+
+		ModifiableValueMap stockData = trade.adaptTo(ModifiableValueMap.class);
+		stockData.put(StockDataWriterJob.COMPANY, quote.getCompanyName());
+		stockData.put(StockDataWriterJob.SECTOR, quote.getSector());
+		//will store timeOfUpdate as:  Hour:Minute AM/PM, TimeZone    e.g.   11:34 AM, EDT
+		stockData.put(StockDataWriterJob.UPDATETIME, timeWithZone.format(StockDataWriterJob.TIME_FORMATTER));
+		stockData.put(StockDataWriterJob.DAYOFUPDATE, timeWithZone.format(StockDataWriterJob.DAY_FORMATTER));
+		stockData.put(StockDataWriterJob.LASTTRADE, quote.getLatestPrice());
+		stockData.put(StockDataWriterJob.OPENPRICE, quote.getOpen());
+		stockData.put(StockDataWriterJob.RANGEHIGH, quote.getHigh());
+		stockData.put(StockDataWriterJob.RANGELOW, quote.getLow());
+		stockData.put(StockDataWriterJob.VOLUME, quote.getLatestVolume());
+		stockData.put(StockDataWriterJob.UPDOWN, quote.getChange());
+		stockData.put(StockDataWriterJob.WEEK52HIGH, quote.getWeek52High());
+		stockData.put(StockDataWriterJob.WEEK52LOW, quote.getWeek52Low());
+		stockData.put(StockDataWriterJob.YTDCHANGE, quote.getYtdChange());
+		stockData.put(StockDataWriterJob.LATESTUPDATE, quote.getLatestUpdate());
+		stockData.put(StockDataWriterJob.FINGERPRINT, fingerprint);
+
+		updateAnalytics(resourceResolver, trade.getParent(), quote);
+		appendHistory(resourceResolver, stockPath, quote, timeWithZone);
+
+		fingerprints.put(stockSymbol, fingerprint);
+		writesPerformed.increment();
+		logger.info(searchableLogStr + "Updated trade data for " + stockSymbol);
+		return true;
+	}
+
+	/**
+	 * Folds the quote into the rolling indicators of /content/stocks/<SYMBOL>/analytics
+	 */
+	private void updateAnalytics(ResourceResolver resourceResolver, Resource stockFolder, StockQuote quote) throws PersistenceException {
+		Resource analytics = stockFolder.getChild(StockDataWriterJob.ANALYTICS);
+		if (analytics == null) {
+			analytics = resourceResolver.create(stockFolder, StockDataWriterJob.ANALYTICS,
+					Collections.<String, Object>singletonMap(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED));
+		}
+		RollingAnalytics.update(analytics.adaptTo(ModifiableValueMap.class), quote, smaWindows, emaWindows);
+	}
+
+	private static int[] positive(int[] windows) {
+		return windows == null ? new int[0] : Arrays.stream(windows).filter(window -> window > 0).distinct().toArray();
+	}
+
+	/**
+	 * Appends the quote as a tick to /content/stocks/<SYMBOL>/history/yyyy/MM/dd
+	 */
+	private void appendHistory(ResourceResolver resourceResolver, String stockPath, StockQuote quote, ZonedDateTime timeWithZone) throws PersistenceException {
+		String bucketPath = stockPath + "/" + StockDataWriterJob.HISTORY + "/" + timeWithZone.format(BUCKET_FORMATTER);
+		Resource bucket = ResourceUtil.getOrCreateResource(resourceResolver, bucketPath, "", "", false);
+
+		String tickName = Long.toString(quote.getLatestUpdate());
+		Map<String, Object> tick = new HashMap<>();
+		tick.put(StockDataWriterJob.LASTTRADE, quote.getLatestPrice());
+		tick.put(StockDataWriterJob.VOLUME, quote.getLatestVolume());
+		tick.put(StockDataWriterJob.UPDOWN, quote.getChange());
+		tick.put(StockDataWriterJob.LATESTUPDATE, quote.getLatestUpdate());
+
+		Resource existing = bucket.getChild(tickName);
+		if (existing != null) {
+			//The feed corrected a trade without changing its time, keep the latest values
+			existing.adaptTo(ModifiableValueMap.class).putAll(tick);
+		} else {
+			tick.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+			resourceResolver.create(bucket, tickName, tick);
+		}
+	}
+
+	@Override
+	public void forget(String symbol) {
+		fingerprints.remove(symbol);
+	}
+}
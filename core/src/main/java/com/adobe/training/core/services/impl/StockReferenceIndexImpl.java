@@ -0,0 +1,275 @@
+package com.adobe.training.core.services.impl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.StockDataWriterJob;
+import com.adobe.training.core.models.Stockplex;
+import com.adobe.training.core.services.StockReferenceIndex;
+
+/**
+ * Keeps the index of stockplex components per symbol. The index is built with one query at
+ * activation and kept up to date by resource change events below /content:
+ *
+ * any resource         ADDED    all stockplex components at or below the resource are indexed,
+ *                               unless an ancestor was added in the same batch of changes
+ * stockplex component  CHANGED  the component is indexed with its current symbol
+ * page content         CHANGED  the published state of the page is read again
+ * any resource         REMOVED  all components at or below the resource are dropped
+ *
+ * JCR reports an ADDED change for every node of a new tree, e.g. of the pages of a bulk import,
+ * so every added tree is walked once from its top most added node. A moved page is reported as
+ * one ADDED change of its top node only and is walked the same way.
+ *
+ * Changes made on other cluster nodes are handled as well, so the index of the leader, which runs
+ * the StockUniverseScheduler, sees pages created or published through any cluster node.
+ *
+ * A page counts as published while the last replication action of its content is Activate.
+ *
+ * Changes below /content/stocks and /content/dam never hold stockplex components and are skipped.
+ */
+@Component(service = {StockReferenceIndex.class, ResourceChangeListener.class},
+		immediate = true,
+		property = {
+				ResourceChangeListener.PATHS + "=/content",
+				ResourceChangeListener.CHANGES + "=ADDED",
+				ResourceChangeListener.CHANGES + "=CHANGED",
+				ResourceChangeListener.CHANGES + "=REMOVED"
+		})
+public class StockReferenceIndexImpl implements StockReferenceIndex, ResourceChangeListener, ExternalResourceChangeListener {
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	// Convenience string to find the log messages for this training example class
+	// Logs can be found in crx-quickstart/logs/error.log
+	private String searchableLogStr = "$$$$$";
+
+	private static final String QUERY = "SELECT * FROM [nt:unstructured] AS c WHERE ISDESCENDANTNODE(c, '/content') "
+			+ "AND c.[sling:resourceType] = '" + Stockplex.RESOURCE_TYPE + "'";
+	private static final String JCR_CONTENT = "/jcr:content";
+	private static final String LAST_REPLICATION_ACTION = "cq:lastReplicationAction";
+
+	@Reference
+	private ResourceResolverFactory resourceResolverFactory;
+
+	//Symbol per component path, sorted so that the components below a removed resource are one sub map
+	private final NavigableMap<String, String> components = new ConcurrentSkipListMap<>();
+	private final Map<String, Set<String>> componentsBySymbol = new ConcurrentHashMap<>();
+	//Published pages among the pages holding indexed components
+	private final Set<String> publishedPages = ConcurrentHashMap.newKeySet();
+	private final AtomicLong revision = new AtomicLong();
+
+	@Activate
+	protected void activate() {
+		try (ResourceResolver resourceResolver = getServiceResourceResolver()) {
+			Iterator<Resource> results = resourceResolver.findResources(QUERY, "JCR-SQL2");
+			while (results.hasNext()) {
+				put(results.next());
+			}
+			logger.info(searchableLogStr + "Stock reference index built: {} components, {} symbols", components.size(), componentsBySymbol.size());
+		} catch (LoginException | RuntimeException e) {
+			logger.error(searchableLogStr + "Could not build the stock reference index", e);
+		}
+	}
+
+	@Override
+	public Set<String> getPages(String symbol) {
+		Set<String> paths = symbol != null ? componentsBySymbol.get(normalize(symbol)) : null;
+		if (paths == null) {
+			return Collections.emptySet();
+		}
+		Set<String> pages = new LinkedHashSet<>();
+		for (String path : paths) {
+			pages.add(getPagePath(path));
+		}
+		return pages;
+	}
+
+	@Override
+	public Set<String> getSymbols() {
+		return Collections.unmodifiableSet(componentsBySymbol.keySet());
+	}
+
+	@Override
+	public boolean isReferenced(String symbol) {
+		Set<String> paths = symbol != null ? componentsBySymbol.get(normalize(symbol)) : null;
+		if (paths != null) {
+			for (String path : paths) {
+				if (publishedPages.contains(getPagePath(path))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public long getRevision() {
+		return revision.get();
+	}
+
+	@Override
+	public void onChange(List<ResourceChange> changes) {
+		Set<String> added = new HashSet<>();
+		for (ResourceChange change : changes) {
+			if (change.getType() == ResourceChange.ChangeType.ADDED) {
+				added.add(change.getPath());
+			}
+		}
+		ResourceResolver resourceResolver = null;
+		try {
+			for (ResourceChange change : changes) {
+				String path = change.getPath();
+				if (isSkipped(path)) {
+					continue;
+				}
+				if (change.getType() == ResourceChange.ChangeType.REMOVED) {
+					removeAll(path);
+					continue;
+				}
+				if (change.getType() == ResourceChange.ChangeType.CHANGED && !path.contains(JCR_CONTENT)) {
+					//Components live in the content of a page
+					continue;
+				}
+				if (change.getType() == ResourceChange.ChangeType.ADDED && hasAddedAncestor(path, added)) {
+					//Indexed by the walk of the ancestor
+					continue;
+				}
+				if (resourceResolver == null) {
+					resourceResolver = getServiceResourceResolver();
+				}
+				Resource resource = resourceResolver.getResource(path);
+				if (resource == null) {
+					removeAll(path);
+				} else if (change.getType() == ResourceChange.ChangeType.ADDED) {
+					index(resource);
+				} else if (resource.isResourceType(Stockplex.RESOURCE_TYPE)) {
+					put(resource);
+				} else if (path.endsWith(JCR_CONTENT)) {
+					updatePublished(resource);
+				} else {
+					remove(path);
+				}
+			}
+		} catch (LoginException e) {
+			logger.error(searchableLogStr + "Could not update the stock reference index", e);
+		} finally {
+			if (resourceResolver != null) {
+				resourceResolver.close();
+			}
+		}
+	}
+
+	private void index(Resource resource) {
+		if (resource.isResourceType(Stockplex.RESOURCE_TYPE)) {
+			put(resource);
+			return;
+		}
+		for (Resource child : resource.getChildren()) {
+			index(child);
+		}
+	}
+
+	private static boolean hasAddedAncestor(String path, Set<String> added) {
+		for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+			if (added.contains(path.substring(0, slash))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isSkipped(String path) {
+		return path.startsWith(StockDataWriterJob.STOCK_IMPORT_FOLDER + "/") || path.startsWith("/content/dam/");
+	}
+
+	/**
+	 * Authors may enter a symbol in any case, the stock folders and the QuoteStore use upper case
+	 */
+	private static String normalize(String symbol) {
+		return symbol.trim().toUpperCase();
+	}
+
+	private synchronized void put(Resource component) {
+		String path = component.getPath();
+		String symbol = component.getValueMap().get("symbol", String.class);
+		remove(path);
+		if (symbol == null || symbol.trim().isEmpty()) {
+			return;
+		}
+		symbol = normalize(symbol);
+		components.put(path, symbol);
+		componentsBySymbol.computeIfAbsent(symbol, s -> ConcurrentHashMap.newKeySet()).add(path);
+		Resource pageContent = component.getResourceResolver().getResource(getPagePath(path) + JCR_CONTENT);
+		if (pageContent != null) {
+			updatePublished(pageContent);
+		}
+		revision.incrementAndGet();
+	}
+
+	/**
+	 * Reads the published state of a page that holds indexed components
+	 */
+	private synchronized void updatePublished(Resource pageContent) {
+		String page = pageContent.getPath().substring(0, pageContent.getPath().length() - JCR_CONTENT.length());
+		if (components.subMap(page + JCR_CONTENT + "/", page + JCR_CONTENT + "/\uffff").isEmpty()) {
+			return;
+		}
+		boolean published = "Activate".equals(pageContent.getValueMap().get(LAST_REPLICATION_ACTION, String.class));
+		if (published ? publishedPages.add(page) : publishedPages.remove(page)) {
+			revision.incrementAndGet();
+		}
+	}
+
+	private synchronized void remove(String path) {
+		String symbol = components.remove(path);
+		if (symbol != null) {
+			componentsBySymbol.computeIfPresent(symbol, (s, paths) -> {
+				paths.remove(path);
+				return paths.isEmpty() ? null : paths;
+			});
+			revision.incrementAndGet();
+		}
+	}
+
+	private synchronized void removeAll(String path) {
+		remove(path);
+		for (String child : components.subMap(path + "/", path + "/\uffff").keySet().toArray(new String[0])) {
+			remove(child);
+		}
+		publishedPages.removeIf(page -> page.equals(path) || page.startsWith(path + "/"));
+	}
+
+	private static String getPagePath(String componentPath) {
+		int index = componentPath.indexOf(JCR_CONTENT);
+		return index > 0 ? componentPath.substring(0, index) : componentPath;
+	}
+
+	private ResourceResolver getServiceResourceResolver() throws LoginException {
+		//Get the service user (training-user) that belongs to the training.core:training subservice
+		Map<String, Object> serviceParams = new HashMap<>();
+		serviceParams.put(ResourceResolverFactory.SUBSERVICE, "training");
+		return resourceResolverFactory.getServiceResourceResolver(serviceParams);
+	}
+}
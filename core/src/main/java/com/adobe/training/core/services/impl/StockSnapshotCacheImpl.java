@@ -0,0 +1,164 @@
+package com.adobe.training.core.services.impl;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.commons.metrics.Counter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.StockDataWriterJob;
+import com.adobe.training.core.services.QuoteListener;
+import com.adobe.training.core.services.QuoteStore;
+import com.adobe.training.core.services.StockQuote;
+import com.adobe.training.core.services.StockSnapshot;
+import com.adobe.training.core.services.StockSnapshotCache;
+
+/**
+ * Snapshot cache for the stockplex component. The quote data itself is only held by the
+ * QuoteStore: a snapshot is a view of the quote of a symbol in the QuoteStore, built on the first
+ * request for the symbol together with the rolling indicators of /content/stocks/<SYMBOL>/analytics,
+ * and shared until the QuoteStore reports a new quote or the removal of the symbol. So snapshots
+ * are invalidated by the same events that update the QuoteStore, on this or any other cluster node.
+ *
+ * The analytics node is written in the same commit as the trade node, so it always belongs to the
+ * quote the QuoteStore reports.
+ *
+ * The following metrics are available in the Sling metrics console:
+ *  - training.stockplex.snapshots.hits
+ *  - training.stockplex.snapshots.misses
+ */
+@Component(service = {StockSnapshotCache.class, QuoteListener.class})
+public class StockSnapshotCacheImpl implements StockSnapshotCache, QuoteListener {
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	// Convenience string to find the log messages for this training example class
+	// Logs can be found in crx-quickstart/logs/error.log
+	private String searchableLogStr = "$$$$$";
+
+	@Reference
+	private ResourceResolverFactory resourceResolverFactory;
+
+	@Reference
+	private QuoteStore quoteStore;
+
+	@Reference
+	private MetricsService metricsService;
+
+	private final Map<String, StockSnapshot> snapshots = new ConcurrentHashMap<>();
+	//Invalidations per symbol, a snapshot built while its symbol was invalidated is not cached
+	private final Map<String, AtomicLong> stamps = new ConcurrentHashMap<>();
+
+	private Counter hits;
+	private Counter misses;
+
+	@Activate
+	protected void activate() {
+		hits = metricsService.counter("training.stockplex.snapshots.hits");
+		misses = metricsService.counter("training.stockplex.snapshots.misses");
+	}
+
+	@Override
+	public StockSnapshot get(String symbol) {
+		if (symbol == null) {
+			return null;
+		}
+		StockSnapshot snapshot = snapshots.get(symbol);
+		if (snapshot != null) {
+			hits.increment();
+			return snapshot;
+		}
+		misses.increment();
+
+		AtomicLong stamp = stamps.computeIfAbsent(symbol, s -> new AtomicLong());
+		long before = stamp.get();
+		snapshot = load(symbol);
+		if (snapshot != null && stamp.get() == before) {
+			snapshots.put(symbol, snapshot);
+			//The trade node may have changed between the check and the put
+			if (stamp.get() != before) {
+				snapshots.remove(symbol, snapshot);
+			}
+		}
+		return snapshot;
+	}
+
+	@Override
+	public void invalidate(String symbol) {
+		stamps.computeIfAbsent(symbol, s -> new AtomicLong()).incrementAndGet();
+		snapshots.remove(symbol);
+	}
+
+	@Override
+	public void onQuote(String symbol, StockQuote quote) {
+		invalidate(symbol);
+	}
+
+	@Override
+	public void onRemove(String symbol) {
+		invalidate(symbol);
+	}
+
+	private StockSnapshot load(String symbol) {
+		StockQuote quote = quoteStore.get(symbol);
+		if (quote == null) {
+			return build(symbol, null, null);
+		}
+		//Get the service user (training-user) that belongs to the training.core:training subservice
+		Map<String, Object> serviceParams = new HashMap<>();
+		serviceParams.put(ResourceResolverFactory.SUBSERVICE, "training");
+		try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(serviceParams)) {
+			Resource analytics = resourceResolver.getResource(StockDataWriterJob.STOCK_IMPORT_FOLDER + "/" + symbol + "/" + StockDataWriterJob.ANALYTICS);
+			return build(symbol, quote, analytics != null ? analytics.getValueMap() : null);
+		} catch (LoginException e) {
+			logger.error(searchableLogStr + "Could not read the stock analytics of " + symbol, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Builds the display values of the stockplex component from a quote of the QuoteStore.
+	 *
+	 * @param quote the quote or null if no stock data was imported for the symbol
+	 */
+	static StockSnapshot build(String symbol, StockQuote quote, ValueMap analyticsValues) {
+		Map<String, Object> data = new HashMap<>();
+		//If stock information is in the JCR, display the data
+		if (quote != null) {
+			ZonedDateTime timeWithZone = Instant.ofEpochMilli(quote.getLatestUpdate()).atZone(StockDataWriterJob.TIME_ZONE);
+			data.put("Request Date", timeWithZone.format(StockDataWriterJob.DAY_FORMATTER));
+			data.put("Request Time", timeWithZone.format(StockDataWriterJob.TIME_FORMATTER));
+			data.put("UpDown", value(quote.getChange()));
+			data.put("Open Price", value(quote.getOpen()));
+			data.put("Range High", value(quote.getHigh()));
+			data.put("Range Low", value(quote.getLow()));
+			data.put("Volume", quote.getLatestVolume());
+			data.put("Company", quote.getCompanyName());
+			data.put("Sector", quote.getSector());
+			data.put("52 Week Low", value(quote.getWeek52Low()));
+			return new StockSnapshot(symbol, data, quote.getLatestPrice(), quote.getLatestUpdate(), quote,
+					RollingAnalytics.indicators(analyticsValues));
+		}
+		data.put(symbol, StockSnapshot.NO_DATA_MESSAGE);
+		return new StockSnapshot(symbol, data, null, null, null);
+	}
+
+	/**
+	 * @return null for values the trade node did not hold
+	 */
+	private static Double value(double value) {
+		return Double.isNaN(value) ? null : value;
+	}
+}
@@ -0,0 +1,51 @@
+package com.adobe.training.core.services.impl;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+@ObjectClassDefinition(name = "Training Trading Calendar")
+public @interface TradingCalendarConfiguration {
+
+    @AttributeDefinition(
+            name = "Time Zone",
+            description = "Time zone of the exchange",
+            type = AttributeType.STRING
+    )
+    String timezone() default "America/New_York";
+
+    @AttributeDefinition(
+            name = "Pre-Market Open",
+            description = "Start of pre-market trading, HH:mm",
+            type = AttributeType.STRING
+    )
+    String premarket_open() default "04:00";
+
+    @AttributeDefinition(
+            name = "Session Open",
+            description = "Start of the regular trading session, HH:mm",
+            type = AttributeType.STRING
+    )
+    String session_open() default "09:30";
+
+    @AttributeDefinition(
+            name = "Session Close",
+            description = "End of the regular trading session, HH:mm",
+            type = AttributeType.STRING
+    )
+    String session_close() default "16:00";
+
+    @AttributeDefinition(
+            name = "Post-Market Close",
+            description = "End of post-market trading, HH:mm",
+            type = AttributeType.STRING
+    )
+    String postmarket_close() default "20:00";
+
+    @AttributeDefinition(
+            name = "Holidays",
+            description = "Days on which the exchange is closed, yyyy-MM-dd",
+            type = AttributeType.STRING
+    )
+    String[] holidays() default {};
+}
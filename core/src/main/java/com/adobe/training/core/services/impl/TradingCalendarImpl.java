@@ -0,0 +1,94 @@
+package com.adobe.training.core.services.impl;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.Designate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.services.TradingCalendar;
+
+@Component(service = TradingCalendar.class)
+@Designate(ocd = TradingCalendarConfiguration.class)
+public class TradingCalendarImpl implements TradingCalendar {
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+	// Convenience string to find the log messages for this training example class
+	// Logs can be found in crx-quickstart/logs/error.log
+	private String searchableLogStr = "*****";
+
+	//local variables to hold OSGi config values
+	private ZoneId timeZone;
+	private LocalTime premarketOpen;
+	private LocalTime sessionOpen;
+	private LocalTime sessionClose;
+	private LocalTime postmarketClose;
+	private Set<LocalDate> holidays;
+
+	@Activate
+	@Modified
+	protected void activate(TradingCalendarConfiguration config) {
+		timeZone = ZoneId.of(config.timezone());
+		premarketOpen = LocalTime.parse(config.premarket_open());
+		sessionOpen = LocalTime.parse(config.session_open());
+		sessionClose = LocalTime.parse(config.session_close());
+		postmarketClose = LocalTime.parse(config.postmarket_close());
+		holidays = new HashSet<>();
+		for (String holiday : config.holidays()) {
+			holidays.add(LocalDate.parse(holiday.trim()));
+		}
+		logger.info(searchableLogStr + "Trading calendar: {} session {}-{} ({} holidays)", timeZone, sessionOpen, sessionClose, holidays.size());
+	}
+
+	@Override
+	public Phase getPhase(Instant time) {
+		ZonedDateTime exchangeTime = time.atZone(timeZone);
+		if (!isTradingDay(exchangeTime.toLocalDate())) {
+			return Phase.CLOSED;
+		}
+		LocalTime timeOfDay = exchangeTime.toLocalTime();
+		if (timeOfDay.isBefore(premarketOpen)) {
+			return Phase.CLOSED;
+		} else if (timeOfDay.isBefore(sessionOpen)) {
+			return Phase.PRE_MARKET;
+		} else if (timeOfDay.isBefore(sessionClose)) {
+			return Phase.OPEN;
+		} else if (timeOfDay.isBefore(postmarketClose)) {
+			return Phase.POST_MARKET;
+		}
+		return Phase.CLOSED;
+	}
+
+	@Override
+	public Instant getNextPhaseChange(Instant time) {
+		LocalDate day = time.atZone(timeZone).toLocalDate();
+		LocalTime[] boundaries = {premarketOpen, sessionOpen, sessionClose, postmarketClose};
+		//Long weekends plus holidays never span more than a couple of weeks
+		for (int i = 0; i < 30; i++, day = day.plusDays(1)) {
+			if (!isTradingDay(day)) {
+				continue;
+			}
+			for (LocalTime boundary : boundaries) {
+				Instant change = day.atTime(boundary).atZone(timeZone).toInstant();
+				if (change.isAfter(time)) {
+					return change;
+				}
+			}
+		}
+		return time.plusSeconds(24 * 60 * 60);
+	}
+
+	private boolean isTradingDay(LocalDate day) {
+		DayOfWeek dayOfWeek = day.getDayOfWeek();
+		return dayOfWeek != DayOfWeek.SATURDAY && dayOfWeek != DayOfWeek.SUNDAY && !holidays.contains(day);
+	}
+}
@@ -1,31 +1,46 @@
 package com.adobe.training.core.servlets;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
-import java.security.AccessControlException;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
 
 import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.Part;
 
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestParameter;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
 import org.apache.sling.api.servlets.HttpConstants;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 
-import com.day.cq.tagging.InvalidTagFormatException;
-import com.day.cq.tagging.Tag;
-import com.day.cq.tagging.TagManager;
-import com.day.cq.wcm.api.Page;
-import com.day.cq.wcm.api.PageManager;
-import com.day.cq.wcm.api.PageManagerFactory;
-import com.day.cq.wcm.api.WCMException;
+import com.adobe.training.core.CsvTokenizer;
+import com.adobe.training.core.PageCreatorJob;
+import com.adobe.training.core.services.PageImporter;
+import com.adobe.training.core.services.PageRow;
+import com.day.cq.commons.jcr.JcrConstants;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
@@ -39,12 +54,64 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * 
  * /content/pagecreator {sling:resourceType=training/tools/pagecreator}
  *
+ * The CSV is read row by row from the uploaded part and the result of every row is written as
+ * one line of JSON (NDJSON) as soon as the row is done, followed by a summary line:
+ *
+ * {"Row":1,"Input":"/content/training/us/en/community,Our Community,...","Status":"Successful","Location":...}
+ * {"Row":2,"Input":"...","Status":"Error","Error":"Page couldn't be created. Parent path probably doesn't exist."}
+ * {"Summary":{"Rows":2,"Successful":1,"Updated":0,"Unchanged":0,"Errors":1}}
+ *
+ * The CSV follows RFC 4180, values containing commas or line breaks are quoted, e.g.
+ * /content/training/us/en/outerwear,"Coats, Jackets",,/content/cq:tags/training/outerwear
+ *
+ * Neither the file nor the results are held in memory. Sling keeps large uploads in a temporary
+ * file; with uploadmode=stream the part is read straight from the request instead.
+ *
+ * By default every page and tag is saved on its own. With bulk=true the rows are sorted so that
+ * parents are created before their children and saved with one commit per commitSize pages
+ * (default 100). Bulk mode keeps the parsed rows, not the results, in memory for the sort.
+ *
+ * With parallel=true the rows are partitioned by subtree (partitionDepth path segments, default 3,
+ * e.g. /content/training/us) and the partitions are created concurrently in bulk mode, each with
+ * its own resolver.
+ *
+ * By default rows of pages that already exist fail. With upsert=true the title, template and tag of
+ * an existing page are updated where they differ from the row and rows matching their page are
+ * reported as Unchanged without writing anything, so the same CSV can be imported again.
+ *
+ * With validate=true every row is checked before any page is written (see PageImporter.validate).
+ * If a row is invalid nothing is imported and the response lists the result of every row with
+ * status 400. dryRun=true only runs this check and always returns the report.
+ *
+ * With async=true the input is stored in the repository and the pages are created by a Sling job
+ * that saves its progress every commitSize rows and resumes from there when it is restarted. The
+ * job runs with the rights of the user who uploaded the file (see PageCreatorJob). The response
+ * holds the URL of the status of the job:
+ *
+ * {"Job":"<id>","Status":"/content/pagecreator.status.json?job=<id>"}
+ *
  * Example cURL Command:
  * String Example:
  * $ curl -u admin:admin -X POST http://localhost:4502/content/pagecreator.json -F importer="/content/training/us/en/community,Our Community,/conf/training/settings/wcm/templates/page-content,/content/cq:tags/training/community"
  * 
  * CSV example:
- * $ curl -u admin:admin -X POST http://localhost:4502/content/pagecreator.json -F importer=@PageCreator.csv
+ * $ curl -u admin:admin -X POST "http://localhost:4502/content/pagecreator.json?uploadmode=stream" -F importer=@PageCreator.csv
+ *
+ * Bulk example:
+ * $ curl -u admin:admin -X POST "http://localhost:4502/content/pagecreator.json?bulk=true&commitSize=500" -F importer=@PageCreator.csv
+ *
+ * Parallel example:
+ * $ curl -u admin:admin -X POST "http://localhost:4502/content/pagecreator.json?parallel=true&partitionDepth=3" -F importer=@rollout.csv
+ *
+ * Upsert example:
+ * $ curl -u admin:admin -X POST "http://localhost:4502/content/pagecreator.json?bulk=true&upsert=true" -F importer=@PageCreator.csv
+ *
+ * Dry run example:
+ * $ curl -u admin:admin -X POST "http://localhost:4502/content/pagecreator.json?dryRun=true" -F importer=@rollout.csv
+ *
+ * Async example:
+ * $ curl -u admin:admin -X POST "http://localhost:4502/content/pagecreator.json?async=true&uploadmode=stream" -F importer=@rollout.csv
+ * $ curl -u admin:admin "http://localhost:4502/content/pagecreator.status.json?job=<id>"
  */
 
 @Component(service = { Servlet.class })
@@ -54,38 +121,147 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 public class PageCreator extends SlingAllMethodsServlet {
 	private static final long serialVersionUID = 1L;
 
-	public static final String DEFAULT_TEMPLATE_PATH = "/conf/training/settings/wcm/templates/page-content";
+	public static final String DEFAULT_TEMPLATE_PATH = PageImporter.DEFAULT_TEMPLATE_PATH;
+	public static final String INPUT_PARAMETER = "importer";
+
+	//Request attribute holding the parts of a multipart request uploaded with uploadmode=stream
+	private static final String PARTS_ITERATOR = "request-parts-iterator";
+	//Rows after which the results written so far are flushed to the client
+	private static final int FLUSH_ROWS = 100;
+
+	//Bulk mode, see PageImporter.importBulk
+	public static final String BULK_PARAMETER = "bulk";
+	public static final String COMMIT_SIZE_PARAMETER = "commitSize";
+	private static final int DEFAULT_COMMIT_SIZE = 100;
+	private static final int MAX_COMMIT_SIZE = 1000;
+
+	//Parallel mode, see PageImporter.importParallel
+	public static final String PARALLEL_PARAMETER = "parallel";
+	public static final String PARTITION_DEPTH_PARAMETER = "partitionDepth";
+	//Pages below /content/<site>/<country> form one partition by default
+	private static final int DEFAULT_PARTITION_DEPTH = 3;
+
+	//Update existing pages, see PageImporter
+	public static final String UPSERT_PARAMETER = "upsert";
+
+	//Pre-pass, see PageImporter.validate
+	public static final String VALIDATE_PARAMETER = "validate";
+	public static final String DRY_RUN_PARAMETER = "dryRun";
+
+	//Async mode, see queueJob
+	public static final String ASYNC_PARAMETER = "async";
+	public static final String JOBS_FOLDER = "jobs";
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	@Reference
+	private PageImporter pageImporter;
 
-	//Get a PageManager instance from the factory Service
-	@Reference private PageManagerFactory pageManagerFactory;
+	@Reference
+	private JobManager jobManager;
 
 	@Override
 	public void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response)throws IOException {
+		InputStream stream = getInput(request);
+		if (stream == null) {
+			response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+			response.setContentType("application/json");
+			response.getWriter().print(OBJECT_MAPPER.writeValueAsString(Collections.singletonMap("Error", "Could not read csv input")));
+			return;
+		}
+		try (InputStream input = stream) {
+			//A dry run only validates, which is always done right away
+			if (Boolean.parseBoolean(request.getParameter(ASYNC_PARAMETER))
+					&& !Boolean.parseBoolean(request.getParameter(DRY_RUN_PARAMETER))) {
+				queueJob(request, input, response);
+			} else {
+				response.setContentType("application/x-ndjson");
+				response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+				readInput(request, input, response);
+			}
+		}
+	}
+
+	/**
+	 * Async mode: the input is stored as a binary below the PageCreator node and the pages are
+	 * created by a PageCreatorJob, which saves its progress on the same node:
+	 *
+	 * /content/pagecreator/jobs/<id> {state, rows, rowsDone, errors, user, ...}
+	 *   + input.csv [nt:file]
+	 *
+	 * The response only holds the id of the job and the URL of its status, see PageCreatorStatusServlet.
+	 */
+	private void queueJob(SlingHttpServletRequest request, InputStream stream, SlingHttpServletResponse response) throws IOException {
+		ResourceResolver resourceResolver = request.getResourceResolver();
+		String pageCreatorPath = request.getResource().getPath();
+		String id = UUID.randomUUID().toString();
+
+		Resource jobs = ResourceUtil.getOrCreateResource(resourceResolver, pageCreatorPath + "/" + JOBS_FOLDER, "sling:Folder", "sling:Folder", false);
+		Map<String, Object> jobProperties = new HashMap<>();
+		jobProperties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+		jobProperties.put(PageCreatorJob.STATE, PageCreatorJob.STATE_QUEUED);
+		jobProperties.put(PageCreatorJob.CREATED, Calendar.getInstance());
+		jobProperties.put(PageCreatorJob.COMMIT_SIZE, getCommitSize(request));
+		jobProperties.put(PageCreatorJob.VALIDATE, Boolean.parseBoolean(request.getParameter(VALIDATE_PARAMETER)));
+		jobProperties.put(PageCreatorJob.UPSERT, Boolean.parseBoolean(request.getParameter(UPSERT_PARAMETER)));
+		//Status only, the job takes the user from its job properties
+		jobProperties.put(PageCreatorJob.USER, resourceResolver.getUserID());
+		Resource job = resourceResolver.create(jobs, id, jobProperties);
+
+		Resource file = resourceResolver.create(job, PageCreatorJob.INPUT,
+				Collections.singletonMap(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_FILE));
+		Map<String, Object> content = new HashMap<>();
+		content.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_RESOURCE);
+		content.put(JcrConstants.JCR_MIMETYPE, "text/csv");
+		//Streamed into the repository, the input is never held in memory
+		content.put(JcrConstants.JCR_DATA, stream);
+		resourceResolver.create(file, JcrConstants.JCR_CONTENT, content);
+		resourceResolver.commit();
+
+		//The job creates the pages with the rights of this user. It is not read from the job node,
+		//the uploader can write that node and could name any other user there.
+		Map<String, Object> properties = new HashMap<>();
+		properties.put(PageCreatorJob.JOB_PROP_PATH, job.getPath());
+		properties.put(PageCreatorJob.JOB_PROP_USER, resourceResolver.getUserID());
 		response.setContentType("application/json");
-		HashMap<String, HashMap<String, String>> resultObject = new HashMap<>();
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		if (jobManager.addJob(PageCreatorJob.JOB_TOPIC, properties) == null) {
+			job.adaptTo(ModifiableValueMap.class).put(PageCreatorJob.STATE, PageCreatorJob.STATE_FAILED);
+			resourceResolver.delete(file);
+			resourceResolver.commit();
+			response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			response.getWriter().print(OBJECT_MAPPER.writeValueAsString(Collections.singletonMap("Error", "Could not queue the job")));
+			return;
+		}
 
-		String param = request.getParameter("importer");
-		byte[] input = param.getBytes(StandardCharsets.UTF_8);
-		InputStream stream = new ByteArrayInputStream(input);
-		try {
-			resultObject = readInput(request, stream);
-		} catch (IOException e) {
-			resultObject = null;
-		}
-
-		ObjectMapper objMapper = new ObjectMapper();
-		if (resultObject != null) {		
-			//Write the result to the page
-			response.getWriter().print(objMapper.writerWithDefaultPrettyPrinter().writeValueAsString(resultObject));
-		} else {
-			HashMap<String, String> errorObject = new HashMap<String, String>() {
-				private static final long serialVersionUID = 1L;
-			{
-				put("Error","Could not read csv input");
-			}};
-			response.getWriter().print(objMapper.writerWithDefaultPrettyPrinter().writeValueAsString(errorObject));
-		}
-		response.getWriter().close();
+		String status = pageCreatorPath + "." + PageCreatorStatusServlet.SELECTOR + ".json?" + PageCreatorStatusServlet.JOB_PARAMETER + "=" + id;
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("Job", id);
+		result.put("Status", status);
+		response.setStatus(HttpServletResponse.SC_ACCEPTED);
+		response.setHeader("Location", status);
+		response.getWriter().print(OBJECT_MAPPER.writeValueAsString(result));
+	}
+
+	/**
+	 * @return the stream of the input part or null if the request has none
+	 */
+	@SuppressWarnings("unchecked")
+	private InputStream getInput(SlingHttpServletRequest request) throws IOException {
+		Object parts = request.getAttribute(PARTS_ITERATOR);
+		if (parts instanceof Iterator) {
+			//Streamed upload: the parts can only be read in order, skip those before the input
+			Iterator<Part> iterator = (Iterator<Part>) parts;
+			while (iterator.hasNext()) {
+				Part part = iterator.next();
+				if (INPUT_PARAMETER.equals(part.getName())) {
+					return part.getInputStream();
+				}
+			}
+			return null;
+		}
+		RequestParameter input = request.getRequestParameter(INPUT_PARAMETER);
+		return input != null ? input.getInputStream() : null;
 	}
 
 	/**
@@ -95,132 +271,190 @@ public class PageCreator extends SlingAllMethodsServlet {
 	 *
 	 * @param request resourceResolver will be derived from the request
 	 * @param stream Stream from the input
-	 * @return JSON object that contains the results of the page creation process
+	 * @param response every row result is written to the response as one line of JSON
 	 */
-	private HashMap<String, HashMap<String, String>> readInput(SlingHttpServletRequest request, InputStream stream) throws IOException {
-		HashMap<String, HashMap<String, String>> out = new HashMap<>();
-
-		String line;
-		String[] newPage;
-		HashMap<String, String> createdPageObject = null;
-
-		try (BufferedReader br = new BufferedReader(new InputStreamReader(stream))) {
-			//Read each line of the CSV and if the input is a string, this will loop once
-			while ((line = br.readLine()) != null) {
-				newPage = line.split(",");
-				String inputPath="", inputTitle="", inputTemplatePath="", inputTag="";				
-	
-				//set values from input
-				if (newPage.length > 0) 	
-					inputPath = newPage[0]; //Add the creation path
-				if (newPage.length > 1) 
-					inputTitle = newPage[1]; //Add the Title of the new page
-				if (newPage.length > 2) 
-					inputTemplatePath = newPage[2]; //Add the desired template
-				if (newPage.length > 3)
-					inputTag = newPage[3]; //Add requested tags
-				
-				//Create a new page based on a line of input
-				createdPageObject = createTrainingPage(request, inputPath, inputTitle, inputTemplatePath, inputTag);
-	
-				//add the status of the row into the json array
-				if(createdPageObject.get("Status").contentEquals("Successful")) {
-					out.put(inputPath, createdPageObject);
+	private void readInput(SlingHttpServletRequest request, InputStream stream, SlingHttpServletResponse response) throws IOException {
+		ResultWriter results = new ResultWriter(response);
+		ResourceResolver resourceResolver = request.getResourceResolver();
+		boolean bulk = Boolean.parseBoolean(request.getParameter(BULK_PARAMETER));
+		boolean parallel = Boolean.parseBoolean(request.getParameter(PARALLEL_PARAMETER));
+		boolean dryRun = Boolean.parseBoolean(request.getParameter(DRY_RUN_PARAMETER));
+		boolean validate = dryRun || Boolean.parseBoolean(request.getParameter(VALIDATE_PARAMETER));
+		boolean upsert = Boolean.parseBoolean(request.getParameter(UPSERT_PARAMETER));
+
+		//CsvTokenizer buffers the input itself
+		try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+			if (validate || bulk || parallel) {
+				List<PageRow> rows = PageRow.readRows(reader);
+				if (validate && !validate(resourceResolver, rows, dryRun, upsert, results, response)) {
+					return;
+				}
+				if (parallel) {
+					pageImporter.importParallel(resourceResolver, rows, getCommitSize(request), getPartitionDepth(request), upsert, results);
+				} else if (bulk) {
+					pageImporter.importBulk(resourceResolver, rows, getCommitSize(request), upsert, results);
 				} else {
-					out.put(line, createdPageObject);
+					//Validation accepts parents created by later rows, so parents go first like in bulk mode
+					rows.sort(Comparator.comparingInt(PageRow::getDepth));
+					pageImporter.importRows(resourceResolver, rows.iterator(), upsert, results);
+				}
+			} else {
+				//Read each record of the CSV and if the input is a string, this will loop once
+				try {
+					pageImporter.importRows(resourceResolver, new RecordIterator(new CsvTokenizer(reader)), upsert, results);
+				} catch (UncheckedIOException e) {
+					throw e.getCause();
 				}
-				createdPageObject = null;
 			}
 		}
-		return out;
+		results.close();
 	}
 
-	/** Helper method to create the page based on available input
-	 * 
-	 * @param request resourceResolver will be derived from the request
-	 * @param path JCR location of the page to be created
-	 * @param title Page Title
-	 * @param template AEM Template this page should be created from. The template must exist in the JCR already.
-	 * @param tag Tag must already be created in AEM. The tag will be in the form of a path. Ex /content/cq:tags/marketing/interest
-	 * @return HashMap
+	/**
+	 * Reads the rows of the input one record at a time
 	 */
-	private HashMap<String, String> createTrainingPage(SlingHttpServletRequest request, String path, String title, String template, String tagPath) {
-		HashMap<String, String> pageInfo = new HashMap<>();
-		pageInfo.put("Status","Error");
-		
-		if (path != null && !path.isEmpty()) {
-			//Parse the path to get the pageNodeName and parentPath
-			int lastSlash = path.lastIndexOf("/");
-			String pageNodeName = path.substring(lastSlash + 1);
-			String parentPath = path.substring(0, lastSlash);
-			
-			//Set a default template if none is given
-			boolean invalidTemplate = false;
-			if (template == null || template.isEmpty()) { //if no template has been given, assign the default
-				template = DEFAULT_TEMPLATE_PATH;
-			}
-			else if(request.getResourceResolver().getResource(template) == null) { //check to see if the template exists
-				invalidTemplate = true;
-				pageInfo.put("Template","The template " + template + " doesn not exist.");
-			}
-	
-			//Create page
-			PageManager pageManager = pageManagerFactory.getPageManager(request.getResourceResolver());
-	
-			Page p = null;
-			//Verify parentPath exists, a node for this page exists, and the template is valid
-			if (pageManager != null && !parentPath.isEmpty() && !pageNodeName.isEmpty() && !invalidTemplate) {
-				if(title == null || title.isEmpty()) {
-					pageInfo.put("Warning","No Page title given, using path name: " + pageNodeName);
-					title = pageNodeName;
-				}
+	private static class RecordIterator implements Iterator<PageRow> {
+		private final CsvTokenizer tokenizer;
+		private PageRow next;
+
+		private RecordIterator(CsvTokenizer tokenizer) {
+			this.tokenizer = tokenizer;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null) {
 				try {
-					p = pageManager.create(parentPath,
-							pageNodeName,
-							template,
-							title);
-				} catch (WCMException e) {
-					pageInfo.put("Error","Page couldn't be created. Parent path probably doesn't exist.");
-				}
-					
-				//Check to see if the page was successfully created
-				if(p != null) {
-					//Add a tag to the page
-					if (tagPath != null && !tagPath.isEmpty()) {
-						//Make sure tag namespaces are properly formed
-						if(tagPath.contains("/content/cq:tags") || tagPath.contains(":") || tagPath.contains("/etc/tags")) {
-							//TagManager can be retrieved via adaptTo
-							TagManager tm = request.getResourceResolver().adaptTo(TagManager.class);
-							Tag tag;
-							try {
-								tag = tm.resolve(tagPath); //check if tag already exists
-								if(tag == null) {
-									pageInfo.put("Warning","Tag doesn't exist, creating new tag: " + tagPath);
-									tag = tm.createTag(tagPath, null, null);
-								}
-								tm.setTags(p.getContentResource(), new Tag[] {tag}, true);
-							} catch (AccessControlException e) {
-								pageInfo.put("Warning","Could not access the tags.");
-							} catch (InvalidTagFormatException e) {
-								pageInfo.put("Warning","Invalid Tag.");
-							} 
-						} else {
-							pageInfo.put("Warning", "Tag path malformed and not added: " + tagPath);
-						}
-					}
-					
-					pageInfo.put("Status", "Successful");
-					pageInfo.put("Location", p.getPath());
-					pageInfo.put("Title", p.getTitle());
-					pageInfo.put("Template Used", p.getTemplate().getPath());
-					String tags = "";
-					for(Tag t : p.getTags() ) { tags = tags + t.getTitle() + " "; }
-					pageInfo.put("Tagged with", tags);
+					next = tokenizer.nextRecord() ? new PageRow(tokenizer) : null;
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
 				}
 			}
-		} else {
-			pageInfo.put("Error", "Page path not provided");
+			return next != null;
+		}
+
+		@Override
+		public PageRow next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			PageRow pageRow = next;
+			next = null;
+			return pageRow;
+		}
+	}
+
+	/**
+	 * Runs the pre-pass. If a row is invalid, or for a dry run, the report of every row is written
+	 * followed by a validation summary and nothing is imported:
+	 *
+	 * {"Row":2,"Input":"...","Status":"Invalid","Error":"Parent path doesn't exist: /content/training/xx"}
+	 * {"Validation":{"Rows":2,"Valid":1,"Invalid":1,"DryRun":false}}
+	 *
+	 * @return true if the import may go on
+	 */
+	private boolean validate(ResourceResolver resourceResolver, List<PageRow> rows, boolean dryRun, boolean upsert,
+			ResultWriter results, SlingHttpServletResponse response) throws IOException {
+		List<Map<String, String>> report = pageImporter.validate(resourceResolver, rows, upsert);
+		boolean valid = true;
+		for (Map<String, String> result : report) {
+			valid &= "Valid".equals(result.get("Status"));
+		}
+		if (valid && !dryRun) {
+			return true;
+		}
+		if (!valid) {
+			//Nothing was written to the response yet
+			response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+		}
+		for (int i = 0; i < rows.size(); i++) {
+			results.onResult(rows.get(i), report.get(i));
+		}
+		results.closeValidation(dryRun);
+		return false;
+	}
+
+	private static int getPartitionDepth(SlingHttpServletRequest request) {
+		try {
+			String value = request.getParameter(PARTITION_DEPTH_PARAMETER);
+			return value != null ? Math.max(1, Integer.parseInt(value)) : DEFAULT_PARTITION_DEPTH;
+		} catch (NumberFormatException e) {
+			return DEFAULT_PARTITION_DEPTH;
+		}
+	}
+
+	static int getCommitSize(SlingHttpServletRequest request) {
+		try {
+			String value = request.getParameter(COMMIT_SIZE_PARAMETER);
+			return value != null ? Math.max(1, Math.min(Integer.parseInt(value), MAX_COMMIT_SIZE)) : DEFAULT_COMMIT_SIZE;
+		} catch (NumberFormatException e) {
+			return DEFAULT_COMMIT_SIZE;
+		}
+	}
+
+	/**
+	 * Writes the result of every row as one line of JSON and a summary line at the end
+	 */
+	private static class ResultWriter implements PageImporter.RowHandler {
+		private final SlingHttpServletResponse response;
+		private final PrintWriter out;
+		private int rows;
+		private int successful;
+		private int updated;
+		private int unchanged;
+		private int valid;
+
+		private ResultWriter(SlingHttpServletResponse response) throws IOException {
+			this.response = response;
+			this.out = response.getWriter();
+		}
+
+		@Override
+		public synchronized void onResult(PageRow pageRow, Map<String, String> pageInfo) throws IOException {
+			rows++;
+			String status = pageInfo.get("Status");
+			if ("Successful".equals(status)) {
+				successful++;
+			} else if ("Updated".equals(status)) {
+				updated++;
+			} else if ("Unchanged".equals(status)) {
+				unchanged++;
+			} else if ("Valid".equals(status)) {
+				valid++;
+			}
+			Map<String, Object> result = new LinkedHashMap<>();
+			result.put("Row", pageRow.getRow());
+			result.put("Input", pageRow.getLine());
+			result.putAll(pageInfo);
+			out.print(OBJECT_MAPPER.writeValueAsString(result));
+			out.print('\n');
+			if (rows % FLUSH_ROWS == 0) {
+				//Lets the client follow the progress
+				response.flushBuffer();
+			}
+		}
+
+		private synchronized void close() throws IOException {
+			Map<String, Object> summary = new LinkedHashMap<>();
+			summary.put("Rows", rows);
+			summary.put("Successful", successful);
+			summary.put("Updated", updated);
+			summary.put("Unchanged", unchanged);
+			summary.put("Errors", rows - successful - updated - unchanged);
+			out.print(OBJECT_MAPPER.writeValueAsString(Collections.singletonMap("Summary", summary)));
+			out.print('\n');
+			out.flush();
+		}
+
+		private synchronized void closeValidation(boolean dryRun) throws IOException {
+			Map<String, Object> summary = new LinkedHashMap<>();
+			summary.put("Rows", rows);
+			summary.put("Valid", valid);
+			summary.put("Invalid", rows - valid);
+			summary.put("DryRun", dryRun);
+			out.print(OBJECT_MAPPER.writeValueAsString(Collections.singletonMap("Validation", summary)));
+			out.print('\n');
+			out.flush();
 		}
-		return pageInfo;
 	}
-}
\ No newline at end of file
+}
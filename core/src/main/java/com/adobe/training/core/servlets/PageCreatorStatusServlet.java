@@ -0,0 +1,99 @@
+package com.adobe.training.core.servlets;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
+import org.osgi.service.component.annotations.Component;
+
+import com.adobe.training.core.PageCreatorJob;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Returns the progress of a PageCreator job started with async=true, read from its job node:
+ *
+ * {"Job":"<id>","State":"RUNNING","Rows":25000,"RowsDone":4200,"Errors":3,"RowsPerSecond":212.5,
+ *  "Created":"...","Started":"...","Updated":"...","ErrorRows":["Row 17: Page couldn't be created. ..."]}
+ *
+ * RowsPerSecond is measured since the job was last started or resumed.
+ *
+ * Example URL: http://localhost:4502/content/pagecreator.status.json?job=<id>
+ */
+@Component(service = { Servlet.class })
+@SlingServletResourceTypes(
+		resourceTypes="training/tools/pagecreator",
+		selectors=PageCreatorStatusServlet.SELECTOR,
+		extensions="json",
+		methods=HttpConstants.METHOD_GET)
+public class PageCreatorStatusServlet extends SlingSafeMethodsServlet {
+	private static final long serialVersionUID = 1L;
+
+	public static final String SELECTOR = "status";
+	public static final String JOB_PARAMETER = "job";
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	@Override
+	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+		response.setContentType("application/json");
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		//Progress changes all the time
+		response.setHeader("Cache-Control", "no-cache");
+
+		String id = request.getParameter(JOB_PARAMETER);
+		Resource job = id != null && !id.isEmpty() && !id.contains("/")
+				? request.getResource().getChild(PageCreator.JOBS_FOLDER + "/" + id) : null;
+		if (job == null) {
+			response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+			response.getWriter().print(OBJECT_MAPPER.writeValueAsString(Collections.singletonMap("Error", "No such job: " + id)));
+			return;
+		}
+
+		ValueMap status = job.getValueMap();
+		int rowsDone = status.get(PageCreatorJob.ROWS_DONE, 0);
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("Job", id);
+		result.put("State", status.get(PageCreatorJob.STATE, PageCreatorJob.STATE_QUEUED));
+		result.put("Rows", status.get(PageCreatorJob.ROWS, Integer.class));
+		result.put("RowsDone", rowsDone);
+		result.put("Errors", status.get(PageCreatorJob.ERRORS, 0));
+		result.put("RowsPerSecond", rowsPerSecond(status, rowsDone));
+		result.put("Created", format(status.get(PageCreatorJob.CREATED, Calendar.class)));
+		result.put("Started", format(status.get(PageCreatorJob.STARTED, Calendar.class)));
+		result.put("Updated", format(status.get(PageCreatorJob.UPDATED, Calendar.class)));
+		result.put("Finished", format(status.get(PageCreatorJob.FINISHED, Calendar.class)));
+		result.put("ErrorRows", status.get(PageCreatorJob.ERROR_ROWS, new String[0]));
+		response.getWriter().print(OBJECT_MAPPER.writeValueAsString(result));
+	}
+
+	/**
+	 * @return the rows per second since the job was last resumed, null before the first checkpoint
+	 */
+	private static Double rowsPerSecond(ValueMap status, int rowsDone) {
+		Calendar resumed = status.get(PageCreatorJob.RESUMED, Calendar.class);
+		Calendar updated = status.get(PageCreatorJob.UPDATED, Calendar.class);
+		int rows = rowsDone - status.get(PageCreatorJob.ROWS_AT_RESUME, 0);
+		if (resumed == null || updated == null || rows <= 0) {
+			return null;
+		}
+		long millis = updated.getTimeInMillis() - resumed.getTimeInMillis();
+		return millis > 0 ? Math.round(rows * 10000.0 / millis) / 10.0 : null;
+	}
+
+	private static String format(Calendar calendar) {
+		return calendar != null ? calendar.toInstant().toString() : null;
+	}
+}
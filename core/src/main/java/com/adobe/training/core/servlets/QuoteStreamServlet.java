@@ -0,0 +1,101 @@
+package com.adobe.training.core.servlets;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import com.adobe.training.core.StockDataWriterJob;
+import com.adobe.training.core.services.QuoteStream;
+import com.adobe.training.core.services.StockUniverse;
+
+/**
+ * Pushes quote updates of the requested symbols to the browser as Server-Sent Events, right after
+ * the import committed them. The last known quote of every symbol is sent first, a comment is sent
+ * when no update arrived for a while to keep proxies from closing the connection.
+ *
+ * Every connection holds a request thread, so the number of connections is capped by the
+ * QuoteStream (503 with Retry-After when reached) and a connection ends after MAX_DURATION or when
+ * the client is too slow; the browser EventSource then reconnects.
+ *
+ * Example URL: http://localhost:4502/content/stocks.quotes.sse?symbols=ADBE,MSFT,GOOG
+ */
+@Component(service = { Servlet.class })
+@SlingServletResourceTypes(
+		resourceTypes=StockDataWriterJob.STOCKS_RESOURCE_TYPE,
+		selectors="quotes",
+		extensions="sse",
+		methods=HttpConstants.METHOD_GET)
+public class QuoteStreamServlet extends SlingSafeMethodsServlet {
+	private static final long serialVersionUID = 1L;
+
+	private static final long HEARTBEAT_SECONDS = 15;
+	private static final long MAX_DURATION = TimeUnit.MINUTES.toMillis(5);
+	private static final byte[] RETRY = "retry: 5000\n\n".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+	@Reference
+	private QuoteStream quoteStream;
+
+	@Override
+	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+		String param = request.getParameter("symbols");
+		if (param == null || param.trim().isEmpty()) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing symbols parameter");
+			return;
+		}
+		Set<String> symbols = new LinkedHashSet<>();
+		for (String value : param.split(",")) {
+			String symbol = value.trim().toUpperCase();
+			if (symbol.matches(StockUniverse.SYMBOL_PATTERN)) {
+				symbols.add(symbol);
+			}
+		}
+		if (symbols.isEmpty() || symbols.size() > StockQuotesServlet.MAX_SYMBOLS) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Between 1 and " + StockQuotesServlet.MAX_SYMBOLS + " valid symbols per request");
+			return;
+		}
+
+		QuoteStream.Subscription subscription = quoteStream.subscribe(symbols);
+		if (subscription == null) {
+			response.setHeader("Retry-After", "30");
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many quote streams");
+			return;
+		}
+		try {
+			response.setContentType("text/event-stream");
+			response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+			response.setHeader("Cache-Control", "no-cache");
+			//Keeps the dispatcher and proxies from buffering the stream
+			response.setHeader("X-Accel-Buffering", "no");
+			OutputStream out = response.getOutputStream();
+			out.write(RETRY);
+			response.flushBuffer();
+
+			long end = System.currentTimeMillis() + MAX_DURATION;
+			while (!subscription.isEvicted() && System.currentTimeMillis() < end) {
+				byte[] event = subscription.next(HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+				out.write(event != null ? event : HEARTBEAT);
+				response.flushBuffer();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			//Also reached when the client disconnected and writing failed
+			subscription.close();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.adobe.training.core.servlets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import com.adobe.training.core.StockDataWriterJob;
+import com.adobe.training.core.services.SectorAggregates;
+import com.adobe.training.core.services.SectorSummary;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Returns the per sector aggregates of all imported symbols. The aggregates are maintained on
+ * every quote change (see SectorAggregates), the JSON is encoded once per version of the
+ * aggregates and served with a strong ETag, so the response does not depend on the number of
+ * symbols:
+ *
+ * {"v":1,"sectors":{"Technology":{"count":3,"averageChangePercent":1.13,"advancers":2,"decliners":1,
+ *  "unchanged":0,"totalVolume":8250331},...}}
+ *
+ * Example URL: http://localhost:4502/content/stocks.sectors.json
+ */
+@Component(service = { Servlet.class })
+@SlingServletResourceTypes(
+		resourceTypes=StockDataWriterJob.STOCKS_RESOURCE_TYPE,
+		selectors="sectors",
+		extensions="json",
+		methods=HttpConstants.METHOD_GET)
+public class SectorAggregatesServlet extends SlingSafeMethodsServlet {
+	private static final long serialVersionUID = 1L;
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	@Reference
+	private SectorAggregates sectorAggregates;
+
+	private volatile Encoded encoded;
+
+	@Override
+	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+		long version = sectorAggregates.getVersion();
+		Encoded current = encoded;
+		if (current == null || current.version != version) {
+			current = new Encoded(version, write(sectorAggregates.getSectors()));
+			encoded = current;
+		}
+
+		response.setHeader("ETag", current.etag);
+		if (StockplexExportServlet.matches(request.getHeader("If-None-Match"), current.etag)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		response.setContentType("application/json");
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		response.setContentLength(current.body.length);
+		response.getOutputStream().write(current.body);
+	}
+
+	static byte[] write(List<SectorSummary> sectors) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+		try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+			json.writeStartObject();
+			json.writeNumberField("v", 1);
+			json.writeObjectFieldStart("sectors");
+			for (SectorSummary sector : sectors) {
+				json.writeObjectFieldStart(sector.getSector());
+				json.writeNumberField("count", sector.getCount());
+				if (Double.isNaN(sector.getAverageChangePercent())) {
+					json.writeNullField("averageChangePercent");
+				} else {
+					json.writeNumberField("averageChangePercent", sector.getAverageChangePercent());
+				}
+				json.writeNumberField("advancers", sector.getAdvancers());
+				json.writeNumberField("decliners", sector.getDecliners());
+				json.writeNumberField("unchanged", sector.getUnchanged());
+				json.writeNumberField("totalVolume", sector.getTotalVolume());
+				json.writeEndObject();
+			}
+			json.writeEndObject();
+			json.writeEndObject();
+		}
+		return out.toByteArray();
+	}
+
+	private static class Encoded {
+		private final long version;
+		private final byte[] body;
+		private final String etag;
+
+		private Encoded(long version, byte[] body) {
+			this.version = version;
+			this.body = body;
+			this.etag = StockplexExportServlet.etag(body);
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package com.adobe.training.core.servlets;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestParameter;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import com.adobe.training.core.StockDataWriterJob;
+import com.adobe.training.core.services.StockUniverse;
+import com.day.cq.commons.jcr.JcrConstants;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Onboards a whole universe of stock symbols at once. The symbols are read from the first column
+ * of a CSV (or one symbol per line), a sling:OrderedFolder is created below /content/stocks for
+ * every new symbol and the symbols are added to the StockUniverse, which imports them from its
+ * single timer. No OSGi configuration is created.
+ *
+ * Example cURL Command:
+ * $ curl -u admin:admin -X POST http://localhost:4502/content/stocks.onboard.json -F symbols=@tickers.csv -F header=true
+ *
+ * Returns the number of symbols added, already present and the values that are not valid symbols.
+ */
+@Component(service = { Servlet.class })
+@SlingServletResourceTypes(
+		resourceTypes=StockDataWriterJob.STOCKS_RESOURCE_TYPE,
+		selectors="onboard",
+		extensions="json",
+		methods=HttpConstants.METHOD_POST)
+public class StockOnboardingServlet extends SlingAllMethodsServlet {
+	private static final long serialVersionUID = 1L;
+
+	//Number of symbol folders created per repository commit
+	private static final int COMMIT_SIZE = 500;
+
+	@Reference
+	private StockUniverse stockUniverse;
+
+	@Override
+	public void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+		response.setContentType("application/json");
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+		Resource stocksRoot = request.getResource();
+		RequestParameter input = request.getRequestParameter("symbols");
+		if (input == null) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "POST a symbols parameter to " + StockDataWriterJob.STOCK_IMPORT_FOLDER + ".onboard.json");
+			return;
+		}
+
+		Set<String> symbols = new LinkedHashSet<>();
+		List<String> rejected = new ArrayList<>();
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(input.getInputStream(), StandardCharsets.UTF_8))) {
+			boolean header = Boolean.parseBoolean(request.getParameter("header"));
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (header) {
+					header = false;
+					continue;
+				}
+				//Symbol is the first column, lines without a comma may also list several symbols separated by spaces
+				String column = line.indexOf(',') >= 0 ? line.substring(0, line.indexOf(',')) : line;
+				for (String value : column.trim().split("\\s+")) {
+					String symbol = value.replace("\"", "").trim().toUpperCase();
+					if (symbol.isEmpty()) {
+						continue;
+					}
+					if (symbol.matches(StockUniverse.SYMBOL_PATTERN)) {
+						symbols.add(symbol);
+					} else {
+						rejected.add(value);
+					}
+				}
+			}
+		}
+
+		//Create the missing folders with the permissions of the requesting user
+		ResourceResolver resourceResolver = request.getResourceResolver();
+		List<String> created = new ArrayList<>();
+		int pending = 0;
+		for (String symbol : symbols) {
+			if (stocksRoot.getChild(symbol) != null) {
+				continue;
+			}
+			resourceResolver.create(stocksRoot, symbol,
+					Collections.<String, Object>singletonMap(JcrConstants.JCR_PRIMARYTYPE, "sling:OrderedFolder"));
+			created.add(symbol);
+			if (++pending >= COMMIT_SIZE) {
+				commit(resourceResolver);
+				pending = 0;
+			}
+		}
+		if (pending > 0) {
+			commit(resourceResolver);
+		}
+		//The resource change events add the symbols as well, adding them here does not wait for the events
+		stockUniverse.add(created);
+
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("added", created.size());
+		result.put("existing", symbols.size() - created.size());
+		result.put("rejected", rejected);
+		result.put("universe", stockUniverse.getSymbols().size());
+		response.getWriter().print(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(result));
+	}
+
+	private void commit(ResourceResolver resourceResolver) throws PersistenceException {
+		try {
+			resourceResolver.commit();
+		} catch (PersistenceException e) {
+			resourceResolver.revert();
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package com.adobe.training.core.servlets;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import com.adobe.training.core.Fnv1a;
+import com.adobe.training.core.StockDataWriterJob;
+import com.adobe.training.core.StockQuoteSerializer;
+import com.adobe.training.core.models.Stockplex;
+import com.adobe.training.core.services.QuoteStore;
+import com.adobe.training.core.services.StockFeedClient;
+import com.adobe.training.core.services.StockQuote;
+import com.adobe.training.core.services.StockUniverse;
+import com.adobe.training.core.services.TradingCalendar;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Returns the quotes of many symbols in one response, e.g. for a dashboard with many stockplex
+ * components. Every symbol is read once from the QuoteStore and the JSON is streamed to the
+ * response. The field names are the property names of the trade node (see StockQuoteSerializer):
+ *
+ * {"v":1,
+ *  "quotes":{"ADBE":{"companyName":"Adobe Inc.",...,"latestUpdate":1553192968000,"stale":false},...},
+ *  "missing":["XXXX"]}
+ *
+ * The ETag is computed from the requested symbols and the time and fingerprint of each quote
+ * before anything is serialized, so a matching If-None-Match is answered with 304 right away.
+ *
+ * Example URL: http://localhost:4502/content/stocks.quotes.json?symbols=ADBE,MSFT,GOOG
+ */
+@Component(service = { Servlet.class })
+@SlingServletResourceTypes(
+		resourceTypes=StockDataWriterJob.STOCKS_RESOURCE_TYPE,
+		selectors="quotes",
+		extensions="json",
+		methods=HttpConstants.METHOD_GET)
+public class StockQuotesServlet extends SlingSafeMethodsServlet {
+	private static final long serialVersionUID = 1L;
+
+	//Maximum number of symbols per request
+	public static final int MAX_SYMBOLS = 100;
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	@Reference
+	private QuoteStore quoteStore;
+
+	@Reference
+	private StockFeedClient stockFeedClient;
+
+	@Reference
+	private TradingCalendar tradingCalendar;
+
+	@Override
+	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+		String param = request.getParameter("symbols");
+		if (param == null || param.trim().isEmpty()) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing symbols parameter");
+			return;
+		}
+		Set<String> symbols = new LinkedHashSet<>();
+		for (String value : param.split(",")) {
+			String symbol = value.trim().toUpperCase();
+			if (!symbol.isEmpty()) {
+				symbols.add(symbol);
+			}
+		}
+		if (symbols.size() > MAX_SYMBOLS) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "At most " + MAX_SYMBOLS + " symbols per request");
+			return;
+		}
+
+		//Read every symbol once, the ETag covers the symbols, the quotes and their stale flags
+		List<StockQuote> quotes = new ArrayList<>(symbols.size());
+		boolean[] stale = new boolean[symbols.size()];
+		long hash = Fnv1a.OFFSET;
+		int i = 0;
+		for (String symbol : symbols) {
+			StockQuote quote = symbol.matches(StockUniverse.SYMBOL_PATTERN) ? quoteStore.get(symbol) : null;
+			quotes.add(quote);
+			hash = Fnv1a.mix(hash, symbol);
+			if (quote != null) {
+				stale[i] = Stockplex.isStale(quote.getLatestUpdate(), stockFeedClient, tradingCalendar);
+				hash = Fnv1a.mix(hash, quote.getLatestUpdate());
+				hash = Fnv1a.mix(hash, quote.fingerprint());
+				hash = Fnv1a.mix(hash, stale[i] ? 1 : 0);
+			}
+			i++;
+		}
+		String etag = "\"" + Long.toHexString(hash) + "\"";
+
+		response.setHeader("ETag", etag);
+		if (StockplexExportServlet.matches(request.getHeader("If-None-Match"), etag)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+
+		List<String> missing = new ArrayList<>();
+		try (JsonGenerator json = JSON_FACTORY.createGenerator(response.getOutputStream(), JsonEncoding.UTF8)) {
+			json.writeStartObject();
+			json.writeNumberField("v", 1);
+			json.writeObjectFieldStart("quotes");
+			i = 0;
+			for (String symbol : symbols) {
+				StockQuote quote = quotes.get(i);
+				if (quote == null) {
+					missing.add(symbol);
+				} else {
+					json.writeObjectFieldStart(symbol);
+					StockQuoteSerializer.writeFields(json, quote);
+					json.writeBooleanField("stale", stale[i]);
+					json.writeEndObject();
+				}
+				i++;
+			}
+			json.writeEndObject();
+			json.writeArrayFieldStart("missing");
+			for (String symbol : missing) {
+				json.writeString(symbol);
+			}
+			json.writeEndArray();
+			json.writeEndObject();
+		}
+	}
+}
@@ -0,0 +1,210 @@
+package com.adobe.training.core.servlets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.models.factory.ExportException;
+import org.apache.sling.models.factory.MissingExporterException;
+import org.apache.sling.models.factory.ModelFactory;
+import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
+import org.osgi.framework.Constants;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import com.adobe.training.core.Fnv1a;
+import com.adobe.training.core.StockQuoteSerializer;
+import com.adobe.training.core.models.Stockplex;
+import com.adobe.training.core.services.StockFeedClient;
+import com.adobe.training.core.services.StockQuote;
+import com.adobe.training.core.services.StockSnapshot;
+import com.adobe.training.core.services.StockSnapshotCache;
+import com.adobe.training.core.services.TradingCalendar;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Serves the JSON of stockplex components from pre-encoded UTF-8 bytes. The bytes are built once
+ * per component and kept until the StockSnapshot of the symbol, the stale flag or the dialog
+ * values of the component change. Every response carries a strong ETag, so clients revalidate
+ * with If-None-Match and get a 304 Not Modified without a body.
+ *
+ * .model.json    output of the Jackson exporter of the Stockplex model (replaces the default
+ *                Sling Models export servlet, which is registered with a lower ranking)
+ * .quote.v1.json compact, versioned shape with the property names of the trade node and typed numbers
+ *                (see StockQuoteSerializer):
+ *
+ * {"v":1,"symbol":"ADBE","companyName":"Adobe Inc.","sector":"Technology","lastTrade":262.7,
+ *  "openPrice":259.0,"rangeHigh":262.35,"rangeLow":258.4,"volume":1111095,"upDown":2.96,
+ *  "week52High":277.61,"week52Low":204.95,"ytdPercentageChange":0.168,"latestUpdate":1553192968000,"stale":false}
+ *
+ * Example URL: http://localhost:4502/content/training/us/en/jcr:content/root/stockplex.quote.v1.json
+ */
+@Component(service = { Servlet.class },
+		property = { Constants.SERVICE_RANKING + ":Integer=100" })
+@SlingServletResourceTypes(
+		resourceTypes=Stockplex.RESOURCE_TYPE,
+		selectors={StockplexExportServlet.MODEL_SELECTOR, StockplexExportServlet.COMPACT_SELECTOR},
+		extensions="json",
+		methods=HttpConstants.METHOD_GET)
+public class StockplexExportServlet extends SlingSafeMethodsServlet {
+	private static final long serialVersionUID = 1L;
+
+	public static final String MODEL_SELECTOR = "model";
+	public static final String COMPACT_SELECTOR = "quote.v1";
+	public static final int COMPACT_VERSION = 1;
+
+	//Number of components whose JSON is kept
+	private static final int MAX_ENTRIES = 5000;
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	@Reference
+	private ModelFactory modelFactory;
+
+	@Reference
+	private StockSnapshotCache stockSnapshotCache;
+
+	@Reference
+	private StockFeedClient stockFeedClient;
+
+	@Reference
+	private TradingCalendar tradingCalendar;
+
+	//JSON per component path and selector, least recently used entries are dropped first
+	private final Map<String, CachedExport> exports = Collections.synchronizedMap(
+			new LinkedHashMap<String, CachedExport>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, CachedExport> eldest) {
+					return size() > MAX_ENTRIES;
+				}
+			});
+
+	@Override
+	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+		Resource resource = request.getResource();
+		ValueMap properties = resource.getValueMap();
+		String symbol = properties.get("symbol", String.class);
+		String selectors = request.getRequestPathInfo().getSelectorString();
+		boolean compact = COMPACT_SELECTOR.equals(selectors);
+
+		StockSnapshot snapshot = stockSnapshotCache.get(symbol);
+		boolean stale = Stockplex.isStale(snapshot != null ? snapshot.getLatestUpdate() : null, stockFeedClient, tradingCalendar);
+		String dialogValues = symbol + "|" + properties.get("summary", "") + "|" + properties.get("showStockDetails", "");
+
+		String key = resource.getPath() + "." + selectors;
+		CachedExport export = exports.get(key);
+		if (export == null || !export.isFor(snapshot, stale, dialogValues)) {
+			byte[] body = compact ? writeCompact(symbol, snapshot, stale) : exportModel(request);
+			if (body == null) {
+				response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+				return;
+			}
+			export = new CachedExport(snapshot, stale, dialogValues, body);
+			exports.put(key, export);
+		}
+
+		response.setHeader("ETag", export.etag);
+		if (matches(request.getHeader("If-None-Match"), export.etag)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		response.setContentType("application/json");
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		response.setContentLength(export.body.length);
+		response.getOutputStream().write(export.body);
+	}
+
+	/**
+	 * @return the output of the Jackson exporter of the Stockplex model or null if the model could not be exported
+	 */
+	private byte[] exportModel(SlingHttpServletRequest request) {
+		try {
+			Stockplex model = modelFactory.createModel(request, Stockplex.class);
+			String json = modelFactory.exportModel(model, "jackson", String.class, Collections.<String, String>emptyMap());
+			return json.getBytes(StandardCharsets.UTF_8);
+		} catch (ExportException | MissingExporterException | RuntimeException e) {
+			log("Could not export the stockplex model of " + request.getResource().getPath(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the compact shape. Values that are not known are written as null.
+	 */
+	static byte[] writeCompact(String symbol, StockSnapshot snapshot, boolean stale) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+		try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+			json.writeStartObject();
+			json.writeNumberField("v", COMPACT_VERSION);
+			json.writeStringField("symbol", symbol);
+			StockQuote quote = snapshot != null ? snapshot.getQuote() : null;
+			if (quote != null) {
+				StockQuoteSerializer.writeFields(json, quote);
+			}
+			json.writeBooleanField("stale", stale);
+			json.writeEndObject();
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return true if the If-None-Match header lists the ETag or is *
+	 */
+	static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String candidate : ifNoneMatch.split(",")) {
+			String value = candidate.trim();
+			if (value.equals(etag) || value.equals("*")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return a strong ETag computed from the bytes (64 bit FNV-1a)
+	 */
+	static String etag(byte[] body) {
+		return "\"" + Long.toHexString(Fnv1a.mix(Fnv1a.OFFSET, body)) + "\"";
+	}
+
+	private static class CachedExport {
+		private final StockSnapshot snapshot;
+		private final boolean stale;
+		private final String dialogValues;
+		private final byte[] body;
+		private final String etag;
+
+		private CachedExport(StockSnapshot snapshot, boolean stale, String dialogValues, byte[] body) {
+			this.snapshot = snapshot;
+			this.stale = stale;
+			this.dialogValues = dialogValues;
+			this.body = body;
+			this.etag = etag(body);
+		}
+
+		/**
+		 * Snapshots are replaced, never modified, when the stock data changes
+		 */
+		private boolean isFor(StockSnapshot snapshot, boolean stale, String dialogValues) {
+			return this.snapshot == snapshot && this.stale == stale && this.dialogValues.equals(dialogValues);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.adobe.training.core;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvTokenizerTest {
+
+    @Test
+    void plainFields() throws IOException {
+        List<List<String>> records = tokenize("/content/a,A,/conf/t,/content/cq:tags/x\n/content/b,B\n");
+        assertEquals(Arrays.asList(
+                Arrays.asList("/content/a", "A", "/conf/t", "/content/cq:tags/x"),
+                Arrays.asList("/content/b", "B")), records);
+    }
+
+    @Test
+    void quotedFieldWithCommaQuoteAndLineBreak() throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(new StringReader(
+                "/content/a,\"Coats, Jackets\",\"say \"\"hi\"\"\",\"two\r\nlines\"\n/content/b,B"));
+
+        assertTrue(tokenizer.nextRecord());
+        assertEquals(4, tokenizer.getFieldCount());
+        assertEquals("Coats, Jackets", tokenizer.getField(1));
+        assertEquals("say \"hi\"", tokenizer.getField(2));
+        assertEquals("two\r\nlines", tokenizer.getField(3));
+        assertEquals("/content/a,\"Coats, Jackets\",\"say \"\"hi\"\"\",\"two\r\nlines\"", tokenizer.getRecord());
+        assertEquals(1, tokenizer.getLineNumber());
+
+        assertTrue(tokenizer.nextRecord());
+        assertEquals(2, tokenizer.getRecordNumber());
+        assertEquals(3, tokenizer.getLineNumber());
+        assertEquals("B", tokenizer.getField(1));
+        assertFalse(tokenizer.nextRecord());
+    }
+
+    @Test
+    void lineBreaksAndEmptyFields() throws IOException {
+        List<List<String>> records = tokenize("\uFEFFa,,\r\rb\r\n,");
+        assertEquals(Arrays.asList(
+                Arrays.asList("a", "", ""),
+                Arrays.asList(""),
+                Arrays.asList("b"),
+                Arrays.asList("", "")), records);
+    }
+
+    @Test
+    void missingFieldsAreEmpty() throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(new StringReader("/content/a"));
+        assertTrue(tokenizer.nextRecord());
+        assertEquals("", tokenizer.getField(3));
+        assertEquals(0, tokenizer.getFieldLength(3));
+    }
+
+    @Test
+    void unterminatedQuoteEndsAtEndOfInput() throws IOException {
+        assertEquals(Arrays.asList(Arrays.asList("a", "b,c\n")), tokenize("a,\"b,c\n"));
+    }
+
+    @Test
+    void severalEscapedFieldsAndTrailingCharacters() throws IOException {
+        assertEquals(Arrays.asList(Arrays.asList("a\"", "x", "\"b\"", "c d")),
+                tokenize("\"a\"\"\",\"x\",\"\"\"b\"\"\",\"c\" d"));
+    }
+
+    @Test
+    void recordsLongerThanTheBuffer() throws IOException {
+        StringBuilder title = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            title.append(i % 10 == 0 ? "\"\"" : String.valueOf(i % 10));
+        }
+        String unescaped = title.toString().replace("\"\"", "\"");
+        List<List<String>> records = tokenize("/content/a,\"" + title + "\"\n/content/b," + unescaped.replace("\"", ""));
+        assertEquals(unescaped, records.get(0).get(1));
+        assertEquals(unescaped.replace("\"", ""), records.get(1).get(1));
+        assertEquals(2, records.size());
+    }
+
+    private static List<List<String>> tokenize(String csv) throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(new StringReader(csv));
+        List<List<String>> records = new ArrayList<>();
+        while (tokenizer.nextRecord()) {
+            List<String> fields = new ArrayList<>();
+            for (int i = 0; i < tokenizer.getFieldCount(); i++) {
+                fields.add(tokenizer.getField(i));
+            }
+            records.add(fields);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,31 @@
+package com.adobe.training.core;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class Fnv1aTest {
+
+    @Test
+    void bytesMatchTheReferenceHash() {
+        assertEquals(0xcbf29ce484222325L, Fnv1a.mix(Fnv1a.OFFSET, new byte[0]));
+        assertEquals(0xaf63dc4c8601ec8cL, Fnv1a.mix(Fnv1a.OFFSET, "a".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0x85944171f73967e8L, Fnv1a.mix(Fnv1a.OFFSET, "foobar".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void stringsWithTheSameJavaHashCodeDiffer() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertNotEquals(Fnv1a.mix(Fnv1a.OFFSET, "Aa"), Fnv1a.mix(Fnv1a.OFFSET, "BB"));
+    }
+
+    @Test
+    void stringsAreSeparated() {
+        long ab = Fnv1a.mix(Fnv1a.mix(Fnv1a.OFFSET, "ab"), "c");
+        long bc = Fnv1a.mix(Fnv1a.mix(Fnv1a.OFFSET, "a"), "bc");
+        assertNotEquals(ab, bc);
+    }
+}
@@ -0,0 +1,138 @@
+package com.adobe.training.core;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.adobe.training.core.services.PageImporter;
+import com.adobe.training.core.services.impl.PageImporterImpl;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(AemContextExtension.class)
+class PageCreatorJobTest {
+
+    private static final String JOB_PATH = "/content/pagecreator/jobs/1";
+
+    private AemContext context;
+    private Job job = mock(Job.class);
+    private JobExecutionContext jobContext = mock(JobExecutionContext.class, RETURNS_DEEP_STUBS);
+    private PageCreatorJob fixture;
+
+    @BeforeEach
+    void setup(AemContext context) throws Exception {
+        this.context = context;
+        context.create().page("/content/training");
+        context.create().resource(PageImporter.DEFAULT_TEMPLATE_PATH);
+        //Rows sorted by depth: de, fr, fr/fr
+        context.create().resource(JOB_PATH,
+                PageCreatorJob.STATE, PageCreatorJob.STATE_QUEUED,
+                PageCreatorJob.USER, "admin",
+                PageCreatorJob.COMMIT_SIZE, 1);
+        context.load().binaryFile(new ByteArrayInputStream((
+                "/content/training/fr/fr,French,,\n"
+                + "/content/training/de,DE,,\n"
+                + "/content/training/fr,FR,,\n").getBytes(StandardCharsets.UTF_8)),
+                JOB_PATH + "/" + PageCreatorJob.INPUT, "text/csv");
+        context.resourceResolver().commit();
+
+        when(job.getProperty(PageCreatorJob.JOB_PROP_PATH, String.class)).thenReturn(JOB_PATH);
+        when(job.getProperty(PageCreatorJob.JOB_PROP_USER, String.class)).thenReturn("admin");
+        when(job.getRetryCount()).thenReturn(0);
+        when(job.getNumberOfRetries()).thenReturn(10);
+        context.registerInjectActivateService(new PageImporterImpl());
+        fixture = context.registerInjectActivateService(new PageCreatorJob());
+    }
+
+    @Test
+    void jobCreatesAllRows() {
+        fixture.process(job, jobContext);
+
+        ValueMap status = context.resourceResolver().getResource(JOB_PATH).getValueMap();
+        assertEquals(PageCreatorJob.STATE_SUCCEEDED, status.get(PageCreatorJob.STATE, String.class));
+        assertEquals(3, status.get(PageCreatorJob.ROWS_DONE, 0));
+        assertEquals(0, status.get(PageCreatorJob.ERRORS, 0));
+        assertNotNull(context.pageManager().getPage("/content/training/fr/fr"));
+        assertNull(context.resourceResolver().getResource(JOB_PATH + "/" + PageCreatorJob.INPUT));
+    }
+
+    @Test
+    void restartedJobSkipsTheCheckpointedRows() throws Exception {
+        //A previous run committed de with the checkpoint and was stopped, de was deleted since
+        setStarted(1);
+
+        fixture.process(job, jobContext);
+
+        ValueMap status = context.resourceResolver().getResource(JOB_PATH).getValueMap();
+        assertEquals(PageCreatorJob.STATE_SUCCEEDED, status.get(PageCreatorJob.STATE, String.class));
+        assertEquals(1, status.get(PageCreatorJob.ROWS_AT_RESUME, 0));
+        assertEquals(3, status.get(PageCreatorJob.ROWS_DONE, 0));
+        assertNull(context.pageManager().getPage("/content/training/de"));
+        assertNotNull(context.pageManager().getPage("/content/training/fr"));
+        assertNotNull(context.pageManager().getPage("/content/training/fr/fr"));
+        //The checkpointed row at once, then one per created row
+        verify(jobContext, times(3)).incrementProgressCount(1);
+    }
+
+    @Test
+    void stoppedJobKeepsItsCheckpoint() throws Exception {
+        setStarted(1);
+        when(jobContext.isStopped()).thenReturn(true);
+
+        fixture.process(job, jobContext);
+
+        ValueMap status = context.resourceResolver().getResource(JOB_PATH).getValueMap();
+        assertEquals(PageCreatorJob.STATE_STOPPED, status.get(PageCreatorJob.STATE, String.class));
+        assertEquals(1, status.get(PageCreatorJob.ROWS_DONE, 0));
+        assertNull(context.pageManager().getPage("/content/training/fr"));
+        assertNotNull(context.resourceResolver().getResource(JOB_PATH + "/" + PageCreatorJob.INPUT));
+    }
+
+    @Test
+    void jobWithoutAUserInItsPropertiesIsCancelled() {
+        //The user on the job node is status only, the uploader can write it
+        when(job.getProperty(PageCreatorJob.JOB_PROP_USER, String.class)).thenReturn(null);
+
+        fixture.process(job, jobContext);
+
+        ValueMap status = context.resourceResolver().getResource(JOB_PATH).getValueMap();
+        assertEquals(PageCreatorJob.STATE_QUEUED, status.get(PageCreatorJob.STATE, String.class));
+        assertNull(context.pageManager().getPage("/content/training/de"));
+    }
+
+    @Test
+    void jobWithoutInputFails() throws Exception {
+        context.resourceResolver().delete(context.resourceResolver().getResource(JOB_PATH + "/" + PageCreatorJob.INPUT));
+        context.resourceResolver().commit();
+
+        fixture.process(job, jobContext);
+
+        ValueMap status = context.resourceResolver().getResource(JOB_PATH).getValueMap();
+        assertEquals(PageCreatorJob.STATE_FAILED, status.get(PageCreatorJob.STATE, String.class));
+        assertNotNull(status.get(PageCreatorJob.FINISHED, Calendar.class));
+    }
+
+    private void setStarted(int rowsDone) throws Exception {
+        ModifiableValueMap status = context.resourceResolver().getResource(JOB_PATH).adaptTo(ModifiableValueMap.class);
+        status.put(PageCreatorJob.STARTED, Calendar.getInstance());
+        status.put(PageCreatorJob.ROWS_DONE, rowsDone);
+        context.resourceResolver().commit();
+    }
+}
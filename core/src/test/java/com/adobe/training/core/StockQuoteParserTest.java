@@ -0,0 +1,80 @@
+package com.adobe.training.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import com.adobe.training.core.services.StockQuote;
+import com.fasterxml.jackson.core.JsonParseException;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StockQuoteParserTest {
+
+    @Test
+    void parseNumbersAndSkipUnknownFields() throws IOException {
+        StockQuote quote = StockQuoteParser.parse(read("/stock-feed-ADBE.json"), new StockQuote());
+
+        assertAll(
+                () -> assertEquals("ADBE", quote.getSymbol()),
+                () -> assertEquals("Adobe Inc.", quote.getCompanyName()),
+                () -> assertEquals("Technology", quote.getSector()),
+                () -> assertEquals(262.7, quote.getLatestPrice()),
+                () -> assertEquals(259, quote.getOpen()),
+                () -> assertEquals(262.35, quote.getHigh()),
+                () -> assertEquals(258.4, quote.getLow()),
+                () -> assertEquals(1111095L, quote.getLatestVolume()),
+                () -> assertEquals(2.96, quote.getChange()),
+                () -> assertEquals(277.61, quote.getWeek52High()),
+                () -> assertEquals(204.95, quote.getWeek52Low()),
+                () -> assertEquals(0.16801041100770367, quote.getYtdChange()),
+                () -> assertEquals(1553192968000L, quote.getLatestUpdate())
+        );
+    }
+
+    @Test
+    void parseNumbersSentAsStrings() throws IOException {
+        StockQuote quote = StockQuoteParser.parse(read("/stock-feed-MSFT.json"), new StockQuote());
+
+        assertAll(
+                () -> assertEquals("MSFT", quote.getSymbol()),
+                () -> assertEquals(119.4, quote.getLatestPrice()),
+                () -> assertEquals(13643986L, quote.getLatestVolume()),
+                () -> assertEquals(1553193090000L, quote.getLatestUpdate())
+        );
+    }
+
+    @Test
+    void reuseQuote() throws IOException {
+        StockQuote quote = new StockQuote();
+        StockQuoteParser.parse(read("/stock-feed-ADBE.json"), quote);
+        StockQuote reused = StockQuoteParser.parse(
+                "{\"latestPrice\": 1.5, \"latestUpdate\": 1}".getBytes(StandardCharsets.UTF_8), quote);
+
+        assertSame(quote, reused);
+        assertNull(reused.getSymbol());
+        assertEquals(1.5, reused.getLatestPrice());
+        assertEquals(Double.NaN, reused.getOpen());
+    }
+
+    @Test
+    void rejectIncompleteQuote() {
+        assertThrows(JsonParseException.class, () -> StockQuoteParser.parse(
+                "{\"symbol\": \"ADBE\"}".getBytes(StandardCharsets.UTF_8), new StockQuote()));
+        assertThrows(JsonParseException.class, () -> StockQuoteParser.parse(
+                "[]".getBytes(StandardCharsets.UTF_8), new StockQuote()));
+    }
+
+    private byte[] read(String path) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream(path)) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+}
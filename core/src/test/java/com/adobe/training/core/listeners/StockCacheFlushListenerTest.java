@@ -0,0 +1,92 @@
+package com.adobe.training.core.listeners;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.apache.sling.commons.scheduler.Scheduler;
+import org.apache.sling.distribution.DistributionRequest;
+import org.apache.sling.distribution.DistributionRequestType;
+import org.apache.sling.distribution.DistributionResponse;
+import org.apache.sling.distribution.Distributor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+
+import com.adobe.training.core.services.StockReferenceIndex;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(AemContextExtension.class)
+class StockCacheFlushListenerTest {
+
+    private StockCacheFlushListener fixture;
+    private Distributor distributor;
+
+    @BeforeEach
+    void setup(AemContext context) {
+        StockReferenceIndex index = mock(StockReferenceIndex.class);
+        when(index.getPages("ADBE")).thenReturn(new LinkedHashSet<>(Arrays.asList("/content/training/us/en", "/content/training/us/en/stocks")));
+        when(index.getPages("MSFT")).thenReturn(Collections.singleton("/content/training/us/en"));
+        when(index.getPages("GOOG")).thenReturn(Collections.emptySet());
+        distributor = mock(Distributor.class);
+        DistributionResponse response = mock(DistributionResponse.class);
+        when(response.isSuccessful()).thenReturn(true);
+        when(distributor.distribute(anyString(), any(ResourceResolver.class), any(DistributionRequest.class))).thenReturn(response);
+
+        context.registerService(StockReferenceIndex.class, index);
+        context.registerService(Distributor.class, distributor);
+        context.registerService(Scheduler.class, mock(Scheduler.class, RETURNS_DEEP_STUBS));
+        fixture = context.registerInjectActivateService(new StockCacheFlushListener(),
+                "quiet.period", 2,
+                "max.delay", 10);
+    }
+
+    @Test
+    void changesOfOneCycleAreFlushedOnce() {
+        long now = System.currentTimeMillis();
+        fixture.onChange(Arrays.asList(change("ADBE"), change("GOOG")));
+        fixture.onChange(Arrays.asList(change("MSFT"), change("ADBE")));
+        fixture.flushIfDue(now + 1000);
+        verify(distributor, never()).distribute(anyString(), any(ResourceResolver.class), any(DistributionRequest.class));
+
+        //Due after the configured quiet period of 2 seconds, the default would be 5
+        fixture.flushIfDue(now + 3000);
+        ArgumentCaptor<DistributionRequest> request = ArgumentCaptor.forClass(DistributionRequest.class);
+        verify(distributor).distribute(eq("publish"), any(ResourceResolver.class), request.capture());
+        assertEquals(DistributionRequestType.INVALIDATE, request.getValue().getRequestType());
+        assertArrayEquals(new String[] {"/content/training/us/en", "/content/training/us/en/stocks"}, request.getValue().getPaths());
+
+        //Nothing pending any more
+        fixture.flushIfDue(now + 12000);
+        verify(distributor, times(1)).distribute(anyString(), any(ResourceResolver.class), any(DistributionRequest.class));
+    }
+
+    @Test
+    void symbolsWithoutPagesAreNotFlushed() {
+        long now = System.currentTimeMillis();
+        fixture.onChange(Collections.singletonList(change("GOOG")));
+        fixture.flushIfDue(now + 6000);
+        verify(distributor, never()).distribute(anyString(), any(ResourceResolver.class), any(DistributionRequest.class));
+    }
+
+    private static ResourceChange change(String symbol) {
+        return new ResourceChange(ChangeType.CHANGED, "/content/stocks/" + symbol + "/trade", false);
+    }
+}
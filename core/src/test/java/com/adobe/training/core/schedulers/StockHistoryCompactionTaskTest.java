@@ -0,0 +1,93 @@
+package com.adobe.training.core.schedulers;
+
+import java.time.LocalDate;
+import java.util.Collections;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.adobe.training.core.StockDataWriterJob;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(AemContextExtension.class)
+class StockHistoryCompactionTaskTest {
+
+    private static final String HISTORY = StockDataWriterJob.STOCK_IMPORT_FOLDER + "/ADBE/" + StockDataWriterJob.HISTORY;
+
+    private AemContext context;
+    private StockHistoryCompactionTask fixture;
+    private String oldDay;
+    private String today;
+
+    @BeforeEach
+    void setup(AemContext context) throws Exception {
+        this.context = context;
+        LocalDate now = LocalDate.now(StockDataWriterJob.TIME_ZONE);
+        oldDay = HISTORY + "/" + path(now.minusDays(30));
+        today = HISTORY + "/" + path(now);
+
+        //Ticks are not stored in time order
+        tick(oldDay + "/t2", 261.0, 2000L, 300L);
+        tick(oldDay + "/t1", 259.0, 1000L, 100L);
+        tick(oldDay + "/t4", 258.5, 4000L, 700L);
+        tick(oldDay + "/t3", 264.0, 3000L, 500L);
+        tick(today + "/t1", 262.7, 5000L, 100L);
+        context.resourceResolver().commit();
+
+        fixture = context.registerInjectActivateService(new StockHistoryCompactionTask(),
+                Collections.singletonMap("retention.days", 7));
+    }
+
+    @Test
+    void oldDaysAreRolledUp() {
+        fixture.run();
+
+        ValueMap summary = context.resourceResolver().getResource(oldDay).getValueMap();
+        assertEquals(259.0, summary.get(StockHistoryCompactionTask.OPEN, Double.class));
+        assertEquals(264.0, summary.get(StockHistoryCompactionTask.HIGH, Double.class));
+        assertEquals(258.5, summary.get(StockHistoryCompactionTask.LOW, Double.class));
+        assertEquals(258.5, summary.get(StockHistoryCompactionTask.CLOSE, Double.class));
+        assertEquals(700L, summary.get(StockDataWriterJob.VOLUME, Long.class));
+        assertEquals(4, summary.get(StockHistoryCompactionTask.TICKS, 0));
+        assertTrue(summary.get(StockHistoryCompactionTask.COMPACTED, false));
+        assertFalse(context.resourceResolver().getResource(oldDay).hasChildren());
+    }
+
+    @Test
+    void recentDaysKeepTheirTicks() {
+        fixture.run();
+
+        Resource recent = context.resourceResolver().getResource(today);
+        assertNull(recent.getValueMap().get(StockHistoryCompactionTask.COMPACTED, Boolean.class));
+        assertTrue(recent.hasChildren());
+    }
+
+    @Test
+    void compactedDaysAreSkipped() {
+        fixture.run();
+        fixture.run();
+
+        assertEquals(4, context.resourceResolver().getResource(oldDay).getValueMap()
+                .get(StockHistoryCompactionTask.TICKS, 0));
+    }
+
+    private void tick(String path, double price, long time, long volume) {
+        context.create().resource(path,
+                StockDataWriterJob.LASTTRADE, price,
+                StockDataWriterJob.LATESTUPDATE, time,
+                StockDataWriterJob.VOLUME, volume);
+    }
+
+    private static String path(LocalDate date) {
+        return String.format("%04d/%02d/%02d", date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+    }
+}
@@ -0,0 +1,151 @@
+package com.adobe.training.core.schedulers;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.sling.commons.scheduler.ScheduleOptions;
+import org.apache.sling.commons.scheduler.Scheduler;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+
+import com.adobe.training.core.services.StockFeedClient;
+import com.adobe.training.core.services.TradingCalendar;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(AemContextExtension.class)
+class StockImportSchedulerTest {
+
+    private JobManager jobManager = mock(JobManager.class);
+    private Scheduler scheduler = mock(Scheduler.class);
+    private ScheduleOptions options = mock(ScheduleOptions.class, RETURNS_SELF);
+    private TradingCalendar tradingCalendar = mock(TradingCalendar.class);
+    private StockFeedClient feedClient = mock(StockFeedClient.class);
+
+    private AemContext context;
+    private Instant phaseChange;
+
+    @BeforeEach
+    void setup(AemContext context) {
+        this.context = context;
+        phaseChange = Instant.now().plusSeconds(7200);
+        when(scheduler.AT(any(Date.class))).thenReturn(options);
+        when(tradingCalendar.getPhase(any())).thenReturn(TradingCalendar.Phase.OPEN);
+        when(tradingCalendar.getNextPhaseChange(any())).thenReturn(phaseChange);
+        context.registerService(JobManager.class, jobManager);
+        context.registerService(Scheduler.class, scheduler);
+        context.registerService(TradingCalendar.class, tradingCalendar);
+        context.registerService(StockFeedClient.class, feedClient);
+    }
+
+    @Test
+    void firstRunIsRightAwayOnTheLeader() {
+        Instant before = Instant.now();
+        activate();
+
+        assertBetween(before, Instant.now(), scheduledTimes().get(0));
+        verify(options).onLeaderOnly(true);
+    }
+
+    @Test
+    void runsFollowTheSessionInterval() {
+        activate();
+
+        Instant before = Instant.now();
+        lastRun().run();
+        verify(jobManager).addJob(eq(StockImportScheduler.JOB_TOPIC_STOCKIMPORT), anyMap());
+        assertBetween(before.plusSeconds(60), Instant.now().plusSeconds(60), scheduledTimes().get(1));
+    }
+
+    @Test
+    void intervalDoublesWithEveryUnchangedFetchBeyondBackOffAfter() {
+        //With backoff_after 3, 3 unchanged fetches double the interval once and 5 three times
+        when(feedClient.getUnchangedCount(anyString(), eq("ADBE"))).thenReturn(5);
+        activate();
+
+        Instant before = Instant.now();
+        lastRun().run();
+        assertBetween(before.plusSeconds(480), Instant.now().plusSeconds(480), scheduledTimes().get(1));
+    }
+
+    @Test
+    void backOffStopsAtTheMaxIntervalAndThePhaseChange() {
+        when(feedClient.getUnchangedCount(anyString(), eq("ADBE"))).thenReturn(20);
+        activate();
+
+        Instant before = Instant.now();
+        lastRun().run();
+        assertBetween(before.plusSeconds(1800), Instant.now().plusSeconds(1800), scheduledTimes().get(1));
+
+        when(tradingCalendar.getNextPhaseChange(any())).thenReturn(Instant.now().plusSeconds(100));
+        lastRun().run();
+        assertTrue(scheduledTimes().get(2).isBefore(Instant.now().plusSeconds(101)));
+    }
+
+    @Test
+    void closedMarketWaitsForTheNextPhase() {
+        when(tradingCalendar.getPhase(any())).thenReturn(TradingCalendar.Phase.CLOSED);
+        when(tradingCalendar.getPhase(phaseChange)).thenReturn(TradingCalendar.Phase.PRE_MARKET);
+        activate();
+
+        assertEquals(phaseChange.toEpochMilli(), scheduledTimes().get(0).toEpochMilli());
+    }
+
+    @Test
+    void pendingRunDoesNothingAfterDeactivation() {
+        StockImportScheduler fixture = activate();
+        Runnable pending = lastRun();
+
+        MockOsgi.deactivate(fixture, context.bundleContext());
+        pending.run();
+
+        verify(jobManager, never()).addJob(anyString(), anyMap());
+        verify(scheduler, times(1)).schedule(any(), any(ScheduleOptions.class));
+    }
+
+    private StockImportScheduler activate() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("symbol", "ADBE");
+        config.put("adaptive", true);
+        return context.registerInjectActivateService(new StockImportScheduler(), config);
+    }
+
+    private Runnable lastRun() {
+        ArgumentCaptor<Runnable> runnable = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, atLeastOnce()).schedule(runnable.capture(), any(ScheduleOptions.class));
+        List<Runnable> runs = runnable.getAllValues();
+        return runs.get(runs.size() - 1);
+    }
+
+    private List<Instant> scheduledTimes() {
+        ArgumentCaptor<Date> times = ArgumentCaptor.forClass(Date.class);
+        verify(scheduler, atLeastOnce()).AT(times.capture());
+        return times.getAllValues().stream().map(Date::toInstant).collect(Collectors.toList());
+    }
+
+    private static void assertBetween(Instant from, Instant to, Instant time) {
+        assertTrue(!time.isBefore(from.minusMillis(1)) && !time.isAfter(to.plusMillis(1)), time + " not between " + from + " and " + to);
+    }
+}
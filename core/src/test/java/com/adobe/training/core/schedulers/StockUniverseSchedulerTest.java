@@ -0,0 +1,162 @@
+package com.adobe.training.core.schedulers;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.apache.sling.commons.scheduler.ScheduleOptions;
+import org.apache.sling.commons.scheduler.Scheduler;
+import org.apache.sling.event.jobs.JobManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+
+import com.adobe.training.core.StockDataWriterJob;
+import com.adobe.training.core.services.StockFeedClient;
+import com.adobe.training.core.services.StockReferenceIndex;
+import com.adobe.training.core.services.TradingCalendar;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(AemContextExtension.class)
+class StockUniverseSchedulerTest {
+
+    private JobManager jobManager = mock(JobManager.class);
+    private Scheduler scheduler = mock(Scheduler.class);
+    private TradingCalendar tradingCalendar = mock(TradingCalendar.class);
+    private StockFeedClient feedClient = mock(StockFeedClient.class);
+    private StockReferenceIndex referenceIndex = mock(StockReferenceIndex.class);
+
+    private AemContext context;
+    private StockUniverseScheduler fixture;
+    private Runnable tick;
+
+    @BeforeEach
+    void setup(AemContext context) throws Exception {
+        this.context = context;
+        context.create().resource(StockDataWriterJob.STOCK_IMPORT_FOLDER + "/ADBE");
+        context.create().resource(StockDataWriterJob.STOCK_IMPORT_FOLDER + "/MSFT");
+        context.create().resource(StockDataWriterJob.STOCK_IMPORT_FOLDER + "/notes");
+        context.resourceResolver().commit();
+
+        when(scheduler.NOW(anyInt(), anyLong())).thenReturn(mock(ScheduleOptions.class, RETURNS_SELF));
+        when(tradingCalendar.getPhase(any())).thenReturn(TradingCalendar.Phase.OPEN);
+        when(tradingCalendar.getNextPhaseChange(any())).thenReturn(Instant.now().plusSeconds(3600));
+        when(referenceIndex.isReferenced(anyString())).thenReturn(true);
+        context.registerService(JobManager.class, jobManager);
+        context.registerService(Scheduler.class, scheduler);
+        context.registerService(TradingCalendar.class, tradingCalendar);
+        context.registerService(StockFeedClient.class, feedClient);
+        context.registerService(StockReferenceIndex.class, referenceIndex);
+    }
+
+    @Test
+    void universeIsReadFromTheStockFolders() {
+        activate(new HashMap<>());
+
+        assertEquals(new HashSet<>(Arrays.asList("ADBE", "MSFT")), fixture.getSymbols());
+
+        fixture.onChange(Arrays.asList(
+                new ResourceChange(ChangeType.ADDED, StockDataWriterJob.STOCK_IMPORT_FOLDER + "/NVDA", false),
+                new ResourceChange(ChangeType.REMOVED, StockDataWriterJob.STOCK_IMPORT_FOLDER + "/MSFT", false)));
+        assertEquals(new HashSet<>(Arrays.asList("ADBE", "NVDA")), fixture.getSymbols());
+    }
+
+    @Test
+    void dueSymbolsAreImportedInBatches() throws Exception {
+        Map<String, Object> config = new HashMap<>();
+        config.put("batch.size", 1);
+        activate(config);
+
+        runWhenDue();
+
+        ArgumentCaptor<Map<String, Object>> jobProps = propsCaptor();
+        verify(jobManager, times(2)).addJob(eq(StockImportScheduler.JOB_TOPIC_STOCKIMPORT_BATCH), jobProps.capture());
+        Set<String> imported = new HashSet<>();
+        for (Map<String, Object> props : jobProps.getAllValues()) {
+            imported.addAll(Arrays.asList((String[]) props.get(StockImportScheduler.JOB_PROP_SYMBOLS)));
+        }
+        assertEquals(new HashSet<>(Arrays.asList("ADBE", "MSFT")), imported);
+
+        //Not due again before the next interval
+        clearInvocations(jobManager);
+        tick.run();
+        verify(jobManager, never()).addJob(anyString(), anyMap());
+    }
+
+    @Test
+    void nothingIsImportedWhileTheMarketIsClosed() throws Exception {
+        when(tradingCalendar.getPhase(any())).thenReturn(TradingCalendar.Phase.CLOSED);
+        activate(new HashMap<>());
+
+        runWhenDue();
+
+        verify(jobManager, never()).addJob(anyString(), anyMap());
+    }
+
+    @Test
+    void unreferencedSymbolIsParkedUntilAPageShowsIt() throws Exception {
+        when(referenceIndex.isReferenced("MSFT")).thenReturn(false);
+        when(referenceIndex.getRevision()).thenReturn(1L);
+        Map<String, Object> config = new HashMap<>();
+        config.put("unreferenced.interval", 0);
+        activate(config);
+
+        runWhenDue();
+        assertEquals(Collections.singletonList("ADBE"), importedSymbols());
+
+        clearInvocations(jobManager);
+        when(referenceIndex.isReferenced("MSFT")).thenReturn(true);
+        when(referenceIndex.getRevision()).thenReturn(2L);
+        tick.run();
+        assertEquals(Collections.singletonList("MSFT"), importedSymbols());
+    }
+
+    private void activate(Map<String, Object> config) {
+        //First imports are spread over one session interval
+        config.put("session.interval", 1);
+        fixture = context.registerInjectActivateService(new StockUniverseScheduler(), config);
+        ArgumentCaptor<Runnable> runnable = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(runnable.capture(), any(ScheduleOptions.class));
+        tick = runnable.getValue();
+    }
+
+    private void runWhenDue() throws InterruptedException {
+        Thread.sleep(1000);
+        tick.run();
+    }
+
+    private List<String> importedSymbols() {
+        ArgumentCaptor<Map<String, Object>> jobProps = propsCaptor();
+        verify(jobManager).addJob(eq(StockImportScheduler.JOB_TOPIC_STOCKIMPORT_BATCH), jobProps.capture());
+        return Arrays.asList((String[]) jobProps.getValue().get(StockImportScheduler.JOB_PROP_SYMBOLS));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<Map<String, Object>> propsCaptor() {
+        return ArgumentCaptor.forClass(Map.class);
+    }
+}
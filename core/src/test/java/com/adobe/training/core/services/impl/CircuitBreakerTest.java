@@ -0,0 +1,95 @@
+package com.adobe.training.core.services.impl;
+
+import org.junit.jupiter.api.Test;
+
+import com.adobe.training.core.services.impl.CircuitBreaker.State;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private long now = 1_000_000L;
+
+    //50% failures of at least 4 calls within 10s opens the circuit for 5s, one probe
+    private CircuitBreaker fixture = new CircuitBreaker(50, 4, 10_000, 10, 5_000, 1, () -> now);
+
+    @Test
+    void opensOnFailureRate() {
+        call(true);
+        call(false);
+        call(true);
+        assertEquals(State.CLOSED, fixture.getState());
+        //2 of 4 failed
+        call(false);
+        assertEquals(State.OPEN, fixture.getState());
+        assertFalse(fixture.tryAcquire());
+    }
+
+    @Test
+    void staysClosedBelowMinimumCalls() {
+        call(false);
+        call(false);
+        call(false);
+        assertEquals(State.CLOSED, fixture.getState());
+        assertTrue(fixture.tryAcquire());
+    }
+
+    @Test
+    void oldFailuresLeaveTheWindow() {
+        call(false);
+        call(false);
+        call(false);
+        now += 11_000;
+        call(true);
+        call(true);
+        call(true);
+        call(false);
+        assertEquals(State.CLOSED, fixture.getState());
+    }
+
+    @Test
+    void halfOpenProbeClosesOnSuccess() {
+        open();
+        now += 5_000;
+        assertEquals(State.HALF_OPEN, fixture.getState());
+        assertTrue(fixture.tryAcquire());
+        //Only one probe at a time
+        assertFalse(fixture.tryAcquire());
+        fixture.onSuccess();
+        assertEquals(State.CLOSED, fixture.getState());
+        //The window was cleared, a single failure does not open again
+        call(false);
+        assertEquals(State.CLOSED, fixture.getState());
+    }
+
+    @Test
+    void halfOpenProbeReopensOnFailure() {
+        open();
+        now += 5_000;
+        assertTrue(fixture.tryAcquire());
+        fixture.onFailure();
+        assertEquals(State.OPEN, fixture.getState());
+        now += 4_999;
+        assertFalse(fixture.tryAcquire());
+        now += 1;
+        assertTrue(fixture.tryAcquire());
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            call(false);
+        }
+        assertEquals(State.OPEN, fixture.getState());
+    }
+
+    private void call(boolean success) {
+        assertTrue(fixture.tryAcquire());
+        if (success) {
+            fixture.onSuccess();
+        } else {
+            fixture.onFailure();
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.adobe.training.core.services.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.adobe.training.core.services.PageImporter;
+import com.adobe.training.core.services.PageRow;
+import com.day.cq.wcm.api.NameConstants;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(AemContextExtension.class)
+class PageImporterImplTest {
+
+    private AemContext context;
+    private PageImporterImpl fixture;
+
+    @BeforeEach
+    void setup(AemContext context) {
+        this.context = context;
+        context.create().page("/content/training");
+        context.create().resource(PageImporter.DEFAULT_TEMPLATE_PATH);
+        fixture = context.registerInjectActivateService(new PageImporterImpl());
+    }
+
+    @Test
+    void validRowsMayCreateTheParentsOfOtherRows() throws IOException {
+        List<Map<String, String>> report = validate(
+                "/content/training/us/en,English,,\n"
+                + "/content/training/us,\"United States, Inc.\"," + PageImporter.DEFAULT_TEMPLATE_PATH + ",\n");
+
+        assertEquals("Valid", report.get(0).get("Status"));
+        assertEquals("Valid", report.get(1).get("Status"));
+        assertNull(report.get(0).get("Error"));
+    }
+
+    @Test
+    void invalidRowsAreReported() throws IOException {
+        List<Map<String, String>> report = validate(
+                "/content/training/de,DE,,\n"
+                + "/content/missing/page,Missing,,\n"
+                + "/content/training/de,Again,,\n"
+                + "/content/training,Exists,,\n"
+                + "/content/training/fr,FR,/conf/training/settings/wcm/templates/none,\n"
+                + ",No path,,\n");
+
+        assertEquals("Valid", report.get(0).get("Status"));
+        assertEquals("Parent path doesn't exist: /content/missing", report.get(1).get("Error"));
+        assertEquals("Duplicate of row 1", report.get(2).get("Error"));
+        assertEquals("Page already exists: /content/training", report.get(3).get("Error"));
+        assertEquals("The template /conf/training/settings/wcm/templates/none does not exist.", report.get(4).get("Error"));
+        assertEquals("Page path not provided", report.get(5).get("Error"));
+        for (int i = 1; i < report.size(); i++) {
+            assertEquals("Invalid", report.get(i).get("Status"));
+        }
+    }
+
+    @Test
+    void rowsBelowAnInvalidRowAreInvalid() throws IOException {
+        List<Map<String, String>> report = validate(
+                "/content/training/fr/fr,French,,\n"
+                + "/content/training/fr,France,/conf/training/settings/wcm/templates/none,\n");
+
+        assertEquals("Invalid", report.get(1).get("Status"));
+        assertEquals("Invalid", report.get(0).get("Status"));
+        assertEquals("Parent path doesn't exist: /content/training/fr (row 2 is invalid)", report.get(0).get("Error"));
+    }
+
+    @Test
+    void importRowsSavesEveryRowOnItsOwn() throws IOException {
+        List<String> handled = new ArrayList<>();
+        fixture.importRows(context.resourceResolver(), rows(
+                "/content/missing/page,Missing,,\n"
+                + "/content/training/de,DE,,\n").iterator(), false,
+                (row, result) -> handled.add(row.getPath() + " " + result.get("Status")));
+
+        assertEquals(Arrays.asList("/content/missing/page Error", "/content/training/de Successful"), handled);
+        assertFalse(context.resourceResolver().hasChanges());
+        assertEquals("DE", context.pageManager().getPage("/content/training/de").getTitle());
+    }
+
+    @Test
+    void malformedTagIsAWarning() throws IOException {
+        List<Map<String, String>> report = validate("/content/training/it,IT,,notatag\n");
+
+        assertEquals("Valid", report.get(0).get("Status"));
+        assertEquals("Tag path malformed and not added: notatag", report.get(0).get("Warning"));
+    }
+
+    @Test
+    void existingPageIsValidForUpsert() throws IOException {
+        List<Map<String, String>> report = fixture.validate(context.resourceResolver(),
+                PageRow.readRows(new StringReader("/content/training,Training,,\n")), true);
+
+        assertEquals("Valid", report.get(0).get("Status"));
+    }
+
+    @Test
+    void upsertSkipsUnchangedPage() throws IOException {
+        context.create().page("/content/training/us", PageImporter.DEFAULT_TEMPLATE_PATH, "United States");
+        context.resourceResolver().commit();
+
+        Map<String, String> result = upsert("/content/training/us,United States,,\n");
+
+        assertEquals("Unchanged", result.get("Status"));
+        assertFalse(context.resourceResolver().hasChanges());
+    }
+
+    @Test
+    void upsertUpdatesOnlyWhatDiffers() throws IOException {
+        context.create().page("/content/training/us", PageImporter.DEFAULT_TEMPLATE_PATH, "United States");
+
+        Map<String, String> result = upsert("/content/training/us,\"United States, Inc.\",,\n");
+
+        assertEquals("Updated", result.get("Status"));
+        assertEquals("title", result.get("Changed"));
+        assertEquals("United States, Inc.", context.pageManager().getPage("/content/training/us").getTitle());
+        assertEquals(PageImporter.DEFAULT_TEMPLATE_PATH, context.pageManager().getPage("/content/training/us")
+                .getProperties().get(NameConstants.PN_TEMPLATE, String.class));
+    }
+
+    @Test
+    void upsertKeepsTheTemplateOfRowsWithoutOne() throws IOException {
+        String template = "/conf/training/settings/wcm/templates/landing";
+        context.create().resource(template);
+        context.create().page("/content/training/us", template, "United States");
+        context.resourceResolver().commit();
+
+        Map<String, String> result = upsert("/content/training/us,United States,,\n");
+
+        assertEquals("Unchanged", result.get("Status"));
+        assertEquals(template, context.pageManager().getPage("/content/training/us")
+                .getProperties().get(NameConstants.PN_TEMPLATE, String.class));
+    }
+
+    @Test
+    void bulkCreatesParentsBeforeChildren() throws IOException {
+        List<String> handled = new ArrayList<>();
+        fixture.importBulk(context.resourceResolver(), rows(
+                "/content/training/us/en/men,Men,,\n"
+                + "/content/training/us/en,English,,\n"
+                + "/content/training/de,DE,,\n"
+                + "/content/training/us,United States,,\n"), 2, false,
+                (row, result) -> handled.add(row.getPath() + " " + result.get("Status")));
+
+        assertEquals(Arrays.asList(
+                "/content/training/de Successful",
+                "/content/training/us Successful",
+                "/content/training/us/en Successful",
+                "/content/training/us/en/men Successful"), handled);
+        assertFalse(context.resourceResolver().hasChanges());
+    }
+
+    @Test
+    void failedChunkIsRetriedRowByRow() throws IOException {
+        List<Integer> commits = new ArrayList<>();
+        List<String> handled = new ArrayList<>();
+        PageImporter.RowHandler handler = new PageImporter.RowHandler() {
+            @Override
+            public void beforeCommit(ResourceResolver resourceResolver, List<PageRow> rows,
+                    List<Map<String, String>> results) throws PersistenceException {
+                commits.add(rows.size());
+                for (PageRow row : rows) {
+                    if (row.getPath().endsWith("/fr")) {
+                        throw new PersistenceException("Constraint violation");
+                    }
+                }
+            }
+
+            @Override
+            public void onResult(PageRow row, Map<String, String> result) {
+                handled.add(row.getPath() + " " + result.get("Status"));
+            }
+        };
+
+        fixture.importBulk(context.resourceResolver(), rows(
+                "/content/training/de,DE,,\n"
+                + "/content/training/fr,FR,,\n"
+                + "/content/training/it,IT,,\n"), 3, false, handler);
+
+        //The chunk, then de, fr and the error of fr, then it
+        assertEquals(Arrays.asList(3, 1, 1, 1, 1), commits);
+        assertEquals(Arrays.asList(
+                "/content/training/de Successful",
+                "/content/training/fr Error",
+                "/content/training/it Successful"), handled);
+        assertNotNull(context.pageManager().getPage("/content/training/de"));
+        assertNull(context.pageManager().getPage("/content/training/fr"));
+        assertNotNull(context.pageManager().getPage("/content/training/it"));
+    }
+
+    @Test
+    void partitionsAreCreatedAfterTheSharedRows() throws IOException {
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        fixture.importParallel(context.resourceResolver(), rows(
+                "/content/training/us/en/men,Men,,\n"
+                + "/content/training/us/en,English,,\n"
+                + "/content/training/us,United States,,\n"
+                + "/content/training/us/en/women,Women,,\n"), 1, 3, false,
+                (row, result) -> handled.add(row.getPath() + " " + result.get("Status")));
+
+        assertEquals(Arrays.asList(
+                "/content/training/us Successful",
+                "/content/training/us/en Successful",
+                "/content/training/us/en/men Successful",
+                "/content/training/us/en/women Successful"), handled);
+    }
+
+    @Test
+    void failedPartitionStopsTheImport() {
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        PageImporter.RowHandler handler = (row, result) -> {
+            if (row.getDepth() > 3) {
+                throw new IOException("Client went away");
+            }
+            handled.add(row.getPath());
+        };
+
+        IOException e = assertThrows(IOException.class, () -> fixture.importParallel(context.resourceResolver(), rows(
+                "/content/training/us,United States,,\n"
+                + "/content/training/us/en,English,,\n"
+                + "/content/training/us/en/men,Men,,\n"), 1, 3, false, handler));
+
+        assertEquals("Client went away", e.getCause().getMessage());
+        assertEquals(Collections.singletonList("/content/training/us"), handled);
+        assertNull(context.resourceResolver().getResource("/content/training/us/en/men"));
+    }
+
+    @Test
+    void deactivationEndsAWaitingImport() throws Exception {
+        //More partitions than workers, every worker blocks in its first partition
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            csv.append("/content/training/p").append(i).append(",P").append(i).append(",,\n");
+            csv.append("/content/training/p").append(i).append("/en,English,,\n");
+        }
+        CountDownLatch started = new CountDownLatch(1);
+        PageImporter.RowHandler handler = (row, result) -> {
+            if (row.getDepth() > 3) {
+                started.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("Worker interrupted");
+                }
+            }
+        };
+        List<PageRow> rows = rows(csv.toString());
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> result = caller.submit(() -> {
+                fixture.importParallel(context.resourceResolver(), rows, 1, 3, false, handler);
+                return null;
+            });
+            started.await();
+
+            fixture.deactivate();
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof IOException);
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    private static List<PageRow> rows(String csv) throws IOException {
+        return PageRow.readRows(new StringReader(csv));
+    }
+
+    private List<Map<String, String>> validate(String csv) throws IOException {
+        return fixture.validate(context.resourceResolver(), PageRow.readRows(new StringReader(csv)), false);
+    }
+
+    private Map<String, String> upsert(String csv) throws IOException {
+        return fixture.createPage(context.resourceResolver(), PageRow.readRows(new StringReader(csv)).get(0), true, true);
+    }
+}
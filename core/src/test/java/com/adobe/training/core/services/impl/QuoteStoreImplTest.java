@@ -0,0 +1,76 @@
+package com.adobe.training.core.services.impl;
+
+import java.util.Collections;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.adobe.training.core.StockDataWriterJob;
+import com.adobe.training.core.services.QuoteListener;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(AemContextExtension.class)
+class QuoteStoreImplTest {
+
+    private static final String TRADE_PATH = "/content/stocks/ADBE/trade";
+
+    private AemContext context;
+    private QuoteListener listener = mock(QuoteListener.class);
+    private QuoteStoreImpl fixture;
+
+    @BeforeEach
+    void setup(AemContext context) throws Exception {
+        this.context = context;
+        context.create().resource(TRADE_PATH,
+                StockDataWriterJob.LASTTRADE, 262.7,
+                StockDataWriterJob.LATESTUPDATE, 1553192968000L);
+        context.resourceResolver().commit();
+        context.registerService(QuoteListener.class, listener);
+        fixture = context.registerInjectActivateService(new QuoteStoreImpl());
+        clearInvocations(listener);
+    }
+
+    @Test
+    void tradesAreLoadedOnActivation() {
+        assertEquals(262.7, fixture.get("ADBE").getLatestPrice());
+    }
+
+    @Test
+    void localRemovalRemovesTheSymbol() {
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.REMOVED, "/content/stocks/ADBE", false)));
+
+        assertNull(fixture.get("ADBE"));
+        assertEquals(0, fixture.getAll().size());
+        verify(listener).onRemove("ADBE");
+    }
+
+    @Test
+    void localTradeChangeIsNotReadBack() throws Exception {
+        context.resourceResolver().getResource(TRADE_PATH).adaptTo(ModifiableValueMap.class)
+                .put(StockDataWriterJob.LASTTRADE, 270.0);
+        context.resourceResolver().commit();
+
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, TRADE_PATH, false)));
+        assertEquals(262.7, fixture.get("ADBE").getLatestPrice());
+        verify(listener, never()).onQuote(anyString(), any());
+
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, TRADE_PATH, true)));
+        assertNotNull(fixture.get("ADBE"));
+        assertEquals(270.0, fixture.get("ADBE").getLatestPrice());
+    }
+}
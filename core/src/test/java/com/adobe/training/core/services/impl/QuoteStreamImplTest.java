@@ -0,0 +1,249 @@
+package com.adobe.training.core.services.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.commons.metrics.MetricsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.adobe.training.core.services.QuoteStore;
+import com.adobe.training.core.services.QuoteStream;
+import com.adobe.training.core.services.StockQuote;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@ExtendWith(AemContextExtension.class)
+class QuoteStreamImplTest {
+
+    private static final int SUBSCRIBERS = 10000;
+
+    private QuoteStreamImpl fixture;
+
+    @BeforeEach
+    void setup(AemContext context) {
+        context.registerService(QuoteStore.class, mock(QuoteStore.class));
+        context.registerService(MetricsService.class, MetricsService.NOOP);
+        fixture = context.registerInjectActivateService(new QuoteStreamImpl(),
+                "max.subscriptions", SUBSCRIBERS + 1,
+                "queue.size", 2);
+    }
+
+    @Test
+    void updateIsSerializedOnceForAllSubscribers() throws Exception {
+        List<QuoteStream.Subscription> subscriptions = new ArrayList<>(SUBSCRIBERS);
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            subscriptions.add(fixture.subscribe(Collections.singletonList("ADBE")));
+        }
+        fixture.onQuote("ADBE", quote(262.7, 1553192968000L));
+
+        byte[] event = subscriptions.get(0).next(1, TimeUnit.SECONDS);
+        String text = new String(event, StandardCharsets.UTF_8);
+        assertTrue(text.startsWith("id: 1553192968000\nevent: quote\ndata: {\"symbol\":\"ADBE\""));
+        assertTrue(text.endsWith("}\n\n"));
+        for (QuoteStream.Subscription subscription : subscriptions) {
+            assertSame(event, subscription.next(0, TimeUnit.SECONDS));
+        }
+        subscriptions.forEach(QuoteStream.Subscription::close);
+        assertEquals(0, fixture.getSubscriptionCount());
+    }
+
+    @Test
+    void lastQuoteIsSentToNewSubscribers() throws Exception {
+        fixture.onQuote("ADBE", quote(262.7, 1553192968000L));
+        QuoteStream.Subscription subscription = fixture.subscribe(Collections.singletonList("ADBE"));
+        assertNotNull(subscription.next(0, TimeUnit.SECONDS));
+        assertNull(subscription.next(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void repeatedQuoteIsSentOnce() throws Exception {
+        QuoteStream.Subscription subscription = fixture.subscribe(Collections.singletonList("ADBE"));
+        fixture.onQuote("ADBE", quote(262.7, 1553192968000L));
+        fixture.onQuote("ADBE", quote(262.7, 1553192968000L));
+        assertNotNull(subscription.next(0, TimeUnit.SECONDS));
+        assertNull(subscription.next(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void slowSubscriberIsEvicted() throws Exception {
+        QuoteStream.Subscription slow = fixture.subscribe(Collections.singletonList("ADBE"));
+        QuoteStream.Subscription fast = fixture.subscribe(Collections.singletonList("ADBE"));
+        for (int i = 0; i < 10; i++) {
+            fixture.onQuote("ADBE", quote(260 + i, 1553192968000L + i));
+            assertNotNull(fast.next(0, TimeUnit.SECONDS));
+        }
+        assertTrue(slow.isEvicted());
+        assertFalse(fast.isEvicted());
+        assertEquals(1, fixture.getSubscriptionCount());
+    }
+
+    @Test
+    void subscriptionsAreCapped() {
+        for (int i = 0; i <= SUBSCRIBERS; i++) {
+            assertNotNull(fixture.subscribe(Collections.singletonList("ADBE")));
+        }
+        assertNull(fixture.subscribe(Collections.singletonList("ADBE")));
+    }
+
+    @Test
+    void subscribersChurningDuringPublishGetTheLatestQuote(AemContext context) throws Exception {
+        int quotes = 500;
+        QuoteStreamImpl stream = context.registerInjectActivateService(new QuoteStreamImpl(),
+                "max.subscriptions", SUBSCRIBERS,
+                "queue.size", quotes + 1);
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<QuoteStream.Subscription>> churners = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                //Closing the only subscriber of a symbol removes its set while others subscribe
+                churners.add(executor.submit(() -> {
+                    start.await();
+                    QuoteStream.Subscription open = null;
+                    for (int i = 0; i < 200; i++) {
+                        QuoteStream.Subscription next = stream.subscribe(Collections.singletonList("ADBE"));
+                        if (open != null) {
+                            open.close();
+                        }
+                        open = next;
+                    }
+                    return open;
+                }));
+            }
+            Future<?> publisher = executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < quotes; i++) {
+                    stream.onQuote("ADBE", quote(200 + i, 1553192968000L + i));
+                }
+                return null;
+            });
+            start.countDown();
+            publisher.get(10, TimeUnit.SECONDS);
+            List<QuoteStream.Subscription> remaining = new ArrayList<>();
+            for (Future<QuoteStream.Subscription> churner : churners) {
+                remaining.add(churner.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(remaining.size(), stream.getSubscriptionCount());
+
+            stream.onQuote("ADBE", quote(100, 1553193968000L));
+            byte[] last = stream.toEvent("ADBE", quote(100, 1553193968000L));
+            for (QuoteStream.Subscription subscription : remaining) {
+                assertFalse(subscription.isEvicted());
+                assertArrayEquals(last, lastEvent(subscription));
+                subscription.close();
+            }
+            assertEquals(0, stream.getSubscriptionCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void slowSubscribersAreEvictedWhileFastOnesGetEveryQuote(AemContext context) throws Exception {
+        int quotes = 150;
+        List<String> symbols = Arrays.asList("ADBE", "MSFT");
+        QuoteStreamImpl stream = context.registerInjectActivateService(new QuoteStreamImpl(),
+                "max.subscriptions", SUBSCRIBERS,
+                "queue.size", 100);
+        //Slow subscribers never read, every publisher may be the one evicting them
+        List<QuoteStream.Subscription> slow = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            slow.add(stream.subscribe(symbols));
+        }
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<QuoteStream.Subscription> fast = new ArrayList<>();
+            List<Future<List<Long>>> received = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                String symbol = symbols.get(i % symbols.size());
+                QuoteStream.Subscription subscription = stream.subscribe(Collections.singletonList(symbol));
+                fast.add(subscription);
+                received.add(executor.submit(() -> {
+                    List<Long> ids = new ArrayList<>();
+                    while (ids.size() < quotes) {
+                        byte[] event = subscription.next(5, TimeUnit.SECONDS);
+                        if (event == null) {
+                            break;
+                        }
+                        ids.add(id(event));
+                    }
+                    return ids;
+                }));
+            }
+            List<Future<?>> publishers = new ArrayList<>();
+            for (String symbol : symbols) {
+                publishers.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < quotes; i++) {
+                        stream.onQuote(symbol, quote(200 + i, 1553192968000L + i));
+                        if (i % 10 == 0) {
+                            //Leaves the readers a chance to keep up
+                            Thread.sleep(1);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> publisher : publishers) {
+                publisher.get(10, TimeUnit.SECONDS);
+            }
+
+            List<Long> expected = new ArrayList<>();
+            for (int i = 0; i < quotes; i++) {
+                expected.add(1553192968000L + i);
+            }
+            for (Future<List<Long>> ids : received) {
+                assertEquals(expected, ids.get(10, TimeUnit.SECONDS));
+            }
+            assertTrue(slow.stream().allMatch(QuoteStream.Subscription::isEvicted));
+            assertTrue(fast.stream().noneMatch(QuoteStream.Subscription::isEvicted));
+            //An evicted subscriber is only counted off once
+            assertEquals(fast.size(), stream.getSubscriptionCount());
+            fast.forEach(QuoteStream.Subscription::close);
+            assertEquals(0, stream.getSubscriptionCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static byte[] lastEvent(QuoteStream.Subscription subscription) throws InterruptedException {
+        byte[] last = null;
+        for (byte[] event = subscription.next(0, TimeUnit.SECONDS); event != null; event = subscription.next(0, TimeUnit.SECONDS)) {
+            last = event;
+        }
+        return last;
+    }
+
+    private static long id(byte[] event) {
+        String text = new String(event, StandardCharsets.UTF_8);
+        return Long.parseLong(text.substring("id: ".length(), text.indexOf('\n')));
+    }
+
+    private static StockQuote quote(double lastTrade, long latestUpdate) {
+        StockQuote quote = new StockQuote();
+        quote.setLatestPrice(lastTrade);
+        quote.setLatestUpdate(latestUpdate);
+        return quote;
+    }
+}
@@ -0,0 +1,174 @@
+package com.adobe.training.core.services.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.junit.jupiter.api.Test;
+
+import com.adobe.training.core.StockDataWriterJob;
+import com.adobe.training.core.services.StockQuote;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RollingAnalyticsTest {
+
+    //Mon 2019-03-25 10:00 EDT
+    private static final long MORNING = 1553522400000L;
+    private static final long MINUTE = 60_000L;
+    private static final long DAY = 24 * 60 * MINUTE;
+
+    private final List<String> writes = new ArrayList<>();
+    private final ValueMap state = new ValueMapDecorator(new HashMap<String, Object>() {
+        @Override
+        public Object put(String key, Object value) {
+            writes.add(key);
+            return super.put(key, value);
+        }
+    });
+
+    @Test
+    void smaOverLastTicks() {
+        int[] sma = {3};
+        tick(sma, 10, 0, 1);
+        tick(sma, 11, 0, 2);
+        assertNull(state.get("sma3"));
+        tick(sma, 12, 0, 3);
+        assertEquals(11, state.get("sma3", Double.class), 1e-9);
+        tick(sma, 16, 0, 4);
+        assertEquals(13, state.get("sma3", Double.class), 1e-9);
+    }
+
+    @Test
+    void smaSurvivesResizedWindows() {
+        for (int i = 1; i <= 5; i++) {
+            tick(new int[] {5}, i, 0, i);
+        }
+        //Only the last two of 1..5 plus the new tick
+        tick(new int[] {3}, 6, 0, 6);
+        assertEquals(5, state.get("sma3", Double.class), 1e-9);
+        assertEquals(3, state.get(RollingAnalytics.RING_SIZE, Integer.class));
+        assertFalse(state.containsKey(RollingAnalytics.SLOT_PREFIX + 3));
+    }
+
+    @Test
+    void tickWritesOnlyTheReplacedSlot() {
+        int[] sma = {3};
+        for (int i = 1; i <= 4; i++) {
+            tick(sma, i, 0, i);
+        }
+        writes.clear();
+        tick(sma, 5, 0, 5);
+
+        assertEquals(1, writes.stream().filter(key -> key.matches(RollingAnalytics.SLOT_PREFIX + "\\d+")).count());
+        //Slot of tick 2, the oldest of 2, 3, 4
+        assertEquals(5, state.get(RollingAnalytics.SLOT_PREFIX + 1, Double.class), 1e-9);
+        assertEquals(4, state.get("sma3", Double.class), 1e-9);
+    }
+
+    @Test
+    void ringOfEarlierVersionsIsMigrated() {
+        state.put(RollingAnalytics.PRICES, new Double[] {1d, 2d, 3d});
+        state.put(RollingAnalytics.RING_POSITION, 0);
+        state.put(RollingAnalytics.RING_COUNT, 3);
+        state.put("sma3Sum", 6d);
+
+        tick(new int[] {3}, 4, 0, 1);
+
+        assertFalse(state.containsKey(RollingAnalytics.PRICES));
+        assertEquals(3, state.get("sma3", Double.class), 1e-9);
+    }
+
+    @Test
+    void windowsThatAreNoLongerConfiguredAreRemoved() {
+        for (int i = 1; i <= 3; i++) {
+            RollingAnalytics.update(state, quote(i, 0, MORNING + i * MINUTE), new int[] {2, 3}, new int[] {3});
+        }
+        assertTrue(state.containsKey("sma3"));
+
+        RollingAnalytics.update(state, quote(4, 0, MORNING + 4 * MINUTE), new int[] {2}, new int[0]);
+
+        assertFalse(state.containsKey("sma3"));
+        assertFalse(state.containsKey("sma3Sum"));
+        assertFalse(state.containsKey("ema3"));
+        assertEquals(3.5, state.get("sma2", Double.class), 1e-9);
+        assertFalse(state.containsKey(RollingAnalytics.SLOT_PREFIX + 2));
+    }
+
+    @Test
+    void indicatorsOfWindowsThatAreNoLongerConfiguredAreNotExported() {
+        tick(new int[] {1}, 10, 0, 1);
+        //Left over from an earlier configuration, the next tick removes it
+        state.put("sma5", 9d);
+
+        Map<String, Double> indicators = RollingAnalytics.indicators(state);
+        assertTrue(indicators.containsKey("sma1"));
+        assertFalse(indicators.containsKey("sma5"));
+    }
+
+    @Test
+    void emaSeededWithFirstPrice() {
+        RollingAnalytics.update(state, quote(10, 0, MORNING), new int[0], new int[] {3});
+        assertEquals(10, state.get("ema3", Double.class), 1e-9);
+        RollingAnalytics.update(state, quote(20, 0, MORNING + MINUTE), new int[0], new int[] {3});
+        //alpha = 0.5
+        assertEquals(15, state.get("ema3", Double.class), 1e-9);
+    }
+
+    @Test
+    void vwapWeightsVolumeSincePreviousTick() {
+        RollingAnalytics.update(state, quote(10, 100, MORNING), new int[0], new int[0]);
+        RollingAnalytics.update(state, quote(20, 400, MORNING + MINUTE), new int[0], new int[0]);
+        //(10 * 100 + 20 * 300) / 400
+        assertEquals(17.5, state.get(StockDataWriterJob.VWAP, Double.class), 1e-9);
+
+        //The next trading day starts over
+        RollingAnalytics.update(state, quote(30, 50, MORNING + DAY), new int[0], new int[0]);
+        assertEquals(30, state.get(StockDataWriterJob.VWAP, Double.class), 1e-9);
+    }
+
+    @Test
+    void distanceFromWeek52Range() {
+        StockQuote quote = quote(90, 0, MORNING);
+        quote.setWeek52High(100);
+        quote.setWeek52Low(60);
+        RollingAnalytics.update(state, quote, new int[0], new int[0]);
+        assertEquals(-10, state.get(StockDataWriterJob.FROMWEEK52HIGH, Double.class), 1e-9);
+        assertEquals(50, state.get(StockDataWriterJob.FROMWEEK52LOW, Double.class), 1e-9);
+    }
+
+    @Test
+    void olderTicksAreIgnored() {
+        assertTrue(RollingAnalytics.update(state, quote(10, 0, MORNING), new int[] {2}, new int[0]));
+        assertFalse(RollingAnalytics.update(state, quote(11, 0, MORNING), new int[] {2}, new int[0]));
+        assertEquals(1, state.get(RollingAnalytics.RING_COUNT, Integer.class));
+    }
+
+    @Test
+    void indicatorsWithoutState() {
+        tick(new int[] {1}, 10, 100, 1);
+        Map<String, Double> indicators = RollingAnalytics.indicators(state);
+        assertEquals(10, indicators.get("sma1"), 1e-9);
+        assertEquals(10, indicators.get(StockDataWriterJob.VWAP), 1e-9);
+        assertFalse(indicators.containsKey("sma1Sum"));
+        assertFalse(indicators.containsKey(RollingAnalytics.VWAP_VOLUME));
+    }
+
+    private void tick(int[] smaWindows, double price, long volume, int minute) {
+        RollingAnalytics.update(state, quote(price, volume, MORNING + minute * MINUTE), smaWindows, new int[0]);
+    }
+
+    private static StockQuote quote(double price, long volume, long latestUpdate) {
+        StockQuote quote = new StockQuote();
+        quote.setLatestPrice(price);
+        quote.setLatestVolume(volume);
+        quote.setLatestUpdate(latestUpdate);
+        return quote;
+    }
+}
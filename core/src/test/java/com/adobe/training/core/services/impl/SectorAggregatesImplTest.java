@@ -0,0 +1,101 @@
+package com.adobe.training.core.services.impl;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.adobe.training.core.services.QuoteStore;
+import com.adobe.training.core.services.SectorSummary;
+import com.adobe.training.core.services.StockQuote;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(AemContextExtension.class)
+class SectorAggregatesImplTest {
+
+    private SectorAggregatesImpl fixture;
+
+    @BeforeEach
+    void setup(AemContext context) {
+        QuoteStore quoteStore = mock(QuoteStore.class);
+        when(quoteStore.getAll()).thenReturn(Collections.singletonList(quote("ADBE", "Technology", 110, 10, 1000, 1)));
+        context.registerService(QuoteStore.class, quoteStore);
+        fixture = context.registerInjectActivateService(new SectorAggregatesImpl());
+    }
+
+    @Test
+    void seededFromQuoteStore() {
+        SectorSummary technology = fixture.getSectors().get(0);
+        assertEquals("Technology", technology.getSector());
+        assertEquals(1, technology.getCount());
+        assertEquals(10, technology.getAverageChangePercent(), 1e-9);
+        assertEquals(1, technology.getAdvancers());
+        assertEquals(1000, technology.getTotalVolume());
+    }
+
+    @Test
+    void newQuoteReplacesOldContribution() {
+        fixture.onQuote("MSFT", quote("MSFT", "Technology", 95, -5, 500, 2));
+        fixture.onQuote("ADBE", quote("ADBE", "Technology", 100, 0, 1500, 3));
+
+        SectorSummary technology = fixture.getSectors().get(0);
+        assertEquals(2, technology.getCount());
+        assertEquals(-2.5, technology.getAverageChangePercent(), 1e-9);
+        assertEquals(0, technology.getAdvancers());
+        assertEquals(1, technology.getDecliners());
+        assertEquals(1, technology.getUnchanged());
+        assertEquals(2000, technology.getTotalVolume());
+    }
+
+    @Test
+    void sectorChangeMovesSymbol() {
+        fixture.onQuote("ADBE", quote("ADBE", "Software", 110, 10, 1200, 2));
+        List<SectorSummary> sectors = fixture.getSectors();
+        assertEquals(1, sectors.size());
+        assertEquals("Software", sectors.get(0).getSector());
+        assertEquals(1200, sectors.get(0).getTotalVolume());
+    }
+
+    @Test
+    void removedSymbolIsSubtracted() {
+        fixture.onRemove("ADBE");
+        assertTrue(fixture.getSectors().isEmpty());
+    }
+
+    @Test
+    void olderQuoteIsIgnored() {
+        fixture.onQuote("ADBE", quote("ADBE", "Technology", 90, -10, 2000, 0));
+        assertEquals(1000, fixture.getSectors().get(0).getTotalVolume());
+    }
+
+    @Test
+    void summariesAreSharedUntilChanged() {
+        List<SectorSummary> sectors = fixture.getSectors();
+        long version = fixture.getVersion();
+        assertSame(sectors, fixture.getSectors());
+        fixture.onQuote("ADBE", quote("ADBE", "Technology", 111, 11, 1100, 2));
+        assertNotEquals(version, fixture.getVersion());
+        assertEquals(1100, fixture.getSectors().get(0).getTotalVolume());
+    }
+
+    private static StockQuote quote(String symbol, String sector, double price, double change, long volume, long latestUpdate) {
+        StockQuote quote = new StockQuote();
+        quote.setSymbol(symbol);
+        quote.setSector(sector);
+        quote.setLatestPrice(price);
+        quote.setChange(change);
+        quote.setLatestVolume(volume);
+        quote.setLatestUpdate(latestUpdate);
+        return quote;
+    }
+}
@@ -0,0 +1,171 @@
+package com.adobe.training.core.services.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.osgi.services.HttpClientBuilderFactory;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(AemContextExtension.class)
+class StockFeedClientImplTest {
+
+    private static final String FEED = "http://localhost/stock-data/";
+    private static final String ETAG = "\"v1\"";
+    private static final String LAST_MODIFIED = "Thu, 21 Mar 2019 18:29:28 GMT";
+    private static final String BODY = "{\"symbol\":\"ADBE\"}";
+
+    private CloseableHttpClient httpClient = mock(CloseableHttpClient.class);
+    private CloseableHttpClient reconfiguredClient = mock(CloseableHttpClient.class);
+    private AemContext context;
+    private StockFeedClientImpl fixture;
+
+    @BeforeEach
+    void setup(AemContext context) {
+        this.context = context;
+        HttpClientBuilder builder = mock(HttpClientBuilder.class, RETURNS_SELF);
+        when(builder.build()).thenReturn(httpClient, reconfiguredClient);
+        HttpClientBuilderFactory builderFactory = mock(HttpClientBuilderFactory.class);
+        when(builderFactory.newBuilder()).thenReturn(builder);
+        context.registerService(HttpClientBuilderFactory.class, builderFactory);
+        context.registerService(MetricsService.class, MetricsService.NOOP);
+        fixture = context.registerInjectActivateService(new StockFeedClientImpl());
+    }
+
+    @Test
+    void unchangedQuoteIsAnsweredWithNotModified() throws Exception {
+        when(httpClient.execute(any(HttpUriRequest.class))).thenReturn(
+                response(HttpStatus.SC_OK, BODY,
+                        new BasicHeader(HttpHeaders.ETAG, ETAG),
+                        new BasicHeader(HttpHeaders.LAST_MODIFIED, LAST_MODIFIED)),
+                response(HttpStatus.SC_NOT_MODIFIED, null));
+
+        assertArrayEquals(BODY.getBytes(StandardCharsets.UTF_8), fixture.fetch(FEED, "ADBE"));
+        assertEquals(0, fixture.getUnchangedCount(FEED, "ADBE"));
+        assertNull(fixture.fetch(FEED, "ADBE"));
+        assertEquals(1, fixture.getUnchangedCount(FEED, "ADBE"));
+
+        List<HttpUriRequest> requests = requests(2);
+        assertEquals(FEED + "ADBE.json", requests.get(0).getURI().toString());
+        assertNull(requests.get(0).getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+        assertEquals(ETAG, requests.get(1).getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue());
+        assertEquals(LAST_MODIFIED, requests.get(1).getFirstHeader(HttpHeaders.IF_MODIFIED_SINCE).getValue());
+    }
+
+    @Test
+    void invalidatedSymbolIsFetchedUnconditionally() throws Exception {
+        when(httpClient.execute(any(HttpUriRequest.class))).thenReturn(
+                response(HttpStatus.SC_OK, BODY, new BasicHeader(HttpHeaders.ETAG, ETAG)),
+                response(HttpStatus.SC_OK, BODY, new BasicHeader(HttpHeaders.ETAG, ETAG)));
+
+        fixture.fetch(FEED, "ADBE");
+        fixture.invalidate(FEED, "ADBE");
+        fixture.fetch(FEED, "ADBE");
+
+        assertNull(requests(2).get(1).getFirstHeader(HttpHeaders.IF_NONE_MATCH));
+    }
+
+    @Test
+    void samePayloadWithoutValidatorsCountsAsUnchanged() throws Exception {
+        when(httpClient.execute(any(HttpUriRequest.class))).thenReturn(
+                response(HttpStatus.SC_OK, BODY),
+                response(HttpStatus.SC_OK, BODY),
+                response(HttpStatus.SC_OK, "{\"symbol\":\"ADBE\",\"latestPrice\":270}"));
+
+        fixture.fetch(FEED, "ADBE");
+        fixture.fetch(FEED, "ADBE");
+        assertEquals(1, fixture.getUnchangedCount(FEED, "ADBE"));
+        fixture.fetch(FEED, "ADBE");
+        assertEquals(0, fixture.getUnchangedCount(FEED, "ADBE"));
+    }
+
+    @Test
+    void reconfigurationClosesTheOldClientAfterTheNewOneIsInUse() throws Exception {
+        when(reconfiguredClient.execute(any(HttpUriRequest.class))).thenReturn(response(HttpStatus.SC_OK, BODY));
+
+        MockOsgi.modified(fixture, context.bundleContext(), Collections.singletonMap("max.connections", 5));
+
+        verify(httpClient).close();
+        assertArrayEquals(BODY.getBytes(StandardCharsets.UTF_8), fixture.fetch(FEED, "ADBE"));
+        verify(httpClient, never()).execute(any(HttpUriRequest.class));
+    }
+
+    @Test
+    void runtimeExceptionOfAHalfOpenProbeReopensTheBreaker() throws Exception {
+        //Opens on the first failure and lets a probe through right away
+        Map<String, Object> config = new HashMap<>();
+        config.put("minimum.requests", 1);
+        config.put("open.duration", 0);
+        fixture = context.registerInjectActivateService(new StockFeedClientImpl(), config);
+        when(reconfiguredClient.execute(any(HttpUriRequest.class)))
+                .thenThrow(new IllegalStateException("Connection pool shut down"))
+                .thenThrow(new IllegalStateException("Connection pool shut down"))
+                .thenReturn(response(HttpStatus.SC_OK, BODY));
+
+        assertThrows(IllegalStateException.class, () -> fixture.fetch(FEED, "ADBE"));
+        //The probe fails with a RuntimeException as well, its slot must be released
+        assertThrows(IllegalStateException.class, () -> fixture.fetch(FEED, "ADBE"));
+        assertArrayEquals(BODY.getBytes(StandardCharsets.UTF_8), fixture.fetch(FEED, "ADBE"));
+        assertTrue(fixture.isAvailable());
+    }
+
+    @Test
+    void requestTimeoutCoversConnectionRequestConnectAndRead() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("connect.timeout", 1000);
+        config.put("read.timeout", 3000);
+        MockOsgi.modified(fixture, context.bundleContext(), config);
+
+        assertEquals(5000L, fixture.getRequestTimeout());
+    }
+
+    private List<HttpUriRequest> requests(int count) throws Exception {
+        ArgumentCaptor<HttpUriRequest> captor = ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(httpClient, times(count)).execute(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private static CloseableHttpResponse response(int status, String body, Header... headers) {
+        CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+        when(response.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, status, null));
+        when(response.getEntity()).thenReturn(body != null ? new StringEntity(body, StandardCharsets.UTF_8) : null);
+        for (Header header : headers) {
+            when(response.getFirstHeader(header.getName())).thenReturn(header);
+        }
+        return response;
+    }
+}
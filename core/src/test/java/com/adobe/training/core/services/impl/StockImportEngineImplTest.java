@@ -0,0 +1,180 @@
+package com.adobe.training.core.services.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.adobe.training.core.services.FeedUnavailableException;
+import com.adobe.training.core.services.QuoteStore;
+import com.adobe.training.core.services.StockFeedClient;
+import com.adobe.training.core.services.StockQuote;
+import com.adobe.training.core.services.StockQuoteWriter;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(AemContextExtension.class)
+class StockImportEngineImplTest {
+
+    private static final String FEED = "http://localhost/stock-data/";
+
+    private StockFeedClient feedClient = mock(StockFeedClient.class);
+    private StockQuoteWriter quoteWriter = mock(StockQuoteWriter.class);
+    private QuoteStore quoteStore = mock(QuoteStore.class);
+
+    private AemContext context;
+    private StockImportEngineImpl fixture;
+
+    @BeforeEach
+    void setup(AemContext context) throws Exception {
+        this.context = context;
+        context.registerService(StockFeedClient.class, feedClient);
+        context.registerService(StockQuoteWriter.class, quoteWriter);
+        context.registerService(QuoteStore.class, quoteStore);
+        when(quoteWriter.write(any(ResourceResolver.class), anyString(), any(StockQuote.class))).thenReturn(true);
+        when(feedClient.getRequestTimeout()).thenReturn(10000L);
+
+        fixture = context.registerInjectActivateService(new StockImportEngineImpl(),
+                "fetch.concurrency", 4,
+                "writer.threads", 1,
+                "commit.chunk.size", 10,
+                "write.queue.size", 10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        fixture.deactivate();
+    }
+
+    @Test
+    void outcomePerSymbol() throws Exception {
+        when(feedClient.fetch(FEED, "ADBE")).thenReturn(read("/stock-feed-ADBE.json"));
+        when(feedClient.fetch(FEED, "MSFT")).thenReturn(null);
+        when(feedClient.fetch(FEED, "XXXX")).thenThrow(new IOException("Stock feed answered 404"));
+        when(feedClient.fetch(FEED, "DOWN")).thenThrow(new FeedUnavailableException("open"));
+
+        Map<String, String> outcome = fixture.importSymbols(FEED, Arrays.asList("ADBE", "MSFT", "XXXX", "DOWN"), () -> false);
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("ADBE", "OK");
+        expected.put("MSFT", "UNCHANGED");
+        expected.put("XXXX", "FAILED (Stock feed answered 404)");
+        expected.put("DOWN", "SKIPPED");
+        assertEquals(expected, outcome);
+        assertEquals(Arrays.asList("ADBE", "MSFT", "XXXX", "DOWN"), new ArrayList<>(outcome.keySet()));
+        verify(quoteStore).put(eq("ADBE"), any(StockQuote.class));
+        verify(feedClient).invalidate(FEED, "XXXX");
+    }
+
+    @Test
+    void fetchConcurrencyIsCapped() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        //Stub feed with 20ms latency answering 304
+        when(feedClient.fetch(anyString(), anyString())).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+            return null;
+        });
+
+        List<String> symbols = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            symbols.add("S" + i);
+        }
+        Map<String, String> outcome = fixture.importSymbols(FEED, symbols, () -> false);
+
+        assertEquals(40, outcome.size());
+        assertTrue(outcome.values().stream().allMatch("UNCHANGED"::equals));
+        assertTrue(maxInFlight.get() <= 4, "at most 4 requests in flight");
+    }
+
+    @Test
+    void failedSymbolIsNotCommittedWithTheChunk() throws Exception {
+        when(feedClient.fetch(anyString(), anyString())).thenAnswer(invocation -> read("/stock-feed-ADBE.json"));
+        //The writer fails after it changed the session
+        when(quoteWriter.write(any(ResourceResolver.class), anyString(), any(StockQuote.class))).thenAnswer(invocation -> {
+            String symbol = invocation.getArgument(1);
+            ResourceUtil.getOrCreateResource(invocation.getArgument(0), "/content/stocks/" + symbol + "/trade", "", "", false);
+            if ("FAIL".equals(symbol)) {
+                throw new PersistenceException("Cannot write " + symbol);
+            }
+            return true;
+        });
+
+        Map<String, String> outcome = fixture.importSymbols(FEED, Arrays.asList("ADBE", "FAIL", "MSFT"), () -> false);
+
+        assertEquals("OK", outcome.get("ADBE"));
+        assertEquals("FAILED (Cannot write FAIL)", outcome.get("FAIL"));
+        assertEquals("OK", outcome.get("MSFT"));
+        assertNotNull(context.resourceResolver().getResource("/content/stocks/ADBE/trade"));
+        assertNotNull(context.resourceResolver().getResource("/content/stocks/MSFT/trade"));
+        assertNull(context.resourceResolver().getResource("/content/stocks/FAIL"));
+        verify(quoteWriter).forget("FAIL");
+    }
+
+    @Test
+    void stoppedImportIsCancelled() throws Exception {
+        Map<String, String> outcome = fixture.importSymbols(FEED, Arrays.asList("ADBE", "MSFT"), () -> true);
+
+        assertEquals("CANCELLED", outcome.get("ADBE"));
+        assertEquals("CANCELLED", outcome.get("MSFT"));
+    }
+
+    @Test
+    void symbolWithoutOutcomeTimesOut() throws Exception {
+        CountDownLatch hanging = new CountDownLatch(1);
+        when(feedClient.getRequestTimeout()).thenReturn(100L);
+        when(feedClient.fetch(FEED, "ADBE")).thenReturn(null);
+        //The body trickles in slower than the read timeout notices
+        when(feedClient.fetch(FEED, "SLOW")).thenAnswer(invocation -> {
+            hanging.await();
+            return null;
+        });
+        StockImportEngineImpl engine = context.registerInjectActivateService(new StockImportEngineImpl(),
+                "fetch.concurrency", 4,
+                "write.timeout", 0);
+
+        try {
+            Map<String, String> outcome = engine.importSymbols(FEED, Arrays.asList("ADBE", "SLOW"), () -> false);
+
+            assertEquals("UNCHANGED", outcome.get("ADBE"));
+            assertEquals("FAILED (timeout)", outcome.get("SLOW"));
+            verify(feedClient).invalidate(FEED, "SLOW");
+        } finally {
+            hanging.countDown();
+            engine.deactivate();
+        }
+    }
+
+    private static byte[] read(String name) throws IOException {
+        try (InputStream in = StockImportEngineImplTest.class.getResourceAsStream(name)) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+}
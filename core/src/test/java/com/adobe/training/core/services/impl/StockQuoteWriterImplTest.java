@@ -0,0 +1,125 @@
+package com.adobe.training.core.services.impl;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.commons.metrics.Counter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.adobe.training.core.StockDataWriterJob;
+import com.adobe.training.core.services.StockQuote;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(AemContextExtension.class)
+class StockQuoteWriterImplTest {
+
+    //Mon 2019-03-25 10:00 EDT
+    private static final long MORNING = 1553522400000L;
+    private static final String TRADE = StockDataWriterJob.STOCK_IMPORT_FOLDER + "/ADBE/trade";
+
+    private Counter writesPerformed = mock(Counter.class);
+    private Counter writesSkipped = mock(Counter.class);
+
+    private AemContext context;
+    private ResourceResolver resourceResolver;
+    private StockQuoteWriterImpl fixture;
+
+    @BeforeEach
+    void setup(AemContext context) {
+        this.context = context;
+        resourceResolver = context.resourceResolver();
+        MetricsService metricsService = mock(MetricsService.class);
+        when(metricsService.counter("training.stockimport.writes.performed")).thenReturn(writesPerformed);
+        when(metricsService.counter("training.stockimport.writes.skipped")).thenReturn(writesSkipped);
+        context.registerService(MetricsService.class, metricsService);
+        fixture = context.registerInjectActivateService(new StockQuoteWriterImpl());
+    }
+
+    @Test
+    void newQuoteIsWritten() throws Exception {
+        assertTrue(fixture.write(resourceResolver, "ADBE", quote(270.5, MORNING)));
+        resourceResolver.commit();
+
+        ValueMap trade = resourceResolver.getResource(TRADE).getValueMap();
+        assertEquals(270.5, trade.get(StockDataWriterJob.LASTTRADE, Double.class), 1e-9);
+        assertEquals(MORNING, trade.get(StockDataWriterJob.LATESTUPDATE, Long.class));
+        assertNotNull(trade.get(StockDataWriterJob.FINGERPRINT, String.class));
+        assertNotNull(resourceResolver.getResource(StockDataWriterJob.STOCK_IMPORT_FOLDER + "/ADBE/"
+                + StockDataWriterJob.HISTORY + "/2019/03/25/" + MORNING));
+        verify(writesPerformed).increment();
+        verify(writesSkipped, never()).increment();
+    }
+
+    @Test
+    void unchangedQuoteIsSkipped() throws Exception {
+        fixture.write(resourceResolver, "ADBE", quote(270.5, MORNING));
+        resourceResolver.commit();
+
+        assertFalse(fixture.write(resourceResolver, "ADBE", quote(270.5, MORNING)));
+        assertFalse(resourceResolver.hasChanges());
+        assertTrue(fixture.write(resourceResolver, "ADBE", quote(271, MORNING + 60_000L)));
+
+        verify(writesPerformed, times(2)).increment();
+        verify(writesSkipped).increment();
+    }
+
+    @Test
+    void unchangedQuoteIsSkippedAfterARestart() throws Exception {
+        fixture.write(resourceResolver, "ADBE", quote(270.5, MORNING));
+        resourceResolver.commit();
+
+        //The fingerprint is only known from the trade node
+        StockQuoteWriterImpl restarted = context.registerInjectActivateService(new StockQuoteWriterImpl());
+        assertFalse(restarted.write(resourceResolver, "ADBE", quote(270.5, MORNING)));
+        verify(writesSkipped).increment();
+    }
+
+    @Test
+    void forgottenQuoteIsWrittenAgain() throws Exception {
+        fixture.write(resourceResolver, "ADBE", quote(270.5, MORNING));
+        //The commit failed
+        resourceResolver.revert();
+        fixture.forget("ADBE");
+
+        assertTrue(fixture.write(resourceResolver, "ADBE", quote(270.5, MORNING)));
+        resourceResolver.commit();
+
+        assertNotNull(resourceResolver.getResource(TRADE));
+        verify(writesPerformed, times(2)).increment();
+        verify(writesSkipped, never()).increment();
+    }
+
+    @Test
+    void rememberedQuoteIsSkippedUntilItIsForgotten() throws Exception {
+        fixture.write(resourceResolver, "ADBE", quote(270.5, MORNING));
+        resourceResolver.revert();
+
+        //Without forget the remembered fingerprint still skips the quote
+        assertFalse(fixture.write(resourceResolver, "ADBE", quote(270.5, MORNING)));
+        assertNull(resourceResolver.getResource(TRADE));
+    }
+
+    private static StockQuote quote(double price, long latestUpdate) {
+        StockQuote quote = new StockQuote();
+        quote.setSymbol("ADBE");
+        quote.setCompanyName("Adobe Inc.");
+        quote.setLatestPrice(price);
+        quote.setLatestVolume(1000L);
+        quote.setLatestUpdate(latestUpdate);
+        return quote;
+    }
+}
@@ -0,0 +1,110 @@
+package com.adobe.training.core.services.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.adobe.training.core.models.Stockplex;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(AemContextExtension.class)
+class StockReferenceIndexImplTest {
+
+    private static final String PAGE = "/content/training/us/en";
+    private static final String COMPONENT = PAGE + "/jcr:content/root/stockplex";
+
+    private AemContext context;
+    private StockReferenceIndexImpl fixture;
+
+    @BeforeEach
+    void setup(AemContext context) throws Exception {
+        this.context = context;
+        context.create().resource(PAGE + "/jcr:content");
+        context.create().resource(COMPONENT,
+                "sling:resourceType", Stockplex.RESOURCE_TYPE,
+                "symbol", "ADBE");
+        context.resourceResolver().commit();
+        fixture = context.registerInjectActivateService(new StockReferenceIndexImpl());
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.ADDED, PAGE, false)));
+    }
+
+    @Test
+    void pagesOfSymbol() {
+        assertEquals(Collections.singleton(PAGE), fixture.getPages("ADBE"));
+        assertEquals(Collections.singleton("ADBE"), fixture.getSymbols());
+        assertTrue(fixture.getPages("MSFT").isEmpty());
+    }
+
+    @Test
+    void symbolIsReferencedWhilePagePublished() throws Exception {
+        assertFalse(fixture.isReferenced("ADBE"));
+        long revision = fixture.getRevision();
+
+        setProperty(PAGE + "/jcr:content", "cq:lastReplicationAction", "Activate");
+        assertTrue(fixture.isReferenced("ADBE"));
+        assertNotEquals(revision, fixture.getRevision());
+
+        setProperty(PAGE + "/jcr:content", "cq:lastReplicationAction", "Deactivate");
+        assertFalse(fixture.isReferenced("ADBE"));
+    }
+
+    @Test
+    void changedSymbolIsReindexed() throws Exception {
+        setProperty(COMPONENT, "symbol", "MSFT");
+        assertTrue(fixture.getPages("ADBE").isEmpty());
+        assertEquals(Collections.singleton(PAGE), fixture.getPages("MSFT"));
+    }
+
+    @Test
+    void symbolsAreIndexedInUpperCase() throws Exception {
+        setProperty(COMPONENT, "symbol", " msft ");
+        assertEquals(Collections.singleton("MSFT"), fixture.getSymbols());
+        assertEquals(Collections.singleton(PAGE), fixture.getPages("MSFT"));
+        assertEquals(Collections.singleton(PAGE), fixture.getPages("msft"));
+    }
+
+    @Test
+    void treeAddedOnAnotherClusterNodeIsIndexed() throws Exception {
+        String page = "/content/training/us/de";
+        String component = page + "/jcr:content/root/stockplex";
+        context.create().resource(page + "/jcr:content/root");
+        context.create().resource(component,
+                "sling:resourceType", Stockplex.RESOURCE_TYPE,
+                "symbol", "MSFT");
+        context.resourceResolver().commit();
+
+        //One ADDED change per node of the new tree
+        fixture.onChange(Arrays.asList(
+                new ResourceChange(ChangeType.ADDED, page, true),
+                new ResourceChange(ChangeType.ADDED, page + "/jcr:content", true),
+                new ResourceChange(ChangeType.ADDED, page + "/jcr:content/root", true),
+                new ResourceChange(ChangeType.ADDED, component, true)));
+
+        assertEquals(Collections.singleton(page), fixture.getPages("MSFT"));
+    }
+
+    @Test
+    void removedPageIsDropped() {
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.REMOVED, PAGE, false)));
+        assertTrue(fixture.getPages("ADBE").isEmpty());
+        assertTrue(fixture.getSymbols().isEmpty());
+    }
+
+    private void setProperty(String path, String name, String value) throws Exception {
+        context.resourceResolver().getResource(path).adaptTo(ModifiableValueMap.class).put(name, value);
+        context.resourceResolver().commit();
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, path, false)));
+    }
+}
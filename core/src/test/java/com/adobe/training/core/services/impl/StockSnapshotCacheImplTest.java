@@ -0,0 +1,80 @@
+package com.adobe.training.core.services.impl;
+
+import org.apache.sling.commons.metrics.MetricsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.adobe.training.core.StockDataWriterJob;
+import com.adobe.training.core.services.QuoteStore;
+import com.adobe.training.core.services.StockQuote;
+import com.adobe.training.core.services.StockSnapshot;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@ExtendWith(AemContextExtension.class)
+class StockSnapshotCacheImplTest {
+
+    private static final String TRADE_PATH = "/content/stocks/ADBE/trade";
+
+    private QuoteStore quoteStore;
+    private StockSnapshotCacheImpl fixture;
+
+    @BeforeEach
+    void setup(AemContext context) throws Exception {
+        context.create().resource(TRADE_PATH,
+                StockDataWriterJob.LASTTRADE, 262.7,
+                StockDataWriterJob.COMPANY, "Adobe Inc.",
+                StockDataWriterJob.LATESTUPDATE, 1553192968000L);
+        context.resourceResolver().commit();
+        context.registerService(MetricsService.class, MetricsService.NOOP);
+        quoteStore = context.registerInjectActivateService(new QuoteStoreImpl());
+        fixture = context.registerInjectActivateService(new StockSnapshotCacheImpl());
+    }
+
+    @Test
+    void snapshotIsSharedUntilTheQuoteChanges() {
+        StockSnapshot snapshot = fixture.get("ADBE");
+        assertEquals(262.7, snapshot.getCurrentPrice());
+        assertEquals("Adobe Inc.", snapshot.getData().get("Company"));
+        assertEquals(1553192968000L, snapshot.getLatestUpdate());
+        assertSame(snapshot, fixture.get("ADBE"));
+
+        StockQuote quote = quoteStore.get("ADBE").copy();
+        quote.setLatestPrice(270.0);
+        quoteStore.put("ADBE", quote);
+        fixture.onQuote("ADBE", quote);
+        assertNotSame(snapshot, fixture.get("ADBE"));
+        assertEquals(270.0, fixture.get("ADBE").getCurrentPrice());
+    }
+
+    @Test
+    void removedSymbolHasNoData() {
+        fixture.get("ADBE");
+        quoteStore.remove("ADBE");
+        fixture.onRemove("ADBE");
+
+        StockSnapshot snapshot = fixture.get("ADBE");
+        assertNull(snapshot.getCurrentPrice());
+        assertEquals(StockSnapshot.NO_DATA_MESSAGE, snapshot.getData().get("ADBE"));
+    }
+
+    @Test
+    void snapshotOfUnknownSymbol() {
+        StockSnapshot snapshot = fixture.get("MSFT");
+        assertNull(snapshot.getCurrentPrice());
+        assertEquals(1, snapshot.getData().size());
+        assertEquals(StockSnapshot.NO_DATA_MESSAGE, snapshot.getData().get("MSFT"));
+    }
+
+    @Test
+    void snapshotIsImmutable() {
+        assertThrows(UnsupportedOperationException.class, () -> fixture.get("ADBE").getData().put("Company", "changed"));
+    }
+}
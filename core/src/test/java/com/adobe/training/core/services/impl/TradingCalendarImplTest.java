@@ -0,0 +1,59 @@
+package com.adobe.training.core.services.impl;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.adobe.training.core.services.TradingCalendar.Phase;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TradingCalendarImplTest {
+
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    private TradingCalendarImpl fixture = new TradingCalendarImpl();
+
+    @BeforeEach
+    void setup() {
+        TradingCalendarConfiguration config = mock(TradingCalendarConfiguration.class);
+        when(config.timezone()).thenReturn("America/New_York");
+        when(config.premarket_open()).thenReturn("04:00");
+        when(config.session_open()).thenReturn("09:30");
+        when(config.session_close()).thenReturn("16:00");
+        when(config.postmarket_close()).thenReturn("20:00");
+        when(config.holidays()).thenReturn(new String[] {"2019-07-04"});
+        fixture.activate(config);
+    }
+
+    @Test
+    void getPhase() {
+        //Wednesday, 3 July 2019
+        assertEquals(Phase.CLOSED, fixture.getPhase(at(2019, 7, 3, 3, 59)));
+        assertEquals(Phase.PRE_MARKET, fixture.getPhase(at(2019, 7, 3, 4, 0)));
+        assertEquals(Phase.OPEN, fixture.getPhase(at(2019, 7, 3, 9, 30)));
+        assertEquals(Phase.POST_MARKET, fixture.getPhase(at(2019, 7, 3, 16, 0)));
+        assertEquals(Phase.CLOSED, fixture.getPhase(at(2019, 7, 3, 20, 0)));
+        //Holiday and weekend
+        assertEquals(Phase.CLOSED, fixture.getPhase(at(2019, 7, 4, 11, 0)));
+        assertEquals(Phase.CLOSED, fixture.getPhase(at(2019, 7, 6, 11, 0)));
+    }
+
+    @Test
+    void getNextPhaseChange() {
+        assertEquals(at(2019, 7, 3, 9, 30), fixture.getNextPhaseChange(at(2019, 7, 3, 5, 0)));
+        //After the close on Wednesday the next change skips the holiday on Thursday
+        assertEquals(at(2019, 7, 5, 4, 0), fixture.getNextPhaseChange(at(2019, 7, 3, 21, 0)));
+        //Friday evening to Monday morning
+        assertEquals(at(2019, 7, 8, 4, 0), fixture.getNextPhaseChange(at(2019, 7, 5, 20, 0)));
+    }
+
+    private static Instant at(int year, int month, int day, int hour, int minute) {
+        return ZonedDateTime.of(year, month, day, hour, minute, 0, 0, NEW_YORK).toInstant();
+    }
+}
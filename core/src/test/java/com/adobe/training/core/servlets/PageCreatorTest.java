@@ -0,0 +1,171 @@
+package com.adobe.training.core.servlets;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.Part;
+
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+
+import com.adobe.training.core.PageCreatorJob;
+import com.adobe.training.core.services.PageImporter;
+import com.adobe.training.core.services.impl.PageImporterImpl;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(AemContextExtension.class)
+class PageCreatorTest {
+
+    private static final String PAGE_CREATOR = "/content/pagecreator";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private JobManager jobManager = mock(JobManager.class);
+
+    private AemContext context;
+    private MockSlingHttpServletRequest request;
+    private MockSlingHttpServletResponse response;
+    private PageCreator fixture;
+
+    @BeforeEach
+    void setup(AemContext context) {
+        this.context = context;
+        context.create().page("/content/training");
+        context.create().resource(PageImporter.DEFAULT_TEMPLATE_PATH);
+        context.create().resource(PAGE_CREATOR, "sling:resourceType", "training/tools/pagecreator");
+        context.currentResource(PAGE_CREATOR);
+        context.registerInjectActivateService(new PageImporterImpl());
+        context.registerService(JobManager.class, jobManager);
+        fixture = context.registerInjectActivateService(new PageCreator());
+        request = context.request();
+        response = context.response();
+    }
+
+    @Test
+    void everyRowIsStreamedFollowedByTheSummary() throws IOException {
+        request.setParameterMap(Collections.singletonMap(PageCreator.INPUT_PARAMETER,
+                "/content/training/de,Deutschland,,\n"
+                + "/content/training/xx/yy,Missing Parent,,\n"));
+
+        fixture.doPost(request, response);
+
+        assertEquals(200, response.getStatus());
+        assertTrue(response.getContentType().startsWith("application/x-ndjson"));
+        List<JsonNode> lines = lines();
+        assertEquals(3, lines.size());
+        assertEquals(1, lines.get(0).get("Row").asInt());
+        assertEquals("/content/training/de,Deutschland,,", lines.get(0).get("Input").asText());
+        assertEquals("Successful", lines.get(0).get("Status").asText());
+        assertEquals(2, lines.get(1).get("Row").asInt());
+        assertEquals("Error", lines.get(1).get("Status").asText());
+        JsonNode summary = lines.get(2).get("Summary");
+        assertEquals(2, summary.get("Rows").asInt());
+        assertEquals(1, summary.get("Successful").asInt());
+        assertEquals(1, summary.get("Errors").asInt());
+        assertNotNull(context.pageManager().getPage("/content/training/de"));
+    }
+
+    @Test
+    void missingInputIsABadRequest() throws IOException {
+        fixture.doPost(request, response);
+
+        assertEquals(400, response.getStatus());
+        assertEquals("Could not read csv input", OBJECT_MAPPER.readTree(response.getOutputAsString()).get("Error").asText());
+    }
+
+    @Test
+    void invalidRowsAreABadRequestWhenValidated() throws IOException {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put(PageCreator.INPUT_PARAMETER, "/content/training/de,Deutschland,,\n"
+                + "/content/training/xx/yy,Missing Parent,,\n");
+        parameters.put(PageCreator.VALIDATE_PARAMETER, "true");
+        request.setParameterMap(parameters);
+
+        fixture.doPost(request, response);
+
+        assertEquals(400, response.getStatus());
+        List<JsonNode> lines = lines();
+        assertEquals("Invalid", lines.get(1).get("Status").asText());
+        JsonNode validation = lines.get(2).get("Validation");
+        assertEquals(1, validation.get("Valid").asInt());
+        assertEquals(1, validation.get("Invalid").asInt());
+        assertNull(context.pageManager().getPage("/content/training/de"));
+    }
+
+    @Test
+    void streamedUploadIsReadFromThePartsIterator() throws IOException {
+        //With uploadmode=stream the parts arrive in order, parts before the input are skipped
+        Part other = mock(Part.class);
+        when(other.getName()).thenReturn("_charset_");
+        Part input = mock(Part.class);
+        when(input.getName()).thenReturn(PageCreator.INPUT_PARAMETER);
+        when(input.getInputStream()).thenReturn(new ByteArrayInputStream(
+                "/content/training/fr,France,,\n".getBytes(StandardCharsets.UTF_8)));
+        request.setAttribute("request-parts-iterator", Arrays.asList(other, input).iterator());
+
+        fixture.doPost(request, response);
+
+        List<JsonNode> lines = lines();
+        assertEquals("Successful", lines.get(0).get("Status").asText());
+        assertEquals(1, lines.get(1).get("Summary").get("Successful").asInt());
+        assertNotNull(context.pageManager().getPage("/content/training/fr"));
+    }
+
+    @Test
+    void asyncUploadQueuesAJobForTheUploader() throws IOException {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put(PageCreator.INPUT_PARAMETER, "/content/training/de,Deutschland,,\n");
+        parameters.put(PageCreator.ASYNC_PARAMETER, "true");
+        request.setParameterMap(parameters);
+        when(jobManager.addJob(eq(PageCreatorJob.JOB_TOPIC), anyMap())).thenReturn(mock(Job.class));
+
+        fixture.doPost(request, response);
+
+        assertEquals(202, response.getStatus());
+        ArgumentCaptor<Map<String, Object>> properties = propsCaptor();
+        verify(jobManager).addJob(eq(PageCreatorJob.JOB_TOPIC), properties.capture());
+        String jobPath = (String) properties.getValue().get(PageCreatorJob.JOB_PROP_PATH);
+        assertTrue(jobPath.startsWith(PAGE_CREATOR + "/" + PageCreator.JOBS_FOLDER + "/"));
+        assertEquals(context.resourceResolver().getUserID(), properties.getValue().get(PageCreatorJob.JOB_PROP_USER));
+        assertNotNull(context.resourceResolver().getResource(jobPath + "/" + PageCreatorJob.INPUT));
+        assertNull(context.pageManager().getPage("/content/training/de"));
+    }
+
+    private List<JsonNode> lines() throws IOException {
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : response.getOutputAsString().split("\n")) {
+            lines.add(OBJECT_MAPPER.readTree(line));
+        }
+        return lines;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<Map<String, Object>> propsCaptor() {
+        return ArgumentCaptor.forClass(Map.class);
+    }
+}
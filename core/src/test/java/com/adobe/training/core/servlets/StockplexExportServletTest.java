@@ -0,0 +1,180 @@
+package com.adobe.training.core.servlets;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.adobe.training.core.models.Stockplex;
+import com.adobe.training.core.services.StockFeedClient;
+import com.adobe.training.core.services.StockQuote;
+import com.adobe.training.core.services.StockSnapshot;
+import com.adobe.training.core.services.StockSnapshotCache;
+import com.adobe.training.core.services.TradingCalendar;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(AemContextExtension.class)
+class StockplexExportServletTest {
+
+    private static final String COMPONENT = "/content/test/stockplex";
+
+    private StockSnapshotCache snapshotCache = mock(StockSnapshotCache.class);
+    private StockFeedClient feedClient = mock(StockFeedClient.class);
+    private TradingCalendar tradingCalendar = mock(TradingCalendar.class);
+
+    private StockplexExportServlet fixture;
+    private StockQuote quote;
+
+    @BeforeEach
+    void setup(AemContext context) {
+        quote = new StockQuote();
+        quote.reset();
+        quote.setCompanyName("Adobe Inc.");
+        quote.setLatestPrice(262.7);
+        quote.setLatestVolume(1111095L);
+        quote.setLatestUpdate(1553192968000L);
+        when(snapshotCache.get("ADBE")).thenReturn(new StockSnapshot("ADBE", new HashMap<>(), 262.7, 1553192968000L, quote));
+        when(feedClient.isAvailable()).thenReturn(true);
+        when(tradingCalendar.getPhase(any())).thenReturn(TradingCalendar.Phase.CLOSED);
+
+        context.registerService(StockSnapshotCache.class, snapshotCache);
+        context.registerService(StockFeedClient.class, feedClient);
+        context.registerService(TradingCalendar.class, tradingCalendar);
+        fixture = context.registerInjectActivateService(new StockplexExportServlet());
+
+        context.build().resource(COMPONENT,
+                "sling:resourceType", Stockplex.RESOURCE_TYPE,
+                "symbol", "ADBE").commit();
+        context.currentResource(COMPONENT);
+        context.requestPathInfo().setSelectorString(StockplexExportServlet.COMPACT_SELECTOR);
+        context.requestPathInfo().setExtension("json");
+    }
+
+    @Test
+    void compactShape(AemContext context) throws IOException {
+        MockSlingHttpServletResponse response = context.response();
+        fixture.doGet(context.request(), response);
+
+        assertEquals("{\"v\":1,\"symbol\":\"ADBE\",\"companyName\":\"Adobe Inc.\",\"sector\":null,\"lastTrade\":262.7,"
+                + "\"openPrice\":null,\"rangeHigh\":null,\"rangeLow\":null,\"volume\":1111095,\"upDown\":null,"
+                + "\"week52High\":null,\"week52Low\":null,\"ytdPercentageChange\":null,\"latestUpdate\":1553192968000,"
+                + "\"stale\":false}", response.getOutputAsString());
+        assertNotNull(response.getHeader("ETag"));
+    }
+
+    @Test
+    void notModified(AemContext context) throws IOException {
+        MockSlingHttpServletResponse first = context.response();
+        fixture.doGet(context.request(), first);
+
+        MockSlingHttpServletRequest revalidate = new MockSlingHttpServletRequest(context.resourceResolver(), context.bundleContext());
+        revalidate.setResource(context.currentResource());
+        revalidate.addHeader("If-None-Match", first.getHeader("ETag"));
+        ((MockRequestPathInfo) revalidate.getRequestPathInfo()).setSelectorString(StockplexExportServlet.COMPACT_SELECTOR);
+        MockSlingHttpServletResponse second = new MockSlingHttpServletResponse();
+        fixture.doGet(revalidate, second);
+
+        assertEquals(304, second.getStatus());
+        assertEquals("", second.getOutputAsString());
+    }
+
+    @Test
+    void cachedBodyIsReused(AemContext context) throws IOException {
+        MockSlingHttpServletResponse first = get(context, null);
+        //Snapshots are replaced, never modified, so a change of the same instance is not seen
+        quote.setLatestPrice(300.5);
+        MockSlingHttpServletResponse second = get(context, null);
+
+        assertEquals(first.getOutputAsString(), second.getOutputAsString());
+        assertEquals(first.getHeader("ETag"), second.getHeader("ETag"));
+    }
+
+    @Test
+    void newSnapshotRebuildsTheBody(AemContext context) throws IOException {
+        MockSlingHttpServletResponse first = get(context, null);
+        StockQuote changed = new StockQuote();
+        changed.reset();
+        changed.setLatestPrice(300.5);
+        changed.setLatestUpdate(1553193028000L);
+        when(snapshotCache.get("ADBE")).thenReturn(new StockSnapshot("ADBE", new HashMap<>(), 300.5, 1553193028000L, changed));
+
+        //The ETag of the old body no longer matches
+        MockSlingHttpServletResponse second = get(context, first.getHeader("ETag"));
+
+        assertEquals(200, second.getStatus());
+        assertTrue(second.getOutputAsString().contains("\"lastTrade\":300.5"));
+        assertNotEquals(first.getHeader("ETag"), second.getHeader("ETag"));
+    }
+
+    @Test
+    void staleFlagRebuildsTheBody(AemContext context) throws IOException {
+        MockSlingHttpServletResponse first = get(context, null);
+        when(feedClient.isAvailable()).thenReturn(false);
+        MockSlingHttpServletResponse second = get(context, null);
+
+        assertTrue(second.getOutputAsString().endsWith("\"stale\":true}"));
+        assertNotEquals(first.getHeader("ETag"), second.getHeader("ETag"));
+    }
+
+    @Test
+    void dialogChangeRebuildsTheBody(AemContext context) throws IOException {
+        get(context, null);
+        //Only seen if the body is built again
+        quote.setLatestPrice(300.5);
+        ModifiableValueMap properties = context.resourceResolver().getResource(COMPONENT).adaptTo(ModifiableValueMap.class);
+        properties.put("summary", "Adobe at a glance");
+        context.resourceResolver().commit();
+
+        MockSlingHttpServletResponse second = get(context, null);
+
+        assertTrue(second.getOutputAsString().contains("\"lastTrade\":300.5"));
+    }
+
+    @Test
+    void matchingETagIsNotModified(AemContext context) throws IOException {
+        String etag = get(context, null).getHeader("ETag");
+
+        MockSlingHttpServletResponse listed = get(context, "\"other\", " + etag);
+        assertEquals(304, listed.getStatus());
+        assertEquals(etag, listed.getHeader("ETag"));
+        assertEquals("", listed.getOutputAsString());
+
+        MockSlingHttpServletResponse other = get(context, "\"other\"");
+        assertEquals(200, other.getStatus());
+        assertFalse(other.getOutputAsString().isEmpty());
+    }
+
+    @Test
+    void ifNoneMatchList() {
+        assertTrue(StockplexExportServlet.matches("\"a\", \"b\"", "\"b\""));
+        assertFalse(StockplexExportServlet.matches("W/\"b\"", "\"b\""));
+    }
+
+    private MockSlingHttpServletResponse get(AemContext context, String ifNoneMatch) throws IOException {
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(), context.bundleContext());
+        request.setResource(context.resourceResolver().getResource(COMPONENT));
+        if (ifNoneMatch != null) {
+            request.addHeader("If-None-Match", ifNoneMatch);
+        }
+        ((MockRequestPathInfo) request.getRequestPathInfo()).setSelectorString(StockplexExportServlet.COMPACT_SELECTOR);
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        fixture.doGet(request, response);
+        return response;
+    }
+}